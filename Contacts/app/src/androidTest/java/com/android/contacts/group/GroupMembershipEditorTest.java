@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the membership diffs of {@link GroupMembershipEditor}.
+ */
+@SmallTest
+public class GroupMembershipEditorTest extends AndroidTestCase {
+    private static final long[] MEMBERS = new long[] { 2, 4, 6, 8 };
+
+    public void testGetNonMembers() {
+        assertIds(new long[] { 1, 5, 9 },
+                GroupMembershipEditor.getNonMembers(new long[] { 9, 4, 1, 5, 8 }, MEMBERS));
+    }
+
+    public void testGetMembers() {
+        assertIds(new long[] { 4, 8 },
+                GroupMembershipEditor.getMembers(new long[] { 9, 4, 1, 5, 8 }, MEMBERS));
+    }
+
+    public void testDuplicateIds() {
+        assertIds(new long[] { 3 },
+                GroupMembershipEditor.getNonMembers(new long[] { 3, 3, 2, 2 }, MEMBERS));
+        assertIds(new long[] { 2 },
+                GroupMembershipEditor.getMembers(new long[] { 3, 3, 2, 2 }, MEMBERS));
+    }
+
+    public void testNoMembers() {
+        assertIds(new long[] { 1, 2 },
+                GroupMembershipEditor.getNonMembers(new long[] { 2, 1 }, new long[0]));
+        assertIds(new long[0],
+                GroupMembershipEditor.getMembers(new long[] { 2, 1 }, new long[0]));
+    }
+
+    public void testDoesNotModifyIds() {
+        final long[] ids = new long[] { 5, 1, 4 };
+        GroupMembershipEditor.getNonMembers(ids, MEMBERS);
+        assertIds(new long[] { 5, 1, 4 }, ids);
+    }
+
+    private static void assertIds(long[] expected, long[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+}
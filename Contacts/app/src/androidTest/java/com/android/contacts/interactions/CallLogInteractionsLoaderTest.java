@@ -62,4 +62,12 @@ public class CallLogInteractionsLoaderTest extends AndroidTestCase {
                 maxToRetrieve);
         assertEquals(1, interactions.size());
     }
+
+    public void testCallLogInteractions_normalizedNumbers() {
+        String[] numbers = CallLogInteractionsLoader.getNormalizedNumbers(
+                new String[] {"(650) 555-1212", "650-555-1212", "--", "555-0000"});
+        assertEquals(2, numbers.length);
+        assertEquals("6505551212", numbers[0]);
+        assertEquals("5550000", numbers[1]);
+    }
 }
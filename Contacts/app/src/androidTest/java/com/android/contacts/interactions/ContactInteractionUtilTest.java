@@ -61,6 +61,16 @@ public class ContactInteractionUtilTest extends AndroidTestCase {
         assertEquals("(?,?,?,?,?)", ContactInteractionUtil.questionMarks(5));
     }
 
+    public void testOnePhoneNumberEqual() {
+        assertEquals("PHONE_NUMBERS_EQUAL(number, ?)",
+                ContactInteractionUtil.phoneNumbersEqualSelection("number", 1));
+    }
+
+    public void testTwoPhoneNumbersEqual() {
+        assertEquals("PHONE_NUMBERS_EQUAL(address, ?) OR PHONE_NUMBERS_EQUAL(address, ?)",
+                ContactInteractionUtil.phoneNumbersEqualSelection("address", 2));
+    }
+
     public void testFormatDateStringFromTimestamp_todaySingleMinuteAm() {
         // Test today scenario (time shown)
         // Single digit minute & AM
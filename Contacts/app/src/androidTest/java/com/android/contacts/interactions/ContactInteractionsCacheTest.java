@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.interactions;
+
+import android.content.ContentValues;
+import android.provider.CallLog.Calls;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ContactInteractionsCache}
+ */
+@SmallTest
+public class ContactInteractionsCacheTest extends AndroidTestCase {
+
+    private static final String[] NUMBERS = new String[] {"6505551212"};
+
+    private ContactInteractionsCache mCache;
+    private List<ContactInteraction> mInteractions;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new ContactInteractionsCache();
+        mInteractions = new ArrayList<>();
+        ContentValues values = new ContentValues();
+        values.put(Calls.DATE, 1L);
+        mInteractions.add(new CallLogInteraction(values));
+    }
+
+    public void testPutAndGet() {
+        int generation = mCache.getGeneration(ContactInteractionsCache.SOURCE_CALL_LOG);
+        mCache.put(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS, mInteractions, generation);
+
+        // The cached list is a copy, since the loaders clear theirs.
+        mInteractions.clear();
+        assertEquals(1, mCache.get(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS).size());
+        assertNull(mCache.get(ContactInteractionsCache.SOURCE_SMS, NUMBERS));
+        assertNull(mCache.get(ContactInteractionsCache.SOURCE_CALL_LOG,
+                new String[] {"5550000"}));
+    }
+
+    public void testInvalidate_onlyDropsTheSource() {
+        mCache.put(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS, mInteractions,
+                mCache.getGeneration(ContactInteractionsCache.SOURCE_CALL_LOG));
+        mCache.put(ContactInteractionsCache.SOURCE_SMS, NUMBERS, mInteractions,
+                mCache.getGeneration(ContactInteractionsCache.SOURCE_SMS));
+
+        mCache.invalidate(ContactInteractionsCache.SOURCE_CALL_LOG);
+        assertNull(mCache.get(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS));
+        assertNotNull(mCache.get(ContactInteractionsCache.SOURCE_SMS, NUMBERS));
+    }
+
+    public void testPut_afterInvalidate_isIgnored() {
+        int generation = mCache.getGeneration(ContactInteractionsCache.SOURCE_CALL_LOG);
+        mCache.invalidate(ContactInteractionsCache.SOURCE_CALL_LOG);
+        mCache.put(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS, mInteractions, generation);
+        assertNull(mCache.get(ContactInteractionsCache.SOURCE_CALL_LOG, NUMBERS));
+    }
+}
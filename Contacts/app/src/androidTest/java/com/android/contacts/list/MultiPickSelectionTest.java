@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link MultiPickSelection}.
+ */
+@SmallTest
+public class MultiPickSelectionTest extends AndroidTestCase {
+
+    private MultiPickSelection mSelection;
+    private MatrixCursor mCursor;
+    /** The number of times the values of a row were read. */
+    private int mValuesRead;
+
+    private final MultiPickSelection.RowReader mReader = new MultiPickSelection.RowReader() {
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+
+        @Override
+        public String[] getValues(Cursor cursor) {
+            mValuesRead++;
+            return new String[] {cursor.getString(1)};
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSelection = new MultiPickSelection();
+        mCursor = new MatrixCursor(new String[] {"_id", "name"});
+        mCursor.addRow(new Object[] {1L, "one"});
+        mCursor.addRow(new Object[] {2L, "two"});
+        mCursor.addRow(new Object[] {3L, "three"});
+        mValuesRead = 0;
+    }
+
+    public void testSelect() {
+        mSelection.select(1, new String[] {"one"});
+        mSelection.select(3, new String[] {"three"});
+        mSelection.deselect(1);
+
+        assertFalse(mSelection.isAllSelected());
+        assertEquals(1, mSelection.size());
+        assertFalse(mSelection.isSelected(1));
+        assertTrue(mSelection.isSelected(3));
+        assertTrue(Arrays.equals(new long[] {3}, mSelection.getIds(mCursor, mReader)));
+    }
+
+    public void testSelectAll_exceptDeselected() {
+        mSelection.selectAll(mCursor.getCount());
+        mSelection.deselect(2);
+
+        assertTrue(mSelection.isAllSelected());
+        assertEquals(2, mSelection.size());
+        assertTrue(mSelection.isSelected(1));
+        assertFalse(mSelection.isSelected(2));
+
+        mSelection.select(2, null);
+        assertEquals(3, mSelection.size());
+        assertTrue(mSelection.isSelected(2));
+    }
+
+    public void testGetIds_allSelected_doesNotReadValues() {
+        mSelection.selectAll(mCursor.getCount());
+        mSelection.deselect(2);
+
+        assertTrue(Arrays.equals(new long[] {1, 3}, mSelection.getIds(mCursor, mReader)));
+        assertEquals(0, mValuesRead);
+        // The selection still covers all the rows of the list.
+        assertTrue(mSelection.isAllSelected());
+        assertEquals(2, mSelection.size());
+    }
+
+    public void testGetIds_allSelected_withoutCursor() {
+        mSelection.selectAll(3);
+
+        assertEquals(0, mSelection.getIds(null, mReader).length);
+    }
+
+    public void testToBundle_allSelected() {
+        mSelection.selectAll(mCursor.getCount());
+        mSelection.deselect(1);
+
+        final Bundle bundle = mSelection.toBundle(mCursor, mReader);
+        assertEquals(2, bundle.size());
+        assertNull(bundle.getStringArray("1"));
+        assertTrue(Arrays.equals(new String[] {"two"}, bundle.getStringArray("2")));
+        assertTrue(Arrays.equals(new String[] {"three"}, bundle.getStringArray("3")));
+        // The rows are now selected on their own, so the cursor is no longer needed.
+        assertFalse(mSelection.isAllSelected());
+        assertEquals(2, mSelection.size());
+        assertEquals(2, mSelection.toBundle(null, mReader).size());
+    }
+
+    public void testParcel_roundTrip() {
+        mSelection.selectAll(mCursor.getCount());
+        mSelection.deselect(3);
+        assertSelectionEquals(mSelection, parcelAndUnparcel(mSelection));
+
+        final MultiPickSelection selected = new MultiPickSelection();
+        selected.select(2, new String[] {"two"});
+        final MultiPickSelection restored = parcelAndUnparcel(selected);
+        assertSelectionEquals(selected, restored);
+        assertTrue(Arrays.equals(new String[] {"two"},
+                restored.toBundle(null, mReader).getStringArray("2")));
+    }
+
+    private void assertSelectionEquals(MultiPickSelection expected, MultiPickSelection actual) {
+        assertEquals(expected.isAllSelected(), actual.isAllSelected());
+        assertEquals(expected.size(), actual.size());
+        assertTrue(Arrays.equals(expected.getIds(mCursor, mReader),
+                actual.getIds(mCursor, mReader)));
+    }
+
+    private static MultiPickSelection parcelAndUnparcel(MultiPickSelection selection) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            selection.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return MultiPickSelection.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.common.util.MaterialColorMapUtils.MaterialPalette;
+import com.android.contacts.quickcontact.PhotoColorCache.PhotoColors;
+
+/**
+ * Tests for {@link PhotoColorCache}.
+ */
+@SmallTest
+public class PhotoColorCacheTest extends AndroidTestCase {
+    private static final String PREFERENCES_NAME = "photo_color_cache_test";
+
+    private SharedPreferences mPreferences;
+    private PhotoColorCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPreferences = getContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPreferences.edit().clear().commit();
+        mCache = new PhotoColorCache(mPreferences);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPreferences.edit().clear().commit();
+        super.tearDown();
+    }
+
+    public void testPutAndGet() {
+        final String key = PhotoColorCache.getKey("content://photo/1", new byte[] { 1, 2, 3 });
+        assertNull(mCache.get(key));
+
+        mCache.put(key, new PhotoColors(new MaterialPalette(Color.RED, Color.BLACK), true));
+        final PhotoColors colors = mCache.get(key);
+        assertEquals(Color.RED, colors.palette.mPrimaryColor);
+        assertEquals(Color.BLACK, colors.palette.mSecondaryColor);
+        assertTrue(colors.isWhite);
+    }
+
+    public void testGetKey_dependsOnThumbnail() {
+        assertFalse(PhotoColorCache.getKey("content://photo/1", new byte[] { 1, 2, 3 }).equals(
+                PhotoColorCache.getKey("content://photo/1", new byte[] { 1, 2, 4 })));
+    }
+
+    public void testPut_forgetsTheOldestColors() {
+        final PhotoColors colors =
+                new PhotoColors(new MaterialPalette(Color.RED, Color.BLACK), false);
+        for (int i = 0; i < PhotoColorCache.MAX_ENTRIES + 1; i++) {
+            mCache.put("photo" + i, colors);
+        }
+        assertEquals(PhotoColorCache.MAX_ENTRIES, mPreferences.getAll().size());
+    }
+
+    public void testGet_invalidValue() {
+        mPreferences.edit().putString("photo", "invalid").commit();
+        assertNull(mCache.get("photo"));
+    }
+}
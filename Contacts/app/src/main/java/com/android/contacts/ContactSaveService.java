@@ -17,7 +17,7 @@
 package com.android.contacts;
 
 import android.app.Activity;
-import android.app.IntentService;
+import android.app.Service;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderOperation.Builder;
 import android.content.ContentProviderResult;
@@ -32,10 +32,11 @@ import android.database.sqlite.SQLiteFullException;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
 import android.os.Parcelable;
+import android.os.Process;
 import android.os.RemoteException;
-import android.os.ServiceManager;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.AggregationExceptions;
 import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
@@ -48,8 +49,6 @@ import android.provider.ContactsContract.RawContacts;
 import android.provider.ContactsContract.RawContactsEntity;
 import android.text.TextUtils;
 import android.telephony.PhoneNumberUtils;
-import android.telephony.TelephonyManager;
-import android.telephony.SubscriptionManager;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -58,16 +57,15 @@ import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.RawContactDelta;
 import com.android.contacts.common.model.RawContactDeltaList;
 import com.android.contacts.common.model.RawContactModifier;
+import com.android.contacts.common.model.ValuesDelta;
 import com.android.contacts.common.model.account.AccountWithDataSet;
 import com.android.contacts.common.util.ContactsCommonRcsUtil;
 import com.android.contacts.common.SimContactsConstants;
 import com.android.contacts.common.SimContactsOperation;
 import com.android.contacts.common.MoreContactUtils;
+import com.android.contacts.group.GroupMembershipEditor;
 import com.android.contacts.util.ContactPhotoUtils;
 import com.android.contacts.util.RCSUtil;
-import com.android.internal.telephony.uicc.AdnRecord;
-import com.android.internal.telephony.uicc.IccConstants;
-import com.android.internal.telephony.IIccPhoneBook;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
@@ -80,12 +78,24 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A service responsible for saving changes to the content provider.
+ * <p>
+ * Requests run on one of three lanes, each with its own thread, so that a slow request does not
+ * hold back the ones of another lane: quick updates the user waits for, such as starring a
+ * contact, saves to a SIM, which are very slow, and the other saves. The requests of a lane run in
+ * the order they are received. A request for a contact which has a request still to finish on
+ * another lane is sent to that lane instead, so that the requests for the same contact run in
+ * order. A request which sets the same value of the same contact as another one which has not run
+ * yet replaces it.
  */
-public class ContactSaveService extends IntentService {
+public class ContactSaveService extends Service {
     private static final String TAG = "ContactSaveService";
 
     /** Set to true in order to view logs on content provider operations */
@@ -157,8 +167,6 @@ public class ContactSaveService extends IntentService {
     );
 
     private static final int PERSIST_TRIES = 3;
-    private static int count = TelephonyManager.getDefault().getPhoneCount();
-    private static int[] mSimMaxCount = new int[count];
 
     public static final int RESULT_UNCHANGED = 0;
     public static final int RESULT_SUCCESS = 1;
@@ -179,12 +187,21 @@ public class ContactSaveService extends IntentService {
     private final int MAX_EMAIL_LENGTH = 40;
     private final int MAX_EN_LENGTH = 14;
     private final int MAX_CH_LENGTH = 6;
-    private static final int BUFFER_LENGTH = 500;
 
     // Only for request accessing SIM card
     // when device is in the "AirPlane" mode.
     public static final int RESULT_AIR_PLANE_MODE = 10;
-    public static SimContactsOperation mSimContactsOperation;
+
+    /** Single row updates, which the user sees at once. */
+    private static final int LANE_LIGHT = 0;
+    /**
+     * Contact saves, joins and deletes, and group changes. Group deletes run here so that they
+     * stay after the member updates of the group.
+     */
+    private static final int LANE_HEAVY = 1;
+    /** Saves to a SIM. */
+    private static final int LANE_SIM = 2;
+    private static final int LANE_COUNT = 3;
 
     public interface Listener {
         public void onServiceCompleted(Intent callbackIntent);
@@ -195,12 +212,275 @@ public class ContactSaveService extends IntentService {
 
     private Handler mMainHandler;
 
+    private final ExecutorService[] mLanes = new ExecutorService[LANE_COUNT];
+    /** The request of each coalescing key which has not started yet. */
+    private final HashMap<String, Request> mPendingRequests = new HashMap<String, Request>();
+    /** The requests submitted to a lane which have not finished yet, in submission order. */
+    private final ArrayList<Request> mActiveRequests = new ArrayList<Request>();
+    private int mLastStartId;
+
+    /** A request submitted to a lane. */
+    private static class Request {
+        /** The intent to run, replaced by the latest one with the same coalescing key. */
+        Intent intent;
+        final int lane;
+        /** The contacts the request changes, see {@link #getContactIds}. */
+        final long[] contactIds;
+
+        Request(Intent intent, int lane, long[] contactIds) {
+            this.intent = intent;
+            this.lane = lane;
+            this.contactIds = contactIds;
+        }
+    }
+
     public ContactSaveService() {
-        super(TAG);
-        setIntentRedelivery(true);
         mMainHandler = new Handler(Looper.getMainLooper());
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mLanes[LANE_LIGHT] = Executors.newSingleThreadExecutor(
+                new LaneThreadFactory("light", Process.THREAD_PRIORITY_DEFAULT));
+        mLanes[LANE_HEAVY] = Executors.newSingleThreadExecutor(
+                new LaneThreadFactory("heavy", Process.THREAD_PRIORITY_BACKGROUND));
+        mLanes[LANE_SIM] = Executors.newSingleThreadExecutor(
+                new LaneThreadFactory("sim", Process.THREAD_PRIORITY_BACKGROUND));
+    }
+
+    @Override
+    public void onDestroy() {
+        for (ExecutorService lane : mLanes) {
+            lane.shutdown();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, int flags, int startId) {
+        final String key = getCoalescingKey(intent);
+        final Request request;
+        synchronized (this) {
+            mLastStartId = startId;
+            final Request pending = key != null ? mPendingRequests.get(key) : null;
+            if (pending != null) {
+                // The pending request runs this one instead.
+                pending.intent = intent;
+                return START_REDELIVER_INTENT;
+            }
+            final long[] contactIds = getContactIds(intent);
+            int lane = getLane(intent);
+            for (Request active : mActiveRequests) {
+                if (active.lane != lane && sharesContact(active.contactIds, contactIds)) {
+                    // Runs after the latest request for the same contact.
+                    lane = active.lane;
+                }
+            }
+            // A later request for these contacts must not run ahead of this one by replacing a
+            // pending request.
+            final Iterator<Request> pendingRequests =
+                    mPendingRequests.values().iterator();
+            while (pendingRequests.hasNext()) {
+                if (sharesContact(pendingRequests.next().contactIds, contactIds)) {
+                    pendingRequests.remove();
+                }
+            }
+            request = new Request(intent, lane, contactIds);
+            if (key != null) {
+                mPendingRequests.put(key, request);
+            }
+            mActiveRequests.add(request);
+        }
+        mLanes[request.lane].execute(new Runnable() {
+            @Override
+            public void run() {
+                final Intent latestIntent;
+                synchronized (ContactSaveService.this) {
+                    latestIntent = request.intent;
+                    if (key != null && mPendingRequests.get(key) == request) {
+                        mPendingRequests.remove(key);
+                    }
+                }
+                try {
+                    onHandleIntent(latestIntent);
+                } finally {
+                    onRequestFinished(request);
+                }
+            }
+        });
+        return START_REDELIVER_INTENT;
+    }
+
+    private synchronized void onRequestFinished(Request request) {
+        mActiveRequests.remove(request);
+        if (mActiveRequests.isEmpty()) {
+            // Does not stop if a request has been received since the last one was submitted.
+            stopSelf(mLastStartId);
+        }
+    }
+
+    private static int getLane(Intent intent) {
+        final String action = intent != null ? intent.getAction() : null;
+        if (ACTION_SET_STARRED.equals(action)
+                || ACTION_SET_SUPER_PRIMARY.equals(action)
+                || ACTION_CLEAR_PRIMARY.equals(action)
+                || ACTION_SET_SEND_TO_VOICEMAIL.equals(action)
+                || ACTION_SET_RINGTONE.equals(action)
+                || ACTION_RENAME_GROUP.equals(action)) {
+            return LANE_LIGHT;
+        }
+        if (ACTION_SAVE_CONTACT.equals(action) && isSimSave(intent)) {
+            return LANE_SIM;
+        }
+        // Whether a contact to delete is on a SIM can only be known with a query, so deletes
+        // stay on the heavy lane.
+        return LANE_HEAVY;
+    }
+
+    /**
+     * Returns the ids of the existing contacts the request changes, an empty array if it changes
+     * none, or null if they are not known without a query, in which case the request may change
+     * any contact.
+     */
+    private static long[] getContactIds(Intent intent) {
+        final String action = intent != null ? intent.getAction() : null;
+        if (ACTION_SET_STARRED.equals(action)
+                || ACTION_SET_SEND_TO_VOICEMAIL.equals(action)
+                || ACTION_SET_RINGTONE.equals(action)
+                || ACTION_DELETE_CONTACT.equals(action)) {
+            final Uri contactUri = intent.getParcelableExtra(EXTRA_CONTACT_URI);
+            final long contactId = getContactId(contactUri);
+            return contactId >= 0 ? new long[] { contactId } : null;
+        }
+        if (ACTION_JOIN_CONTACTS.equals(action)) {
+            return new long[] {
+                intent.getLongExtra(EXTRA_CONTACT_ID1, -1),
+                intent.getLongExtra(EXTRA_CONTACT_ID2, -1)
+            };
+        }
+        if (ACTION_SAVE_CONTACT.equals(action)) {
+            final RawContactDeltaList state = intent.getParcelableExtra(EXTRA_CONTACT_STATE);
+            if (state == null) {
+                return new long[0];
+            }
+            final HashSet<Long> contactIds = new HashSet<Long>();
+            for (int i = 0; i < state.size(); i++) {
+                final ValuesDelta values = state.get(i).getValues();
+                if (values.isInsert()) {
+                    continue;
+                }
+                final Long contactId = values.getAsLong(RawContacts.CONTACT_ID);
+                if (contactId == null) {
+                    return null;
+                }
+                contactIds.add(contactId);
+            }
+            final long[] result = new long[contactIds.size()];
+            int i = 0;
+            for (Long contactId : contactIds) {
+                result[i++] = contactId;
+            }
+            return result;
+        }
+        if (ACTION_SET_SUPER_PRIMARY.equals(action) || ACTION_CLEAR_PRIMARY.equals(action)) {
+            // Only the data row is known.
+            return null;
+        }
+        // New raw contacts and group changes.
+        return new long[0];
+    }
+
+    /** Returns the id of the contact of a contact or lookup URI, or -1 if it has none. */
+    private static long getContactId(Uri contactUri) {
+        if (contactUri == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contactUri.getLastPathSegment());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Returns whether two requests may change the same contact. */
+    private static boolean sharesContact(long[] contactIds1, long[] contactIds2) {
+        if ((contactIds1 != null && contactIds1.length == 0)
+                || (contactIds2 != null && contactIds2.length == 0)) {
+            return false;
+        }
+        if (contactIds1 == null || contactIds2 == null) {
+            return true;
+        }
+        for (long contactId1 : contactIds1) {
+            for (long contactId2 : contactIds2) {
+                if (contactId1 == contactId2) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSimSave(Intent intent) {
+        final RawContactDeltaList state = intent.getParcelableExtra(EXTRA_CONTACT_STATE);
+        if (state == null) {
+            return false;
+        }
+        for (int i = 0; i < state.size(); i++) {
+            final RawContactDelta entity = state.get(i);
+            final String accountType = entity.getValues().getAsString(RawContacts.ACCOUNT_TYPE);
+            final String accountName = entity.getValues().getAsString(RawContacts.ACCOUNT_NAME);
+            if (MoreContactUtils.getSubscription(accountType, accountName)
+                    != SimContactsConstants.SUB_INVALID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key of the requests which the latest of them replaces, or null if the request
+     * always runs. Only the requests which set a single value of a contact are replaced, since
+     * running the latest one gives the same result as running all of them.
+     */
+    private static String getCoalescingKey(Intent intent) {
+        final String action = intent != null ? intent.getAction() : null;
+        if (ACTION_SET_STARRED.equals(action)
+                || ACTION_SET_SEND_TO_VOICEMAIL.equals(action)
+                || ACTION_SET_RINGTONE.equals(action)) {
+            final Uri contactUri = intent.getParcelableExtra(EXTRA_CONTACT_URI);
+            return contactUri != null ? action + ":" + contactUri : null;
+        }
+        return null;
+    }
+
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final int mPriority;
+
+        public LaneThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(mPriority);
+                    r.run();
+                }
+            }, TAG + "-" + mName);
+        }
+    }
+
     public static void registerListener(Listener listener) {
         if (!(listener instanceof Activity)) {
             throw new ClassCastException("Only activities can be registered to"
@@ -223,42 +503,7 @@ public class ContactSaveService extends IntentService {
         return getApplicationContext().getSystemService(name);
     }
 
-    /**
-     * when isMultiSimEnabled is true,get the maximum how many contacts can save to sim card
-     */
-    private int getMSimCardMaxCount(int subscription) {
-        if (0 != mSimMaxCount[subscription]) {
-            return mSimMaxCount[subscription];
-        }
-        int[] subId = SubscriptionManager.getSubId(subscription);
-        try {
-            IIccPhoneBook iccIpb = IIccPhoneBook.Stub.asInterface(
-                ServiceManager.getService("simphonebook"));
-
-            if (iccIpb != null) {
-                if (subId != null 
-                        && TelephonyManager.getDefault().isMultiSimEnabled()) {
-                    List<AdnRecord> list = iccIpb.getAdnRecordsInEfForSubscriber(
-                            subId[0], IccConstants.EF_ADN);
-                    if (null != list) {
-                        mSimMaxCount[subscription] = list.size();
-                    }
-                } else {
-                    List<AdnRecord> list = iccIpb
-                            .getAdnRecordsInEf(IccConstants.EF_ADN);
-                    if (null != list) {
-                        mSimMaxCount[subscription] = list.size();
-                    }
-                }
-            }
-        } catch (RemoteException ex) {
-            Log.e(TAG, "Failed to IIccPhoneBookMSim", ex);
-        }
-        return mSimMaxCount[subscription];
-    }
-
-    @Override
-    protected void onHandleIntent(Intent intent) {
+    private void onHandleIntent(Intent intent) {
         if (intent == null) {
             Log.d(TAG, "onHandleIntent: could not handle null intent");
             return;
@@ -674,7 +919,7 @@ public class ContactSaveService extends IntentService {
 
         boolean isInsert = entity.isContactInsert();
         Integer result = RESULT_SIM_FAILURE;
-        mSimContactsOperation = new SimContactsOperation(this);
+        final SimContactsOperation simContactsOperation = new SimContactsOperation(this);
 
         ContentValues values = entity.buildSimDiff();
         String tag = null;
@@ -741,42 +986,26 @@ public class ContactSaveService extends IntentService {
             }
         }
 
-        if (entity.isContactInsert()) {
-            int count = 0;
-            Cursor c = null;
-            Uri iccUri;
-            int[] subId = SubscriptionManager.getSubId(subscription);
-            if (!TelephonyManager.getDefault().isMultiSimEnabled()) {
-                iccUri = Uri.parse(SimContactsConstants.SIM_URI);
-            } else {
-                iccUri = Uri.parse(SimContactsConstants.SIM_SUB_URI + subId[0]);
-            }
-            try {
-                c = resolver.query(iccUri, null, null, null, null);
-                if (c != null) {
-                    count = c.getCount();
-                }
-            } finally {
-                if (c != null) {
-                    c.close();
-                }
-            }
-
-            if (count == getMSimCardMaxCount(subscription)) {
-                return RESULT_SIM_FULL_FAILURE;
-            }
+        final SimOccupancyCache occupancyCache = SimOccupancyCache.getInstance(this);
+        if (entity.isContactInsert()
+                && occupancyCache.getOccupancy(subscription).isFull()) {
+            return RESULT_SIM_FULL_FAILURE;
         }
 
         if (isInsert) {
-            Uri resultUri = mSimContactsOperation.insert(values,
+            Uri resultUri = simContactsOperation.insert(values,
                     subscription);
-            if (resultUri != null)
+            if (resultUri != null) {
                 result = RESULT_SUCCESS;
+                occupancyCache.onContactInserted(subscription, anr, email);
+            }
         } else {
-            int resultInt = mSimContactsOperation.update(values,
+            int resultInt = simContactsOperation.update(values,
                     subscription);
-            if (resultInt == 1)
+            if (resultInt == 1) {
                 result = RESULT_SUCCESS;
+                occupancyCache.onContactUpdated(subscription);
+            }
         }
         return result;
     }
@@ -875,7 +1104,7 @@ public class ContactSaveService extends IntentService {
         }
 
         // Add new group members
-        addMembersToGroup(resolver, rawContactsToAdd, ContentUris.parseId(groupUri));
+        updateMembersOfGroup(resolver, rawContactsToAdd, null, ContentUris.parseId(groupUri));
 
         // TODO: Move this into the contact editor where it belongs. This needs to be integrated
         // with the way other intent extras that are passed to the {@link ContactEditorActivity}.
@@ -1004,89 +1233,40 @@ public class ContactSaveService extends IntentService {
         }
 
         // Add and remove members if necessary
-        addMembersToGroup(resolver, rawContactsToAdd, groupId);
-        removeMembersFromGroup(resolver, rawContactsToRemove, groupId);
+        updateMembersOfGroup(resolver, rawContactsToAdd, rawContactsToRemove, groupId);
 
         Intent callbackIntent = intent.getParcelableExtra(EXTRA_CALLBACK_INTENT);
         callbackIntent.setData(groupUri);
         deliverCallback(callbackIntent);
     }
 
-    private static void addMembersToGroup(ContentResolver resolver, long[] rawContactsToAdd,
-            long groupId) {
-        if (rawContactsToAdd == null) {
+    /**
+     * Adds and removes members of the group. Only the raw contacts whose membership changes are
+     * written, and all the changes are applied in the same stream of batches.
+     */
+    private static void updateMembersOfGroup(ContentResolver resolver, long[] rawContactsToAdd,
+            long[] rawContactsToRemove, long groupId) {
+        if (rawContactsToAdd == null && rawContactsToRemove == null) {
             return;
         }
 
-        ArrayList<Long> rawContactIdInDb = Lists.newArrayList();
-        final Cursor c = resolver.query(Data.CONTENT_URI, new String[] {Data.RAW_CONTACT_ID},
-                Data.MIMETYPE + "=? AND " + GroupMembership.GROUP_ROW_ID + "=?",
-                new String[] {GroupMembership.CONTENT_ITEM_TYPE, String.valueOf(groupId)},
+        final long[] members = GroupMembershipEditor.queryMembers(resolver, groupId,
                 Data.RAW_CONTACT_ID);
-        try {
-            while (c != null && c.moveToNext()) {
-                final long id = c.getLong(0);
-                rawContactIdInDb.add(id);
+        final GroupMembershipEditor editor = new GroupMembershipEditor(resolver);
+        if (rawContactsToAdd != null) {
+            for (long rawContactId : GroupMembershipEditor.getNonMembers(
+                    rawContactsToAdd, members)) {
+                editor.insertMembership(rawContactId, groupId);
             }
-        } finally {
-            c.close();
         }
-
-        ArrayList<Long> rawContactIdToAdd = Lists.newArrayList();
-        for (long rawContactId : rawContactsToAdd) {
-            if (!rawContactIdInDb.contains(rawContactId)) {
-                rawContactIdToAdd.add(rawContactId);
-            }
-        }
-
-        final ArrayList<ContentProviderOperation> rawContactOperations =
-                new ArrayList<ContentProviderOperation>();
-        for (long rawContactId : rawContactIdToAdd) {
-            // Build an insert operation to add the contact to the group
-            final ContentProviderOperation.Builder insertBuilder = ContentProviderOperation
-                    .newInsert(Data.CONTENT_URI);
-            insertBuilder.withValue(Data.RAW_CONTACT_ID, rawContactId);
-            insertBuilder.withValue(Data.MIMETYPE, GroupMembership.CONTENT_ITEM_TYPE);
-            insertBuilder.withValue(GroupMembership.GROUP_ROW_ID, groupId);
-            rawContactOperations.add(insertBuilder.build());
-
-            int size = rawContactOperations.size();
-            if (size > 0 && BUFFER_LENGTH - size < 10) {
-                try {
-                    resolver.applyBatch(ContactsContract.AUTHORITY, rawContactOperations);
-                } catch (Exception e) {
-                    Log.e(TAG, String.format("%s: %s", e.toString(), e.getMessage()));
-                } finally {
-                    rawContactOperations.clear();
-                }
+        if (rawContactsToRemove != null) {
+            // Raw contacts which are not members have no membership to delete.
+            for (long rawContactId : GroupMembershipEditor.getMembers(
+                    rawContactsToRemove, members)) {
+                editor.deleteMembership(Data.RAW_CONTACT_ID, rawContactId, groupId);
             }
         }
-        // There maybe some sim operations left after the while loop
-        if (!rawContactOperations.isEmpty()) {
-            try {
-                resolver.applyBatch(ContactsContract.AUTHORITY, rawContactOperations);
-            } catch (Exception e) {
-                Log.e(TAG, String.format("%s: %s", e.toString(), e.getMessage()));
-            } finally {
-                rawContactOperations.clear();
-            }
-        }
-    }
-
-    private static void removeMembersFromGroup(ContentResolver resolver, long[] rawContactsToRemove,
-            long groupId) {
-        if (rawContactsToRemove == null) {
-            return;
-        }
-        for (long rawContactId : rawContactsToRemove) {
-            // Apply the delete operation on the data row for the given raw contact's
-            // membership in the given group. If no contact matches the provided selection, then
-            // nothing will be done. Just continue to the next contact.
-            resolver.delete(Data.CONTENT_URI, Data.RAW_CONTACT_ID + "=? AND " +
-                    Data.MIMETYPE + "=? AND " + GroupMembership.GROUP_ROW_ID + "=?",
-                    new String[] { String.valueOf(rawContactId),
-                    GroupMembership.CONTENT_ITEM_TYPE, String.valueOf(groupId)});
-        }
+        editor.flush();
     }
 
     /**
@@ -1245,7 +1425,7 @@ public class ContactSaveService extends IntentService {
 
     private void deleteContact(Intent intent) {
         Uri contactUri = intent.getParcelableExtra(EXTRA_CONTACT_URI);
-        mSimContactsOperation = new SimContactsOperation(this);
+        final SimContactsOperation simContactsOperation = new SimContactsOperation(this);
         if (contactUri == null) {
             Log.e(TAG, "Invalid arguments for deleteContact request");
             return;
@@ -1254,12 +1434,15 @@ public class ContactSaveService extends IntentService {
         final List<String> segments = contactUri.getPathSegments();
         // Contains an Id.
         final long uriContactId = Long.parseLong(segments.get(3));
-        int subscription = mSimContactsOperation.getSimSubscription(uriContactId);
+        int subscription = simContactsOperation.getSimSubscription(uriContactId);
         if (subscription != SimContactsConstants.SUB_INVALID) {
             ContentValues values =
-                    mSimContactsOperation.getSimAccountValues(uriContactId);
-            int result = mSimContactsOperation.delete(values, subscription);
+                    simContactsOperation.getSimAccountValues(uriContactId);
+            int result = simContactsOperation.delete(values, subscription);
             if (result == RESULT_SUCCESS) {
+                SimOccupancyCache.getInstance(this).onContactDeleted(subscription,
+                        values.getAsString(SimContactsConstants.STR_ANRS),
+                        values.getAsString(SimContactsConstants.STR_EMAILS));
                 getContentResolver().delete(contactUri, null, null);
             }
         } else {
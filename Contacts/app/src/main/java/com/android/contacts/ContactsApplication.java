@@ -35,6 +35,7 @@ import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.testing.InjectedServices;
 import com.android.contacts.common.util.Constants;
 import com.android.contacts.common.util.ContactsCommonRcsUtil;
+import com.android.contacts.quickcontact.PhotoColorCache;
 import com.android.contacts.util.RCSUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.suntek.mway.rcs.client.api.support.RcsSupportApi;
@@ -150,6 +151,10 @@ public final class ContactsApplication extends Application {
             PreferenceManager.getDefaultSharedPreferences(context);
             AccountTypeManager.getInstance(context);
             getContentResolver().getType(ContentUris.withAppendedId(Contacts.CONTENT_URI, 1));
+            // Starts following the state of the SIMs, to read their occupancy once loaded.
+            SimOccupancyCache.getInstance(context);
+            // Starts loading the colors of the contact photos already seen.
+            PhotoColorCache.getInstance(context);
             return null;
         }
 
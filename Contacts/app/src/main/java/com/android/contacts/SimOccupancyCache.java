@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.contacts.common.MoreContactUtils;
+import com.android.contacts.common.SimContactsConstants;
+import com.android.internal.telephony.IIccPhoneBook;
+import com.android.internal.telephony.IccCardConstants;
+import com.android.internal.telephony.PhoneConstants;
+import com.android.internal.telephony.TelephonyIntents;
+import com.android.internal.telephony.uicc.AdnRecord;
+import com.android.internal.telephony.uicc.IccConstants;
+
+import java.util.List;
+
+/**
+ * Caches how many contacts each SIM can hold and how many it holds, so that saving a contact to a
+ * SIM does not read all the records of the SIM, which is very slow.
+ * <p>
+ * The occupancy of a SIM is read when it has loaded, or the first time it is needed, and then
+ * updated as contacts are saved to or deleted from the SIM. It is read again after the state of
+ * the SIM changes. An occupancy which could not be read, as when the phonebook of the SIM has not
+ * loaded yet, is not cached. Reading the occupancy blocks, so {@link #getOccupancy} must not be
+ * called on the UI thread.
+ */
+public class SimOccupancyCache {
+    private static final String TAG = "SimOccupancyCache";
+
+    /** The number of records of a SIM, and how many are used. */
+    public static final class Occupancy {
+        /** The number of contacts the SIM can hold. */
+        public final int capacity;
+        /** The number of contacts the SIM holds. */
+        public final int used;
+        /** The number of additional numbers and emails a SIM contact can have. */
+        public final int anrPerContact;
+        public final int emailPerContact;
+        /** The number of additional numbers and emails which can still be saved to the SIM. */
+        public final int freeAnrCount;
+        public final int freeEmailCount;
+
+        Occupancy(int capacity, int used, int anrPerContact, int emailPerContact,
+                int freeAnrCount, int freeEmailCount) {
+            this.capacity = capacity;
+            this.used = used;
+            this.anrPerContact = anrPerContact;
+            this.emailPerContact = emailPerContact;
+            this.freeAnrCount = freeAnrCount;
+            this.freeEmailCount = freeEmailCount;
+        }
+
+        public int getFreeCount() {
+            return Math.max(capacity - used, 0);
+        }
+
+        public boolean isFull() {
+            return used >= capacity;
+        }
+    }
+
+    private static SimOccupancyCache sInstance;
+
+    private final Context mContext;
+    /** The occupancy of each SIM, indexed by subscription, or null if it has to be read. */
+    private final Occupancy[] mOccupancies;
+    /**
+     * Incremented for a slot when its occupancy is invalidated, so that a read started before is
+     * not cached.
+     */
+    private final int[] mGenerations;
+
+    private final BroadcastReceiver mSimStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int slot = intent.getIntExtra(PhoneConstants.SLOT_KEY, -1);
+            final String state = intent.getStringExtra(IccCardConstants.INTENT_KEY_ICC_STATE);
+            if (slot < 0 || slot >= mOccupancies.length) {
+                invalidateAll();
+                return;
+            }
+            invalidate(slot);
+            if (IccCardConstants.INTENT_VALUE_ICC_LOADED.equals(state)) {
+                preload(slot);
+            }
+        }
+    };
+
+    public static synchronized SimOccupancyCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SimOccupancyCache(context.getApplicationContext());
+            // The SIM state broadcast is sticky, so a SIM which has already loaded is read now.
+            sInstance.mContext.registerReceiver(sInstance.mSimStateReceiver,
+                    new IntentFilter(TelephonyIntents.ACTION_SIM_STATE_CHANGED));
+        }
+        return sInstance;
+    }
+
+    private SimOccupancyCache(Context context) {
+        mContext = context;
+        mOccupancies = new Occupancy[TelephonyManager.getDefault().getPhoneCount()];
+        mGenerations = new int[mOccupancies.length];
+    }
+
+    /** Returns the occupancy of the SIM of the given subscription, reading it if needed. */
+    public Occupancy getOccupancy(int subscription) {
+        if (subscription < 0 || subscription >= mOccupancies.length) {
+            return new Occupancy(0, 0, 0, 0, 0, 0);
+        }
+        final int generation;
+        synchronized (this) {
+            if (mOccupancies[subscription] != null) {
+                return mOccupancies[subscription];
+            }
+            generation = mGenerations[subscription];
+        }
+        final Occupancy occupancy = readOccupancy(subscription);
+        if (occupancy == null) {
+            return new Occupancy(0, 0, 0, 0, 0, 0);
+        }
+        synchronized (this) {
+            if (generation != mGenerations[subscription]) {
+                // The state of the SIM changed while it was being read.
+                return occupancy;
+            }
+            // Keeps the occupancy updated while this one was being read, if any.
+            if (mOccupancies[subscription] == null) {
+                mOccupancies[subscription] = occupancy;
+            }
+            return mOccupancies[subscription];
+        }
+    }
+
+    /** Records that a contact has been saved to the SIM of the given subscription. */
+    public synchronized void onContactInserted(int subscription, String anrs, String emails) {
+        final Occupancy occupancy = mOccupancies[subscription];
+        if (occupancy != null) {
+            mOccupancies[subscription] = new Occupancy(occupancy.capacity, occupancy.used + 1,
+                    occupancy.anrPerContact, occupancy.emailPerContact,
+                    occupancy.freeAnrCount - count(anrs, SimContactsConstants.ANR_SEP),
+                    occupancy.freeEmailCount - count(emails, SimContactsConstants.EMAIL_SEP));
+        }
+    }
+
+    /** Records that a contact has been deleted from the SIM of the given subscription. */
+    public synchronized void onContactDeleted(int subscription, String anrs, String emails) {
+        final Occupancy occupancy = mOccupancies[subscription];
+        if (occupancy != null) {
+            mOccupancies[subscription] = new Occupancy(occupancy.capacity,
+                    Math.max(occupancy.used - 1, 0),
+                    occupancy.anrPerContact, occupancy.emailPerContact,
+                    occupancy.freeAnrCount + count(anrs, SimContactsConstants.ANR_SEP),
+                    occupancy.freeEmailCount + count(emails, SimContactsConstants.EMAIL_SEP));
+        }
+    }
+
+    /**
+     * Records that a contact of the SIM of the given subscription has been changed, which may
+     * change the number of free additional numbers and emails.
+     */
+    public synchronized void onContactUpdated(int subscription) {
+        final Occupancy occupancy = mOccupancies[subscription];
+        if (occupancy != null) {
+            mOccupancies[subscription] = new Occupancy(occupancy.capacity, occupancy.used,
+                    occupancy.anrPerContact, occupancy.emailPerContact,
+                    MoreContactUtils.getSpareAnrCount(subscription),
+                    MoreContactUtils.getSpareEmailCount(subscription));
+        }
+    }
+
+    public synchronized void invalidate(int subscription) {
+        mOccupancies[subscription] = null;
+        mGenerations[subscription]++;
+    }
+
+    private synchronized void invalidateAll() {
+        for (int i = 0; i < mOccupancies.length; i++) {
+            invalidate(i);
+        }
+    }
+
+    private void preload(final int subscription) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                getOccupancy(subscription);
+            }
+        });
+    }
+
+    /** Returns the occupancy of the SIM, or null if it could not be read. */
+    private Occupancy readOccupancy(int subscription) {
+        // The SIM has to be queried before the number of free additional numbers and emails can
+        // be read.
+        final int used = getUsedCount(subscription);
+        if (used < 0) {
+            return null;
+        }
+        final int capacity = getCapacity(subscription);
+        if (capacity <= 0) {
+            return null;
+        }
+        final int anrPerContact = MoreContactUtils.canSaveAnr(subscription)
+                ? MoreContactUtils.getOneSimAnrCount(subscription) : 0;
+        final int emailPerContact = MoreContactUtils.canSaveEmail(subscription)
+                ? MoreContactUtils.getOneSimEmailCount(subscription) : 0;
+        return new Occupancy(capacity, used, anrPerContact, emailPerContact,
+                MoreContactUtils.getSpareAnrCount(subscription),
+                MoreContactUtils.getSpareEmailCount(subscription));
+    }
+
+    /** Returns the number of contacts of the SIM, or -1 if they could not be read. */
+    private int getUsedCount(int subscription) {
+        final Uri iccUri;
+        final int[] subId = SubscriptionManager.getSubId(subscription);
+        if (subId == null || !TelephonyManager.getDefault().isMultiSimEnabled()) {
+            iccUri = Uri.parse(SimContactsConstants.SIM_URI);
+        } else {
+            iccUri = Uri.parse(SimContactsConstants.SIM_SUB_URI + subId[0]);
+        }
+        Cursor c = null;
+        try {
+            c = mContext.getContentResolver().query(iccUri, null, null, null, null);
+            return c != null ? c.getCount() : -1;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to read the contacts of the SIM", e);
+            return -1;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /** Returns the number of records of the SIM, or 0 if they could not be read. */
+    private static int getCapacity(int subscription) {
+        final int[] subId = SubscriptionManager.getSubId(subscription);
+        try {
+            IIccPhoneBook iccIpb = IIccPhoneBook.Stub.asInterface(
+                    ServiceManager.getService("simphonebook"));
+            if (iccIpb != null) {
+                final List<AdnRecord> list;
+                if (subId != null && TelephonyManager.getDefault().isMultiSimEnabled()) {
+                    list = iccIpb.getAdnRecordsInEfForSubscriber(subId[0], IccConstants.EF_ADN);
+                } else {
+                    list = iccIpb.getAdnRecordsInEf(IccConstants.EF_ADN);
+                }
+                if (list != null) {
+                    return list.size();
+                }
+            }
+        } catch (RemoteException ex) {
+            Log.e(TAG, "Failed to IIccPhoneBookMSim", ex);
+        }
+        return 0;
+    }
+
+    private static int count(String values, String separator) {
+        if (TextUtils.isEmpty(values)) {
+            return 0;
+        }
+        int count = 0;
+        for (String value : values.split(separator)) {
+            if (!TextUtils.isEmpty(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -43,6 +43,7 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import com.android.contacts.ContactsActivity;
+import com.android.contacts.SimOccupancyCache;
 import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.common.model.account.AccountWithDataSet;
 import com.android.contacts.common.model.AccountTypeManager;
@@ -167,20 +168,13 @@ public class MemoryStatusActivity extends ContactsActivity {
             int count = INVALID_COUNT;
             if (!TextUtils.isEmpty(account.type)) {
                 if (account.type.equals(SimContactsConstants.ACCOUNT_TYPE_SIM)) {
-                    total = MoreContactUtils.getAdnCount(MoreContactUtils
-                            .getSubscription(account.type, account.name));
+                    // The occupancy of the SIM is cached, rather than read from the SIM.
+                    final SimOccupancyCache.Occupancy occupancy =
+                            SimOccupancyCache.getInstance(context).getOccupancy(
+                                    MoreContactUtils.getSubscription(account.type, account.name));
+                    total = occupancy.capacity;
                     if (total > 0) {
-                        Cursor cursor = cr.query(RawContacts.CONTENT_URI, new String[] {
-                                RawContacts._ID
-                        }, RawContacts.ACCOUNT_NAME + " = '" + account.name + "' AND "
-                                + RawContacts.DELETED + " = 0", null, null);
-                        if (cursor != null) {
-                            try {
-                                count = cursor.getCount();
-                            } finally {
-                                cursor.close();
-                            }
-                        }
+                        count = occupancy.used;
                     }
                 } else {
                     Cursor cursor = cr.query(RawContacts.CONTENT_URI, new String[] {
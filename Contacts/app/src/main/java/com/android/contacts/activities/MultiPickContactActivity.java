@@ -51,18 +51,18 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.RemoteException;
-import android.provider.CallLog;
+import android.os.SystemClock;
 import android.provider.CallLog.Calls;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.InternalContactCounts;
 import android.provider.ContactsContract.CommonDataKinds.Email;
-import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.Groups;
 import android.provider.ContactsContract.RawContacts;
+import android.provider.ContactsContract.RawContactsEntity;
 import android.telephony.PhoneNumberUtils;
 import android.telephony.TelephonyManager;
 import android.telephony.SubscriptionManager;
@@ -92,6 +92,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.android.contacts.R;
+import com.android.contacts.SimOccupancyCache;
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.common.ContactPhotoManager.DefaultImageRequest;
 import com.android.contacts.common.SimContactsConstants;
@@ -103,11 +104,15 @@ import com.android.contacts.common.list.ContactsSectionIndexer;
 import com.android.contacts.common.list.DefaultContactListAdapter;
 import com.android.contacts.common.MoreContactUtils;
 import com.android.contacts.common.model.account.SimAccountType;
+import com.android.contacts.group.GroupMembershipEditor;
+import com.android.contacts.list.MultiPickSelection;
 import com.android.contacts.util.RCSUtil;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class MultiPickContactActivity extends ListActivity implements
@@ -216,6 +221,8 @@ public class MultiPickContactActivity extends ListActivity implements
     private static final int MODE_SEARCH_SIM = MODE_DEFAULT_SIM | MODE_MASK_SEARCH;
     private static final int DIALOG_DEL_CALL = 1;
 
+    private static final String KEY_CHOICE_SET = "choice_set";
+
     public static final String ADD_GROUP_MEMBERS = "add_group_members";
 
     public static final String ACTION_MULTI_PICK = "com.android.contacts.action.MULTI_PICK";
@@ -235,7 +242,18 @@ public class MultiPickContactActivity extends ListActivity implements
 
     private ContactItemListAdapter mAdapter;
     private QueryHandler mQueryHandler;
-    private Bundle mChoiceSet;
+    private MultiPickSelection mChoiceSet;
+    private final MultiPickSelection.RowReader mRowReader = new MultiPickSelection.RowReader() {
+        @Override
+        public long getId(Cursor cursor) {
+            return getRowId(cursor);
+        }
+
+        @Override
+        public String[] getValues(Cursor cursor) {
+            return getRowValues(cursor);
+        }
+    };
 
     private ActionBar mActionBar;
     private SearchView mSearchView;
@@ -315,7 +333,12 @@ public class MultiPickContactActivity extends ListActivity implements
             mMode = MODE_DEFAULT_SIM;
         }
 
-        mChoiceSet = new Bundle();
+        if (savedInstanceState != null) {
+            mChoiceSet = savedInstanceState.getParcelable(KEY_CHOICE_SET);
+        }
+        if (mChoiceSet == null) {
+            mChoiceSet = new MultiPickSelection();
+        }
         mAdapter = new ContactItemListAdapter(this);
         getListView().setAdapter(mAdapter);
         mQueryHandler = new QueryHandler(this);
@@ -335,6 +358,12 @@ public class MultiPickContactActivity extends ListActivity implements
         registerReceiver(mBroadcastReceiver, filter);
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(KEY_CHOICE_SET, mChoiceSet);
+    }
+
     private void inflateSearchView() {
         LayoutInflater inflater = LayoutInflater.from(mActionBar.getThemedContext());
         mSearchViewContainer = (ViewGroup) inflater.inflate(R.layout.custom_action_bar, null);
@@ -412,7 +441,8 @@ public class MultiPickContactActivity extends ListActivity implements
                                     GROUP_ACTION_NONE);
                             switch (memberAction) {
                                 case GROUP_ACTION_ADD_MEMBER:
-                                    setResult(RESULT_OK, new Intent().putExtras(mChoiceSet));
+                                    setResult(RESULT_OK,
+                                            new Intent().putExtras(getChoiceSetBundle()));
                                     finish();
                                     break;
                                 case GROUP_ACTION_MOVE_MEMBER:
@@ -507,10 +537,17 @@ public class MultiPickContactActivity extends ListActivity implements
         doFilter(query);
     }
 
+    /**
+     * Returns the values of the selected items keyed by their id, as returned to the caller.
+     */
+    private Bundle getChoiceSetBundle() {
+        return mChoiceSet.toBundle(mAdapter.getCursor(), mRowReader);
+    }
+
     private void setResultAndFinish() {
         Intent intent = new Intent();
         Bundle bundle = new Bundle();
-        bundle.putBundle(SimContactsConstants.RESULT_KEY, mChoiceSet);
+        bundle.putBundle(SimContactsConstants.RESULT_KEY, getChoiceSetBundle());
         intent.putExtras(bundle);
         setResult(RESULT_OK, intent);
         finish();
@@ -521,9 +558,8 @@ public class MultiPickContactActivity extends ListActivity implements
         hideSoftKeyboard();
 
         ContactItemCache cache = (ContactItemCache) v.getTag();
-        String key = String.valueOf(cache.id);
 
-        if (!mChoiceSet.containsKey(key)) {
+        if (!mChoiceSet.isSelected(cache.id)) {
             String[] value = null;
             if (isPickContact()) {
                 value = new String[] {
@@ -549,9 +585,9 @@ public class MultiPickContactActivity extends ListActivity implements
                     cache.name, cache.number
                 };
             }
-            mChoiceSet.putStringArray(key, value);
+            mChoiceSet.select(cache.id, value);
         } else {
-            mChoiceSet.remove(key);
+            mChoiceSet.deselect(cache.id);
         }
 
         updateActionBar();
@@ -657,117 +693,232 @@ public class MultiPickContactActivity extends ListActivity implements
         }
     }
 
+    /**
+     * Deletes the selected calls or contacts.
+     * <p>
+     * The contacts stored on a SIM are found with a single query over all the selected contacts,
+     * and removed from each SIM before the phone contacts. The calls and contacts are then deleted
+     * with one provider delete per {@link #IDS_PER_DELETE} ids, rather than one operation per id.
+     * The progress is updated at most every {@link #PROGRESS_INTERVAL_MS}.
+     */
     private class DeleteContactsThread extends Thread implements
             DialogInterface.OnCancelListener, DialogInterface.OnClickListener {
-        boolean mCanceled = false;
-        private String name = null;
-        private String number = null;
-        private final String[] PROJECTION = new String[] {
-                Phone.CONTACT_ID,
-                Phone.NUMBER,
-                Phone.DISPLAY_NAME
+        /** The number of ids deleted by each provider delete. */
+        private static final int IDS_PER_DELETE = 500;
+        private static final long PROGRESS_INTERVAL_MS = 100;
+
+        private final String[] SIM_RAW_CONTACT_PROJECTION = new String[] {
+                RawContactsEntity.CONTACT_ID,
+                RawContactsEntity.ACCOUNT_NAME,
+                RawContactsEntity.MIMETYPE,
+                RawContactsEntity.DATA1,
+                RawContactsEntity.DATA2
         };
-        private final int COLUMN_NUMBER = 1;
-        private final int COLUMN_NAME = 2;
-
-        private ArrayList<ContentProviderOperation> mOpsCalls = null;
-        private ArrayList<ContentProviderOperation> mOpsContacts = null;
+        private final int COLUMN_CONTACT_ID = 0;
+        private final int COLUMN_ACCOUNT_NAME = 1;
+        private final int COLUMN_MIMETYPE = 2;
+        private final int COLUMN_DATA1 = 3;
+        private final int COLUMN_DATA2 = 4;
+
+        volatile boolean mCanceled = false;
+        private int mDeletedCount;
+        /** The number of selected contacts which are not stored on a SIM. */
+        private int mPhoneContactCount;
+        private long mLastProgressTime;
+        private final long[] mIds;
 
-        public DeleteContactsThread() {
+        /**
+         * @param ids The ids of the selected calls or contacts, read on the UI thread since the
+         *     selection can change while the thread runs.
+         */
+        public DeleteContactsThread(long[] ids) {
+            mIds = ids;
         }
 
         @Override
         public void run() {
-            final Context context = MultiPickContactActivity.this;
-            final ContentResolver resolver = getContentResolver();
+            final long[] ids = mIds;
 
-            // The mChoiceSet object will change when activity restart, but
-            // DeleteContactsThread running in background, so we need clone the
-            // choiceSet to avoid ConcurrentModificationException.
-            Bundle choiceSet = (Bundle) mChoiceSet.clone();
-            Set<String> keySet = choiceSet.keySet();
-            Iterator<String> it = keySet.iterator();
+            if (isPickCall()) {
+                deleteInRanges(Calls.CONTENT_URI, Calls._ID, ids, ids.length, ids.length);
+            } else {
+                final int count = deleteSimContacts(ids);
+                // The contacts removed from a SIM have already been counted in the progress.
+                deleteInRanges(RawContacts.CONTENT_URI, RawContacts.CONTACT_ID, ids, count,
+                        mPhoneContactCount);
+            }
 
-            ContentProviderOperation.Builder builder = null;
-            ContentProviderOperation cpo = null;
+            Log.d(TAG, "DeleteContactsThread run, progress:" + mDeletedCount);
+            mProgressDialog.dismiss();
+            finish();
+        }
+
+        /**
+         * Removes the contacts stored on a SIM from their SIM, one subscription after another.
+         * The ids of the contacts which could not be removed from their SIM are dropped from the
+         * given ids, so that they are not deleted from the phone either. The ids left are moved to
+         * the start of the array, the {@link #mPhoneContactCount} ids of the contacts which are
+         * not stored on a SIM first.
+         *
+         * @return the number of ids left, to delete from the phone.
+         */
+        private int deleteSimContacts(long[] ids) {
+            final ContentResolver resolver = getContentResolver();
+            // The SIM records of the contacts of each SIM, keyed by contact id.
+            final HashMap<Long, ContentValues> sim1Values = new HashMap<Long, ContentValues>();
+            final HashMap<Long, ContentValues> sim2Values = new HashMap<Long, ContentValues>();
+            final Cursor cursor = resolver.query(RawContactsEntity.CONTENT_URI,
+                    SIM_RAW_CONTACT_PROJECTION,
+                    RawContactsEntity.ACCOUNT_TYPE + "=? AND "
+                            + getIdSelection(RawContactsEntity.CONTACT_ID, ids, 0, ids.length),
+                    new String[] { SimContactsConstants.ACCOUNT_TYPE_SIM }, null);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        final long contactId = cursor.getLong(COLUMN_CONTACT_ID);
+                        final HashMap<Long, ContentValues> simValues =
+                                SimContactsConstants.SIM_NAME_2.equals(
+                                        cursor.getString(COLUMN_ACCOUNT_NAME))
+                                ? sim2Values : sim1Values;
+                        ContentValues values = simValues.get(contactId);
+                        if (values == null) {
+                            values = new ContentValues();
+                            values.putNull(SimContactsConstants.STR_TAG);
+                            values.putNull(SimContactsConstants.STR_NUMBER);
+                            values.putNull(SimContactsConstants.STR_ANRS);
+                            values.putNull(SimContactsConstants.STR_EMAILS);
+                            simValues.put(contactId, values);
+                        }
+                        addSimRecordValue(values, cursor);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            mPhoneContactCount = ids.length - sim1Values.size() - sim2Values.size();
+            if (sim1Values.isEmpty() && sim2Values.isEmpty()) {
+                return ids.length;
+            }
 
-            // Current contact count we can delete.
+            final HashSet<Long> failedIds = new HashSet<Long>();
+            deleteFromSim(sim1Values, SimContactsConstants.SUB_1, failedIds);
+            deleteFromSim(sim2Values, SimContactsConstants.SUB_2, failedIds);
+            final long[] simIds = new long[ids.length - mPhoneContactCount];
             int count = 0;
+            int simCount = 0;
+            for (long id : ids) {
+                if (sim1Values.containsKey(id) || sim2Values.containsKey(id)) {
+                    if (!failedIds.contains(id)) {
+                        simIds[simCount++] = id;
+                    }
+                } else {
+                    ids[count++] = id;
+                }
+            }
+            System.arraycopy(simIds, 0, ids, count, simCount);
+            return count + simCount;
+        }
 
-            // The contacts we batch delete once.
-            final int BATCH_DELETE_CONTACT_NUMBER = 100;
+        /**
+         * Adds the value of a data row of a SIM contact to the values identifying its SIM record,
+         * the way the contact was built from the record when the SIM was imported: the mobile
+         * number is the number of the record, the other numbers are its additional numbers.
+         */
+        private void addSimRecordValue(ContentValues values, Cursor cursor) {
+            final String mimeType = cursor.getString(COLUMN_MIMETYPE);
+            final String data = cursor.getString(COLUMN_DATA1);
+            if (mimeType == null || TextUtils.isEmpty(data)) {
+                return;
+            }
+            if (StructuredName.CONTENT_ITEM_TYPE.equals(mimeType)) {
+                values.put(SimContactsConstants.STR_TAG, data);
+            } else if (Phone.CONTENT_ITEM_TYPE.equals(mimeType)) {
+                if (cursor.getInt(COLUMN_DATA2) == Phone.TYPE_MOBILE
+                        && values.getAsString(SimContactsConstants.STR_NUMBER) == null) {
+                    values.put(SimContactsConstants.STR_NUMBER, data);
+                } else {
+                    appendSimRecordValue(values, SimContactsConstants.STR_ANRS, data,
+                            SimContactsConstants.ANR_SEP);
+                }
+            } else if (Email.CONTENT_ITEM_TYPE.equals(mimeType)) {
+                appendSimRecordValue(values, SimContactsConstants.STR_EMAILS, data,
+                        SimContactsConstants.EMAIL_SEP);
+            }
+        }
 
-            mOpsCalls = new ArrayList<ContentProviderOperation>();
-            mOpsContacts = new ArrayList<ContentProviderOperation>();
+        private void appendSimRecordValue(ContentValues values, String key, String data,
+                String separator) {
+            final String previous = values.getAsString(key);
+            values.put(key, previous == null ? data : previous + separator + data);
+        }
 
-            while (!mCanceled && it.hasNext()) {
-                String id = it.next();
-                Uri uri = null;
-                if (isPickCall()) {
-                    uri = Uri.withAppendedPath(Calls.CONTENT_URI, id);
-                    builder = ContentProviderOperation.newDelete(uri);
-                    cpo = builder.build();
-                    mOpsCalls.add(cpo);
-                } else {
-                    uri = Uri.withAppendedPath(Contacts.CONTENT_URI, id);
-                    long longId = Long.parseLong(id);
-                    int subscription = mSimContactsOperation.getSimSubscription(longId);
-
-                    if (subscription == SimContactsConstants.SUB_1
-                            || subscription == SimContactsConstants.SUB_2) {
-                        if (MoreContactUtils.isAPMOnAndSIMPowerDown(context)) {
-                            break;
-                        }
-                        ContentValues values =
-                                mSimContactsOperation.getSimAccountValues(longId);
-                        log("values is : " + values + "; sub is " + subscription);
-                        if (mSimContactsOperation.delete(values, subscription) == 0) {
-                            mProgressDialog.incrementProgressBy(1);
-                            continue;
-                        }
-                    }
-                    builder = ContentProviderOperation.newDelete(uri);
-                    cpo = builder.build();
-                    mOpsContacts.add(cpo);
+        /**
+         * Removes the given contacts from the SIM of the subscription, one record at a time since
+         * the SIM provider has no bulk delete. Adds the ids it could not remove to the failed ids.
+         *
+         * @param simValues The values identifying the SIM record of each contact, keyed by id.
+         */
+        private void deleteFromSim(Map<Long, ContentValues> simValues, int subscription,
+                Set<Long> failedIds) {
+            if (simValues.isEmpty()) {
+                return;
+            }
+            if (MoreContactUtils.isAPMOnAndSIMPowerDown(MultiPickContactActivity.this)) {
+                // The SIM cannot be written to, so keep its contacts on the phone too.
+                failedIds.addAll(simValues.keySet());
+                return;
+            }
+            final SimOccupancyCache occupancyCache =
+                    SimOccupancyCache.getInstance(MultiPickContactActivity.this);
+            for (Map.Entry<Long, ContentValues> entry : simValues.entrySet()) {
+                final Long contactId = entry.getKey();
+                if (mCanceled) {
+                    failedIds.add(contactId);
+                    continue;
                 }
-                // If contacts more than 2000, delete all contacts
-                // one by one will cause UI nonresponse.
-                mProgressDialog.incrementProgressBy(1);
-                // We batch delete contacts every 100.
-                if (count % BATCH_DELETE_CONTACT_NUMBER == 0) {
-                    batchDelete();
+                final ContentValues values = entry.getValue();
+                log("values is : " + values + "; sub is " + subscription);
+                if (mSimContactsOperation.delete(values, subscription) == 0) {
+                    failedIds.add(contactId);
+                } else {
+                    occupancyCache.onContactDeleted(subscription,
+                            values.getAsString(SimContactsConstants.STR_ANRS),
+                            values.getAsString(SimContactsConstants.STR_EMAILS));
                 }
-                count++;
+                mDeletedCount++;
+                updateProgress(false);
             }
-
-            batchDelete();
-            mOpsCalls = null;
-            mOpsContacts = null;
-            Log.d(TAG, "DeleteContactsThread run, progress:" + mProgressDialog.getProgress());
-            mProgressDialog.dismiss();
-            finish();
         }
 
         /**
-         * Batch delete contacts more efficient than one by one.
+         * Deletes the rows whose column matches one of the first {@code count} ids, with one
+         * provider delete per range of {@link #IDS_PER_DELETE} ids. Only the first
+         * {@code progressCount} ids are counted in the progress.
          */
-        private void batchDelete() {
-            try {
-                 getContentResolver().applyBatch(CallLog.AUTHORITY, mOpsCalls);
-                 getContentResolver().applyBatch(ContactsContract.AUTHORITY, mOpsContacts);
-                 mOpsCalls.clear();
-                 mOpsContacts.clear();
-             } catch (RemoteException e) {
-                 e.printStackTrace();
-             } catch (OperationApplicationException e) {
-                 e.printStackTrace();
-             }
+        private void deleteInRanges(Uri uri, String column, long[] ids, int count,
+                int progressCount) {
+            final ContentResolver resolver = getContentResolver();
+            for (int start = 0; start < count && !mCanceled; start += IDS_PER_DELETE) {
+                final int end = Math.min(start + IDS_PER_DELETE, count);
+                resolver.delete(uri, getIdSelection(column, ids, start, end), null);
+                mDeletedCount += Math.max(0, Math.min(end, progressCount) - start);
+                updateProgress(end == count);
+            }
+        }
+
+        /** Shows the number of contacts deleted, unless it was shown very recently. */
+        private void updateProgress(boolean force) {
+            final long now = SystemClock.elapsedRealtime();
+            if (force || now - mLastProgressTime >= PROGRESS_INTERVAL_MS) {
+                mLastProgressTime = now;
+                mProgressDialog.setProgress(mDeletedCount);
+            }
         }
 
         @Override
         public void onCancel(DialogInterface dialog) {
             mCanceled = true;
-            Log.d(TAG, "DeleteContactsThread onCancel, progress:" + mProgressDialog.getProgress());
+            Log.d(TAG, "DeleteContactsThread onCancel, progress:" + mDeletedCount);
             //  Give a toast show to tell user delete termination
         }
 
@@ -780,6 +931,18 @@ public class MultiPickContactActivity extends ListActivity implements
         }
     }
 
+    /** Returns a selection matching the rows whose column is one of the ids in the range. */
+    private static String getIdSelection(String column, long[] ids, int start, int end) {
+        final StringBuilder selection = new StringBuilder(column).append(" IN (");
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+        }
+        return selection.append(')').toString();
+    }
+
     @Override
     public boolean onKey(DialogInterface dialog, int keyCode, KeyEvent event) {
         switch (keyCode) {
@@ -808,7 +971,8 @@ public class MultiPickContactActivity extends ListActivity implements
         }
 
         Thread thread = isPickSim()
-                ? new ImportAllSimContactsThread() : new DeleteContactsThread();
+                ? new ImportAllSimContactsThread(getChoiceSetBundle())
+                : new DeleteContactsThread(mChoiceSet.getIds(mAdapter.getCursor(), mRowReader));
 
         mProgressDialog = new ProgressDialog(MultiPickContactActivity.this);
         mProgressDialog.setTitle(title);
@@ -1151,72 +1315,84 @@ public class MultiPickContactActivity extends ListActivity implements
     }
 
     private void selectAll(boolean isSelected) {
-        // update mChoiceSet.
-        // TODO: make it more efficient
-        Cursor cursor = mAdapter.getCursor();
-        if (cursor == null) {
-            log("cursor is null.");
-            return;
+        // Only the rows of the current cursor can be selected at once, which is the whole list
+        // since selecting all is not offered while searching. The rows are not visited: their
+        // values are read from the cursor only when the selection is returned.
+        if (isSelected) {
+            Cursor cursor = mAdapter.getCursor();
+            if (cursor == null) {
+                log("cursor is null.");
+                return;
+            }
+            mChoiceSet.selectAll(cursor.getCount());
+        } else {
+            mChoiceSet.clear();
         }
 
-        cursor.moveToPosition(-1);
-        while (cursor.moveToNext()) {
-            String id = null;
-            String[] value = null;
-            if (isPickContact()) {
-                id = String.valueOf(cursor.getLong(CONTACT_COLUMN_ID));
-                value = new String[] {
-                    cursor.getString(CONTACT_COLUMN_LOOKUP_KEY), id,
-                    cursor.getString(CONTACT_COLUMN_RAW_CONTACT_ID),
-                    cursor.getString(CONTACT_COLUMN_PHOTO_URI),
-                    cursor.getString(CONTACT_COLUMN_DISPLAY_NAME)
-                };
-            } else if (isPickPhone()) {
-                id = String.valueOf(cursor.getLong(PHONE_COLUMN_ID));
-                value = new String[] {
-                    cursor.getString(CONTACT_COLUMN_DISPLAY_NAME),
-                    cursor.getString(PHONE_COLUMN_NUMBER),
-                    String.valueOf(cursor.getInt(PHONE_COLUMN_TYPE)),
-                    cursor.getString(PHONE_COLUMN_LABEL),
-                    String.valueOf(cursor.getLong(CONTACT_COLUMN_ID))
-                };
-            } else if (isPickEmail()) {
-                id = String.valueOf(cursor.getLong(EMAIL_COLUMN_ID));
+        updateActionBar();
+        mAdapter.notifyDataSetChanged();
+    }
+
+    private long getRowId(Cursor cursor) {
+        if (isPickContact()) {
+            return cursor.getLong(CONTACT_COLUMN_ID);
+        } else if (isPickPhone()) {
+            return cursor.getLong(PHONE_COLUMN_ID);
+        } else if (isPickEmail()) {
+            return cursor.getLong(EMAIL_COLUMN_ID);
+        } else if (isPickCall()) {
+            return cursor.getLong(CALLLOG_COLUMN_ID);
+        } else if (isPickSim()) {
+            return cursor.getLong(SIM_COLUMN_ID);
+        }
+        return -1;
+    }
+
+    /** Returns the values returned for the row of the cursor when it is selected. */
+    private String[] getRowValues(Cursor cursor) {
+        String[] value = null;
+        if (isPickContact()) {
+            value = new String[] {
+                cursor.getString(CONTACT_COLUMN_LOOKUP_KEY),
+                String.valueOf(cursor.getLong(CONTACT_COLUMN_ID)),
+                cursor.getString(CONTACT_COLUMN_RAW_CONTACT_ID),
+                cursor.getString(CONTACT_COLUMN_PHOTO_URI),
+                cursor.getString(CONTACT_COLUMN_DISPLAY_NAME)
+            };
+        } else if (isPickPhone()) {
+            value = new String[] {
+                cursor.getString(CONTACT_COLUMN_DISPLAY_NAME),
+                cursor.getString(PHONE_COLUMN_NUMBER),
+                String.valueOf(cursor.getInt(PHONE_COLUMN_TYPE)),
+                cursor.getString(PHONE_COLUMN_LABEL),
+                String.valueOf(cursor.getLong(CONTACT_COLUMN_ID))
+            };
+        } else if (isPickEmail()) {
+            value = new String[] {
+                cursor.getString(CONTACT_COLUMN_DISPLAY_NAME),
+                cursor.getString(EMAIL_COLUMN_ADDRESS),
+                String.valueOf(cursor.getLong(EMAIL_COLUMN_ID))
+            };
+        } else if (isPickCall()) {
+            if (mSelectCallLog) {
                 value = new String[] {
-                    cursor.getString(CONTACT_COLUMN_DISPLAY_NAME),
-                    cursor.getString(EMAIL_COLUMN_ADDRESS),
-                    id
+                    cursor.getString(CALLLOG_COLUMN_NUMBER),
+                    cursor.getString(CALLLOG_COLUMN_CALLER_NAME)
                 };
-            } else if (isPickCall()) {
-                id = String.valueOf(cursor.getLong(CALLLOG_COLUMN_ID));
-                if (mSelectCallLog) {
-                    value = new String[] {
-                        cursor.getString(CALLLOG_COLUMN_NUMBER),
-                        cursor.getString(CALLLOG_COLUMN_CALLER_NAME)
-                    };
-                } else {
-                    value = new String[] {
-                        id
-                    };
-                }
-            } else if (isPickSim()) {
-                id = String.valueOf(cursor.getLong(SIM_COLUMN_ID));
+            } else {
                 value = new String[] {
-                    cursor.getString(SIM_COLUMN_DISPLAY_NAME),
-                    cursor.getString(SIM_COLUMN_NUMBER),
-                    cursor.getString(SIM_COLUMN_EMAILS),
-                    cursor.getString(SIM_COLUMN_ANRS)
+                    String.valueOf(cursor.getLong(CALLLOG_COLUMN_ID))
                 };
             }
-            if (isSelected) {
-                mChoiceSet.putStringArray(id, value);
-            } else {
-                mChoiceSet.remove(id);
-            }
-        }
-
-        updateActionBar();
-        mAdapter.notifyDataSetChanged();
+        } else if (isPickSim()) {
+            value = new String[] {
+                cursor.getString(SIM_COLUMN_DISPLAY_NAME),
+                cursor.getString(SIM_COLUMN_NUMBER),
+                cursor.getString(SIM_COLUMN_EMAILS),
+                cursor.getString(SIM_COLUMN_ANRS)
+            };
+        }
+        return value;
     }
 
     private class QueryHandler extends AsyncQueryHandler {
@@ -1226,6 +1402,8 @@ public class MultiPickContactActivity extends ListActivity implements
 
         @Override
         protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+            // If all the rows are selected, they are the rows of the cursor being replaced.
+            mChoiceSet.resolveAll(mAdapter.getCursor(), mRowReader);
             mAdapter.changeCursor(cursor);
             if (cursor == null || cursor.getCount() == 0) {
                 if (isPickCall()) {
@@ -1281,7 +1459,7 @@ public class MultiPickContactActivity extends ListActivity implements
             CharSequence query = mSearchView != null ? mSearchView.getQuery() : null;
             cliv.setHighlightedPrefix(query != null ? query.toString().toUpperCase() : null);
             cliv.setDisplayName(cache.name);
-            cliv.setChecked(mChoiceSet.containsKey(String.valueOf(cache.id)), !rebound);
+            cliv.setChecked(mChoiceSet.isSelected(cache.id), !rebound);
         }
 
         @Override
@@ -1330,7 +1508,7 @@ public class MultiPickContactActivity extends ListActivity implements
                 } else {
                     cliv.setPhoneNumber(null, null);
                 }
-                cliv.setChecked(mChoiceSet.containsKey(String.valueOf(cache.id)), true);
+                cliv.setChecked(mChoiceSet.isSelected(cache.id), true);
             } else if (isPickEmail()) {
                 cache.id = cursor.getLong(EMAIL_COLUMN_ID);
                 cache.email = cursor.getString(EMAIL_COLUMN_ADDRESS);
@@ -1425,7 +1603,7 @@ public class MultiPickContactActivity extends ListActivity implements
                 }
 
                 CheckBox checkBox = (CheckBox) view.findViewById(R.id.pick_contact_check);
-                checkBox.setChecked(mChoiceSet.containsKey(String.valueOf(cache.id)));
+                checkBox.setChecked(mChoiceSet.isSelected(cache.id));
             }
         }
 
@@ -1569,22 +1747,35 @@ public class MultiPickContactActivity extends ListActivity implements
         return mAccountManager.getAccountsByType(SimContactsConstants.ACCOUNT_TYPE_SIM);
     }
 
+    /**
+     * Imports the selected SIM contacts into the phone.
+     * <p>
+     * The inserts of up to {@link #CONTACTS_PER_BATCH} contacts are applied in a single batch,
+     * which may yield between contacts, rather than in one batch per contact. The import can be
+     * cancelled between batches, and the progress is updated after each batch.
+     */
     private class ImportAllSimContactsThread extends Thread
             implements DialogInterface.OnCancelListener, DialogInterface.OnClickListener {
-        boolean mCanceled = false;
+        /** The number of contacts inserted by each batch. */
+        private static final int CONTACTS_PER_BATCH = 50;
+        /** The number of operations above which a batch is applied, even if not full yet. */
+        private static final int MAX_OPERATIONS_PER_BATCH = 400;
+
+        volatile boolean mCanceled = false;
         // The total count how many to import.
         private int mTotalCount = 0;
         // The real count have imported.
-        private int mActualCount = 0;
+        private volatile int mActualCount = 0;
 
         private Account mAccount;
+        private final Bundle mChoiceSet;
 
-        public ImportAllSimContactsThread() {
+        public ImportAllSimContactsThread(Bundle choiceSet) {
+            mChoiceSet = choiceSet;
         }
 
         @Override
         public void run() {
-            final ContentValues emptyContentValues = new ContentValues();
             final ContentResolver resolver = getContentResolver();
 
             String type = getIntent().getStringExtra(SimContactsConstants.ACCOUNT_TYPE);
@@ -1594,18 +1785,66 @@ public class MultiPickContactActivity extends ListActivity implements
             log("import sim contact to account: " + mAccount);
             mTotalCount = mChoiceSet.size();
 
+            final long startTime = SystemClock.elapsedRealtime();
+            final ArrayList<ContentProviderOperation> operationList =
+                    new ArrayList<ContentProviderOperation>();
+            final ArrayList<String[]> batch = new ArrayList<String[]>(CONTACTS_PER_BATCH);
             for (String key : mChoiceSet.keySet()) {
                 if (mCanceled) {
                     break;
                 }
                 String[] values = mChoiceSet.getStringArray(key);
-                actuallyImportOneSimContact(values, resolver, mAccount);
-                mActualCount++;
-                mProgressDialog.incrementProgressBy(1);
+                addSimContactOperations(values, mAccount, operationList);
+                batch.add(values);
+                if (batch.size() >= CONTACTS_PER_BATCH
+                        || operationList.size() >= MAX_OPERATIONS_PER_BATCH) {
+                    applyImportBatch(resolver, operationList, batch);
+                }
             }
+            if (!mCanceled && !batch.isEmpty()) {
+                applyImportBatch(resolver, operationList, batch);
+            }
+
+            final long elapsed = SystemClock.elapsedRealtime() - startTime;
+            log("imported " + mActualCount + " of " + mTotalCount + " sim contacts in "
+                    + elapsed + " ms, " + (mActualCount * 1000L / Math.max(elapsed, 1))
+                    + " contacts/s");
             finish();
         }
 
+        /**
+         * Applies the operations inserting a batch of contacts. The batch is applied in a single
+         * transaction, so if it fails none of its contacts were inserted and they are inserted one
+         * by one, so that a single contact can not prevent the others from being imported.
+         */
+        private void applyImportBatch(ContentResolver resolver,
+                ArrayList<ContentProviderOperation> operationList, ArrayList<String[]> batch) {
+            final ArrayList<String[]> inserted;
+            if (applySimContactOperations(resolver, operationList)) {
+                inserted = batch;
+            } else {
+                inserted = new ArrayList<String[]>(batch.size());
+                if (batch.size() > 1) {
+                    for (String[] values : batch) {
+                        final ArrayList<ContentProviderOperation> contactOperations =
+                                new ArrayList<ContentProviderOperation>();
+                        addSimContactOperations(values, mAccount, contactOperations);
+                        if (applySimContactOperations(resolver, contactOperations)) {
+                            inserted.add(values);
+                        }
+                    }
+                }
+            }
+            for (String[] values : inserted) {
+                RCSUtil.importContactUpdateEnhanceScreen(values[SIM_COLUMN_NUMBER],
+                        values[SIM_COLUMN_ANRS]);
+            }
+            mActualCount += inserted.size();
+            mProgressDialog.incrementProgressBy(batch.size());
+            operationList.clear();
+            batch.clear();
+        }
+
         @Override
         public void onCancel(DialogInterface dialog) {
             final Context context = MultiPickContactActivity.this;
@@ -1628,8 +1867,25 @@ public class MultiPickContactActivity extends ListActivity implements
         }
     }
 
-    private static void actuallyImportOneSimContact(
-            String[] values, final ContentResolver resolver, Account account) {
+    private static boolean applySimContactOperations(ContentResolver resolver,
+            ArrayList<ContentProviderOperation> operationList) {
+        try {
+            resolver.applyBatch(ContactsContract.AUTHORITY, operationList);
+            return true;
+        } catch (RemoteException e) {
+            log(String.format("%s: %s", e.toString(), e.getMessage()));
+        } catch (OperationApplicationException e) {
+            log(String.format("%s: %s", e.toString(), e.getMessage()));
+        }
+        return false;
+    }
+
+    /**
+     * Adds the operations inserting a SIM contact to the list, which may already hold the
+     * operations of other contacts.
+     */
+    private static void addSimContactOperations(String[] values, Account account,
+            ArrayList<ContentProviderOperation> operationList) {
 
         final String name = values[SIM_COLUMN_DISPLAY_NAME];
         final String phoneNumber = values[SIM_COLUMN_NUMBER];
@@ -1647,11 +1903,11 @@ public class MultiPickContactActivity extends ListActivity implements
         } else {
             anrArray = null;
         }
-        log(" actuallyImportOneSimContact: name= " + name +
+        log(" addSimContactOperations: name= " + name +
                 ", phoneNumber= " + phoneNumber + ", emails= " + emailAddresses
                 + ", anrs= " + anrs + ", account is " + account);
-        final ArrayList<ContentProviderOperation> operationList =
-                new ArrayList<ContentProviderOperation>();
+        // The data rows refer to the raw contact inserted first for this contact.
+        final int rawContactIndex = operationList.size();
         ContentProviderOperation.Builder builder =
                 ContentProviderOperation.newInsert(RawContacts.CONTENT_URI);
         builder.withValue(RawContacts.AGGREGATION_MODE, RawContacts.AGGREGATION_MODE_SUSPENDED);
@@ -1659,11 +1915,13 @@ public class MultiPickContactActivity extends ListActivity implements
             builder.withValue(RawContacts.ACCOUNT_NAME, account.name);
             builder.withValue(RawContacts.ACCOUNT_TYPE, account.type);
         }
+        // No yield point, so that a batch which fails leaves none of its contacts behind and can
+        // be inserted again one contact at a time.
         operationList.add(builder.build());
 
         if (!TextUtils.isEmpty(name)) {
             builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-            builder.withValueBackReference(StructuredName.RAW_CONTACT_ID, 0);
+            builder.withValueBackReference(StructuredName.RAW_CONTACT_ID, rawContactIndex);
             builder.withValue(Data.MIMETYPE, StructuredName.CONTENT_ITEM_TYPE);
             builder.withValue(StructuredName.DISPLAY_NAME, name);
             operationList.add(builder.build());
@@ -1671,7 +1929,7 @@ public class MultiPickContactActivity extends ListActivity implements
 
         if (!TextUtils.isEmpty(phoneNumber)) {
             builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-            builder.withValueBackReference(Phone.RAW_CONTACT_ID, 0);
+            builder.withValueBackReference(Phone.RAW_CONTACT_ID, rawContactIndex);
             builder.withValue(Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE);
             builder.withValue(Phone.TYPE, Phone.TYPE_MOBILE);
             builder.withValue(Phone.NUMBER, phoneNumber);
@@ -1682,7 +1940,7 @@ public class MultiPickContactActivity extends ListActivity implements
         if (anrArray != null) {
             for (String anr : anrArray) {
                 builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-                builder.withValueBackReference(Phone.RAW_CONTACT_ID, 0);
+                builder.withValueBackReference(Phone.RAW_CONTACT_ID, rawContactIndex);
                 builder.withValue(Data.MIMETYPE, Phone.CONTENT_ITEM_TYPE);
                 builder.withValue(Phone.TYPE, Phone.TYPE_HOME);
                 builder.withValue(Phone.NUMBER, anr);
@@ -1690,25 +1948,16 @@ public class MultiPickContactActivity extends ListActivity implements
             }
         }
 
-        if (emailAddresses != null) {
+        if (emailAddressArray != null) {
             for (String emailAddress : emailAddressArray) {
                 builder = ContentProviderOperation.newInsert(Data.CONTENT_URI);
-                builder.withValueBackReference(Email.RAW_CONTACT_ID, 0);
+                builder.withValueBackReference(Email.RAW_CONTACT_ID, rawContactIndex);
                 builder.withValue(Data.MIMETYPE, Email.CONTENT_ITEM_TYPE);
                 builder.withValue(Email.TYPE, Email.TYPE_MOBILE);
                 builder.withValue(Email.ADDRESS, emailAddress);
                 operationList.add(builder.build());
             }
         }
-        RCSUtil.importContactUpdateEnhanceScreen(phoneNumber, anrs);
-
-        try {
-            resolver.applyBatch(ContactsContract.AUTHORITY, operationList);
-        } catch (RemoteException e) {
-            log(String.format("%s: %s", e.toString(), e.getMessage()));
-        } catch (OperationApplicationException e) {
-            log(String.format("%s: %s", e.toString(), e.getMessage()));
-        }
     }
 
     /**
@@ -1775,42 +2024,32 @@ public class MultiPickContactActivity extends ListActivity implements
 
     private class ChooseActionListener implements DialogInterface.OnClickListener {
         public void onClick(DialogInterface dialog, int which) {
-            new MoveGroupMemberTask(mChoiceSet,
+            new MoveGroupMemberTask(mChoiceSet.getIds(mAdapter.getCursor(), mRowReader),
                     getIntent().getLongExtra(EXTRA_GROUP_ID, -1),
                     mGroupIds.get(which)).execute();
         }
     }
 
+    /**
+     * Moves the selected contacts from a group to another one. The contacts which are already
+     * members of the destination group are found by merging sorted ids, and are only removed from
+     * the source group. All the changes are applied in the same stream of batches.
+     */
     class MoveGroupMemberTask extends AsyncTask<Object, Object, Object> {
+        /**
+         * The number of members moved by each batch, small enough for the progress to advance
+         * steadily when only a few hundred members are moved.
+         */
+        private static final int MEMBERS_PER_BATCH = 50;
 
-        private static final String GROUP_QUERY_GROUP_MEMBER_SELECTION =
-                Data.MIMETYPE + "=? AND "
-                        + GroupMembership.GROUP_ROW_ID + "=?";
-
-        private static final String GROUP_QUERY_RAW_CONTACTS_SELECTION =
-                RawContacts.CONTACT_ID + "=?";
-
-        private static final String GROUP_DELETE_MEMBER_SELECTION = Data.CONTACT_ID
-                + "=? AND "
-                + Data.MIMETYPE
-                + "=? AND "
-                + GroupMembership.GROUP_ROW_ID
-                + "=?";
-
-        private static final int BUFFER_LENGTH = 499;
-
-        private Bundle mChoiceSet;
+        private final long[] mContactIds;
         private long mDestGroupId;
         private long mSrcGroupId;
-        private boolean mCanceled = false;
-
-        private ArrayList<ContentProviderOperation> mAddOrMoveOperation;
-        private ArrayList<ContentProviderOperation> mDeleteOperation;
-        private ArrayList<String> mGroupMemberList = new ArrayList<String>();
+        private volatile boolean mCanceled = false;
 
-        public MoveGroupMemberTask(Bundle choiceSet,
+        public MoveGroupMemberTask(long[] contactIds,
                 long srcGroupId, long destGroupId) {
-            mChoiceSet = choiceSet;
+            mContactIds = contactIds;
             mSrcGroupId = srcGroupId;
             mDestGroupId = destGroupId;
         }
@@ -1822,7 +2061,7 @@ public class MultiPickContactActivity extends ListActivity implements
             mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
             mProgressDialog.setTitle(getProgressDialogTitle());
             mProgressDialog.setMessage(getProgressDialogMessage());
-            mProgressDialog.setMax(mChoiceSet != null ? mChoiceSet.keySet().size() : 100);
+            mProgressDialog.setMax(mContactIds != null ? mContactIds.length : 100);
             mProgressDialog.setProgress(0);
             mProgressDialog.setCanceledOnTouchOutside(false);
             mProgressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
@@ -1835,110 +2074,32 @@ public class MultiPickContactActivity extends ListActivity implements
 
         @Override
         protected Bundle doInBackground(Object... params) {
-            if (mChoiceSet == null || mSrcGroupId <= 0) {
+            if (mContactIds == null || mSrcGroupId <= 0 || mDestGroupId <= 0) {
                 return null;
             }
-            ContentResolver resolver = getContentResolver();
-            Cursor memberCursor = null;
-
-            memberCursor = resolver.query(Data.CONTENT_URI,
-                    new String[] {
-                        Data.CONTACT_ID
-                    },
-                    GROUP_QUERY_GROUP_MEMBER_SELECTION,
-                    new String[] {
-                            GroupMembership.CONTENT_ITEM_TYPE,
-                            String.valueOf(mDestGroupId)
-                    },
-                    null);
-
-            if (memberCursor != null && memberCursor.getCount() > 0) {
-                try {
-                    while (memberCursor.moveToNext()) {
-                        // Mark those contacts that already exist in the dest
-                        // group
-                        mGroupMemberList.add(String.valueOf(memberCursor.getLong(0)));
-                    }
-                } finally {
-                    if (memberCursor != null) {
-                        memberCursor.close();
-                    }
-                }
-            }
-
-            Set<String> keySet = mChoiceSet.keySet();
-            Iterator<String> it = keySet.iterator();
-
-            ContentProviderOperation.Builder builder;
-
-            mAddOrMoveOperation = new ArrayList<ContentProviderOperation>();
-            mDeleteOperation = new ArrayList<ContentProviderOperation>();
-            String id;
-            int count = 0;
-            int maxSize = mChoiceSet.keySet().size();
-            while (!mCanceled && it.hasNext()) {
-                id = it.next();
-                ++count;
-
-                if (mDestGroupId <= 0) {
-                    // Invalid group id, cancel the task
-                    return null;
-                }
-                if (mProgressDialog != null && mProgressDialog.isShowing()
-                        && count < maxSize - (maxSize) / 100) {
-                    mProgressDialog.incrementProgressBy(1);
-                }
-                if (mGroupMemberList.contains(id)) {
-                    // If the contact already exists in the group, need to
-                    // delete those
-                    // contacts that in the previous group
-                    builder = ContentProviderOperation.newDelete(Data.CONTENT_URI);
-                    builder.withSelection(GROUP_DELETE_MEMBER_SELECTION,
-                            new String[] {
-                            id,
-                            GroupMembership.CONTENT_ITEM_TYPE,
-                            String.valueOf(mSrcGroupId)
-                    });
-                    mDeleteOperation.add(builder.build());
-                    continue;
-                }
-                ContentValues values = new ContentValues();
-                values.put(GroupMembership.GROUP_ROW_ID, mDestGroupId);
-                builder = ContentProviderOperation.newUpdate(Data.CONTENT_URI);
-                builder.withSelection(GROUP_DELETE_MEMBER_SELECTION,
-                        new String[] {
-                                id,
-                                GroupMembership.CONTENT_ITEM_TYPE,
-                                String.valueOf(mSrcGroupId)
-                        });
-                builder.withValues(values);
-                mAddOrMoveOperation.add(builder.build());
-            }
+            final ContentResolver resolver = getContentResolver();
+            final long[] destMembers = GroupMembershipEditor.queryMembers(resolver,
+                    mDestGroupId, Data.CONTACT_ID);
+            final GroupMembershipEditor editor =
+                    new GroupMembershipEditor(resolver, MEMBERS_PER_BATCH);
 
-            if (mDeleteOperation.size() > 0) {
-                if (mDeleteOperation.size() > BUFFER_LENGTH) {
-                    addOrMoveApplyBatchByBuffer(mDeleteOperation, resolver);
-                } else {
-                    try {
-                        resolver.applyBatch(ContactsContract.AUTHORITY, mDeleteOperation);
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
-                    } catch (OperationApplicationException e) {
-                        e.printStackTrace();
-                    }
+            // The contacts already in the destination group only leave the source group.
+            for (long contactId : GroupMembershipEditor.getMembers(mContactIds, destMembers)) {
+                if (mCanceled) {
+                    break;
                 }
+                editor.deleteMembership(Data.CONTACT_ID, contactId, mSrcGroupId);
+                mProgressDialog.setProgress(editor.getAppliedCount());
             }
-            if (mAddOrMoveOperation.size() > BUFFER_LENGTH) {
-                addOrMoveApplyBatchByBuffer(mAddOrMoveOperation, resolver);
-            } else {
-                try {
-                    resolver.applyBatch(ContactsContract.AUTHORITY, mAddOrMoveOperation);
-                } catch (RemoteException e) {
-                    e.printStackTrace();
-                } catch (OperationApplicationException e) {
-                    e.printStackTrace();
+            for (long contactId : GroupMembershipEditor.getNonMembers(mContactIds, destMembers)) {
+                if (mCanceled) {
+                    break;
                 }
+                editor.moveMembership(contactId, mSrcGroupId, mDestGroupId);
+                mProgressDialog.setProgress(editor.getAppliedCount());
             }
+            editor.flush();
+            mProgressDialog.setProgress(editor.getAppliedCount());
             return null;
         }
 
@@ -1950,33 +2111,6 @@ public class MultiPickContactActivity extends ListActivity implements
             }
         }
 
-        private void addOrMoveApplyBatchByBuffer(ArrayList<ContentProviderOperation> list,
-                ContentResolver cr) {
-            final ArrayList<ContentProviderOperation> temp
-                = new ArrayList<ContentProviderOperation>(BUFFER_LENGTH);
-            int bufferSize = list.size() / BUFFER_LENGTH;
-            for (int index = 0; index <= bufferSize; index++) {
-                temp.clear();
-                if (index == bufferSize) {
-                    for (int i = index * BUFFER_LENGTH; i < list.size(); i++) {
-                        temp.add(list.get(i));
-                    }
-                } else {
-                    for (int i = index * BUFFER_LENGTH;
-                            i < index * BUFFER_LENGTH + BUFFER_LENGTH; i++) {
-                        temp.add(list.get(i));
-                    }
-                }
-                if (!temp.isEmpty()) {
-                    try {
-                        cr.applyBatch(ContactsContract.AUTHORITY, temp);
-                    } catch (Exception e) {
-                        Log.e(TAG, "apply batch by buffer error:" + e);
-                    }
-                }
-            }
-        }
-
         private String getProgressDialogTitle() {
             return getString(R.string.title_move_members);
         }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
+import android.provider.ContactsContract.Data;
+import android.util.Log;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Adds, removes and moves the members of groups.
+ * <p>
+ * The ids to change are compared with the current members of a group as sorted arrays, so that
+ * only the memberships which change are written. The operations are applied in batches of
+ * {@link #OPERATIONS_PER_BATCH} by default, whether they insert, update or delete memberships, and
+ * the provider may yield between any two of them.
+ */
+public class GroupMembershipEditor {
+    private static final String TAG = "GroupMembershipEditor";
+
+    /** The number of operations applied by each batch. */
+    @VisibleForTesting
+    static final int OPERATIONS_PER_BATCH = 400;
+
+    private static final String MEMBERS_SELECTION =
+            Data.MIMETYPE + "=? AND " + GroupMembership.GROUP_ROW_ID + "=?";
+
+    private final ContentResolver mResolver;
+    private final int mOperationsPerBatch;
+    private final ArrayList<ContentProviderOperation> mOperations;
+    private int mAppliedCount;
+
+    public GroupMembershipEditor(ContentResolver resolver) {
+        this(resolver, OPERATIONS_PER_BATCH);
+    }
+
+    /**
+     * @param operationsPerBatch The number of operations applied by each batch. Smaller batches
+     *     let {@link #getAppliedCount} advance more often, at the cost of more provider calls.
+     */
+    public GroupMembershipEditor(ContentResolver resolver, int operationsPerBatch) {
+        mResolver = resolver;
+        mOperationsPerBatch = operationsPerBatch;
+        mOperations = new ArrayList<ContentProviderOperation>(operationsPerBatch);
+    }
+
+    /**
+     * Returns the ids of the members of the group, sorted.
+     *
+     * @param idColumn {@link Data#RAW_CONTACT_ID} or {@link Data#CONTACT_ID}.
+     */
+    public static long[] queryMembers(ContentResolver resolver, long groupId, String idColumn) {
+        final Cursor c = resolver.query(Data.CONTENT_URI, new String[] { idColumn },
+                MEMBERS_SELECTION,
+                new String[] { GroupMembership.CONTENT_ITEM_TYPE, String.valueOf(groupId) },
+                idColumn);
+        if (c == null) {
+            return new long[0];
+        }
+        try {
+            final long[] ids = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                ids[i] = c.getLong(0);
+            }
+            // The provider sorts them already, but the merges rely on it.
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            c.close();
+        }
+    }
+
+    /** Returns the distinct ids which are not in the sorted members, sorted. */
+    public static long[] getNonMembers(long[] ids, long[] sortedMembers) {
+        return merge(ids, sortedMembers, false);
+    }
+
+    /** Returns the distinct ids which are in the sorted members, sorted. */
+    public static long[] getMembers(long[] ids, long[] sortedMembers) {
+        return merge(ids, sortedMembers, true);
+    }
+
+    private static long[] merge(long[] ids, long[] sortedMembers, boolean keepMembers) {
+        final long[] sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+        final long[] result = new long[sortedIds.length];
+        int count = 0;
+        int member = 0;
+        for (int i = 0; i < sortedIds.length; i++) {
+            final long id = sortedIds[i];
+            if (i > 0 && id == sortedIds[i - 1]) {
+                continue;
+            }
+            while (member < sortedMembers.length && sortedMembers[member] < id) {
+                member++;
+            }
+            final boolean isMember = member < sortedMembers.length && sortedMembers[member] == id;
+            if (isMember == keepMembers) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Adds the raw contact to the group. */
+    public void insertMembership(long rawContactId, long groupId) {
+        add(ContentProviderOperation.newInsert(Data.CONTENT_URI)
+                .withValue(Data.RAW_CONTACT_ID, rawContactId)
+                .withValue(Data.MIMETYPE, GroupMembership.CONTENT_ITEM_TYPE)
+                .withValue(GroupMembership.GROUP_ROW_ID, groupId));
+    }
+
+    /**
+     * Removes the raw contact or contact from the group.
+     *
+     * @param idColumn {@link Data#RAW_CONTACT_ID} or {@link Data#CONTACT_ID}.
+     */
+    public void deleteMembership(String idColumn, long id, long groupId) {
+        add(ContentProviderOperation.newDelete(Data.CONTENT_URI)
+                .withSelection(getMembershipSelection(idColumn), getMembershipArgs(id, groupId)));
+    }
+
+    /** Moves the contact from a group to another one. */
+    public void moveMembership(long contactId, long srcGroupId, long destGroupId) {
+        final ContentValues values = new ContentValues();
+        values.put(GroupMembership.GROUP_ROW_ID, destGroupId);
+        add(ContentProviderOperation.newUpdate(Data.CONTENT_URI)
+                .withSelection(getMembershipSelection(Data.CONTACT_ID),
+                        getMembershipArgs(contactId, srcGroupId))
+                .withValues(values));
+    }
+
+    private static String getMembershipSelection(String idColumn) {
+        return idColumn + "=? AND " + MEMBERS_SELECTION;
+    }
+
+    private static String[] getMembershipArgs(long id, long groupId) {
+        return new String[] {
+            String.valueOf(id), GroupMembership.CONTENT_ITEM_TYPE, String.valueOf(groupId)
+        };
+    }
+
+    private void add(ContentProviderOperation.Builder builder) {
+        mOperations.add(builder.withYieldAllowed(true).build());
+        if (mOperations.size() >= mOperationsPerBatch) {
+            flush();
+        }
+    }
+
+    /** Applies the operations added since the last batch. */
+    public void flush() {
+        if (mOperations.isEmpty()) {
+            return;
+        }
+        try {
+            mResolver.applyBatch(ContactsContract.AUTHORITY, mOperations);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply the group membership changes", e);
+        }
+        mAppliedCount += mOperations.size();
+        mOperations.clear();
+    }
+
+    /** Returns the number of operations applied so far, whether they succeeded or not. */
+    public int getAppliedCount() {
+        return mAppliedCount;
+    }
+}
@@ -21,19 +21,23 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.provider.CallLog.Calls;
 import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
+import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class CallLogInteractionsLoader extends AsyncTaskLoader<List<ContactInteraction>> {
+    private static final String TAG = "CallLogInteractionsLoader";
 
     private final String[] mPhoneNumbers;
     private final int mMaxToRetrieve;
@@ -53,9 +57,24 @@ public class CallLogInteractionsLoader extends AsyncTaskLoader<List<ContactInter
             return Collections.emptyList();
         }
 
+        final String[] normalizedNumbers = getNormalizedNumbers(mPhoneNumbers);
+        if (normalizedNumbers.length == 0) {
+            return Collections.emptyList();
+        }
+        try {
+            // Each call matches the selection once however many numbers it matches, so the
+            // calls need neither sorting nor deduping.
+            return queryCallLogInteractions(Calls.CONTENT_URI,
+                    ContactInteractionUtil.phoneNumbersEqualSelection(Calls.NUMBER,
+                            normalizedNumbers.length), normalizedNumbers);
+        } catch (SQLiteException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to match the numbers in a single query", e);
+        }
+
         final List<ContactInteraction> interactions = new ArrayList<>();
-        for (String number : mPhoneNumbers) {
-            interactions.addAll(getCallLogInteractions(number));
+        for (String number : normalizedNumbers) {
+            interactions.addAll(queryCallLogInteractions(Uri.withAppendedPath(
+                    Calls.CONTENT_FILTER_URI, Uri.encode(number)), null, null));
         }
         // Sort the call log interactions by date for duplicate removal
         Collections.sort(interactions, new Comparator<ContactInteraction>() {
@@ -71,7 +90,7 @@ public class CallLogInteractionsLoader extends AsyncTaskLoader<List<ContactInter
             }
         });
         // Duplicates only occur because of fuzzy matching. No need to dedupe a single number.
-        if (mPhoneNumbers.length == 1) {
+        if (normalizedNumbers.length == 1) {
             return interactions;
         }
         return pruneDuplicateCallLogInteractions(interactions, mMaxToRetrieve);
@@ -102,20 +121,27 @@ public class CallLogInteractionsLoader extends AsyncTaskLoader<List<ContactInter
         return subsetInteractions;
     }
 
-    private List<ContactInteraction> getCallLogInteractions(String phoneNumber) {
-        final String normalizedNumber = PhoneNumberUtils.normalizeNumber(phoneNumber);
-        // If the number contains only symbols, we can skip it
-        if (TextUtils.isEmpty(normalizedNumber)) {
-            return Collections.emptyList();
+    /** Returns the distinct normalized numbers, skipping the ones made only of symbols. */
+    @VisibleForTesting
+    static String[] getNormalizedNumbers(String[] phoneNumbers) {
+        final LinkedHashSet<String> normalizedNumbers = new LinkedHashSet<>();
+        for (String phoneNumber : phoneNumbers) {
+            final String normalizedNumber = PhoneNumberUtils.normalizeNumber(phoneNumber);
+            if (!TextUtils.isEmpty(normalizedNumber)) {
+                normalizedNumbers.add(normalizedNumber);
+            }
         }
-        final Uri uri = Uri.withAppendedPath(Calls.CONTENT_FILTER_URI,
-                Uri.encode(normalizedNumber));
+        return normalizedNumbers.toArray(new String[normalizedNumbers.size()]);
+    }
+
+    private List<ContactInteraction> queryCallLogInteractions(Uri uri, String selection,
+            String[] selectionArgs) {
         // Append the LIMIT clause onto the ORDER BY clause. This won't cause crashes as long
         // as we don't also set the {@link android.provider.CallLog.Calls.LIMIT_PARAM_KEY} that
         // becomes available in KK.
         final String orderByAndLimit = Calls.DATE + " DESC LIMIT " + mMaxToRetrieve;
-        final Cursor cursor = getContext().getContentResolver().query(uri, null, null, null,
-                orderByAndLimit);
+        final Cursor cursor = getContext().getContentResolver().query(uri, null, selection,
+                selectionArgs, orderByAndLimit);
         try {
             if (cursor == null || cursor.getCount() < 1) {
                 return Collections.emptyList();
@@ -47,6 +47,22 @@ public class ContactInteractionUtil {
         return sb.append(")").toString();
     }
 
+    /**
+     * @return a selection matching the rows whose {@param column} is the same phone number as any
+     * of {@param count} arguments, with the inexact matching of the telephony providers.
+     */
+    public static String phoneNumbersEqualSelection(String column, int count) {
+        Preconditions.checkArgument(count > 0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append("PHONE_NUMBERS_EQUAL(").append(column).append(", ?)");
+        }
+        return sb.toString();
+    }
+
     /**
      * Same as {@link formatDateStringFromTimestamp(long, Context, Calendar)} but uses the current
      * time.
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.interactions;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.CalendarContract;
+import android.provider.CallLog.Calls;
+import android.provider.Telephony;
+import android.util.LruCache;
+
+import com.android.contacts.common.testing.NeededForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the interactions loaded for the recently viewed contacts, so that they are shown at once
+ * when one of these contacts is viewed again.
+ *
+ * The interactions of each source are cached apart, keyed by the phone numbers or the email
+ * addresses they were loaded for, so that editing a contact does not show the interactions of
+ * its former numbers. When a source changes, only the interactions of that source are dropped.
+ * Since the calendar interactions depend on the current time, the interactions are also dropped
+ * after {@link #MAX_AGE_MILLIS}.
+ *
+ * Must only be used on the UI thread.
+ */
+public class ContactInteractionsCache {
+
+    public static final int SOURCE_SMS = 0;
+    public static final int SOURCE_CALENDAR = 1;
+    public static final int SOURCE_CALL_LOG = 2;
+    private static final int SOURCE_COUNT = 3;
+
+    /** The content observed for the changes of each source. */
+    private static final Uri[] SOURCE_URIS = new Uri[] {
+        Telephony.MmsSms.CONTENT_URI,
+        CalendarContract.CONTENT_URI,
+        Calls.CONTENT_URI,
+    };
+
+    /** The number of contacts whose interactions are kept for each source. */
+    private static final int MAX_CONTACTS = 32;
+    private static final long MAX_AGE_MILLIS = 5L * 60L * 1000L /* 5 minutes */;
+
+    private static class CachedInteractions {
+        public final List<ContactInteraction> interactions;
+        public final long time;
+
+        public CachedInteractions(List<ContactInteraction> interactions, long time) {
+            this.interactions = interactions;
+            this.time = time;
+        }
+    }
+
+    private static ContactInteractionsCache sInstance;
+
+    private final List<LruCache<String, CachedInteractions>> mCaches =
+            new ArrayList<>(SOURCE_COUNT);
+    /** Incremented when a source changes, so that the interactions loaded before are not kept. */
+    private final int[] mGenerations = new int[SOURCE_COUNT];
+
+    public static synchronized ContactInteractionsCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContactInteractionsCache();
+            sInstance.registerObservers(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @NeededForTesting
+    ContactInteractionsCache() {
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            mCaches.add(new LruCache<String, CachedInteractions>(MAX_CONTACTS));
+        }
+    }
+
+    private void registerObservers(Context context) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            final int source = i;
+            context.getContentResolver().registerContentObserver(SOURCE_URIS[source],
+                    /* notifyForDescendents = */ true, new ContentObserver(handler) {
+                        @Override
+                        public void onChange(boolean selfChange) {
+                            invalidate(source);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Returns the generation of the source, to pass to {@link #put} with the interactions loaded
+     * from now on.
+     */
+    public int getGeneration(int source) {
+        return mGenerations[source];
+    }
+
+    /**
+     * Returns the interactions of the source for the given phone numbers or email addresses, or
+     * null if they are not cached.
+     */
+    public List<ContactInteraction> get(int source, String[] addresses) {
+        final LruCache<String, CachedInteractions> cache = mCaches.get(source);
+        final String key = getKey(addresses);
+        final CachedInteractions cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - cached.time > MAX_AGE_MILLIS) {
+            cache.remove(key);
+            return null;
+        }
+        return cached.interactions;
+    }
+
+    /**
+     * Caches the interactions of the source for the given phone numbers or email addresses, unless
+     * the source has changed since the given generation.
+     */
+    public void put(int source, String[] addresses, List<ContactInteraction> interactions,
+            int generation) {
+        if (generation != mGenerations[source]) {
+            return;
+        }
+        // The loaders clear their lists when they are reset.
+        mCaches.get(source).put(getKey(addresses), new CachedInteractions(
+                Collections.unmodifiableList(new ArrayList<>(interactions)),
+                SystemClock.elapsedRealtime()));
+    }
+
+    @NeededForTesting
+    void invalidate(int source) {
+        mGenerations[source]++;
+        mCaches.get(source).evictAll();
+    }
+
+    private static String getKey(String[] addresses) {
+        return Arrays.toString(addresses);
+    }
+}
@@ -31,9 +31,9 @@ import java.util.List;
 /**
  * Loads the most recent sms between the passed in phone numbers.
  *
- * This is a two part process. The first step is retrieving the threadIds for each of the phone
- * numbers using fuzzy matching. The next step is to run another query against these threadIds
- * to retrieve the actual sms.
+ * This is a two part process. The first step is retrieving the threadIds of all the phone
+ * numbers using fuzzy matching, with {@link SmsThreadResolver}. The next step is to run another
+ * query against these threadIds to retrieve the actual sms.
  */
 public class SmsInteractionsLoader extends AsyncTaskLoader<List<ContactInteraction>> {
 
@@ -63,16 +63,10 @@ public class SmsInteractionsLoader extends AsyncTaskLoader<List<ContactInteracti
             return Collections.emptyList();
         }
 
-        // Retrieve the thread IDs
+        // Retrieve the thread IDs, without creating a thread for a number which has none
         List<String> threadIdStrings = new ArrayList<>();
-        for (String phone : mPhoneNums) {
-            try {
-                threadIdStrings.add(String.valueOf(
-                        Telephony.Threads.getOrCreateThreadId(getContext(), phone)));
-            } catch (Exception e) {
-                // Do nothing. Telephony.Threads.getOrCreateThreadId() throws exceptions when
-                // it can't find/create a threadId (b/17657656).
-            }
+        for (long threadId : SmsThreadResolver.getInstance(getContext()).getThreadIds(mPhoneNums)) {
+            threadIdStrings.add(String.valueOf(threadId));
         }
 
         // Query the SMS database for the threads
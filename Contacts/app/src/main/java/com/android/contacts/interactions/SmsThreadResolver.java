@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.interactions;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.Telephony;
+import android.provider.Telephony.CanonicalAddressesColumns;
+import android.provider.Telephony.Threads;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Finds the SMS threads with the phone numbers of a contact, without creating any.
+ *
+ * {@link Threads#getOrCreateThreadId} calls the provider once for each number, and creates an
+ * empty thread for a number which has none. Instead, all the numbers are matched against the
+ * canonical addresses of the provider in one query, and the threads with a single one of these
+ * addresses are read with another one. The threads of each number are cached until the SMS
+ * provider changes.
+ */
+public class SmsThreadResolver {
+
+    private static final String TAG = SmsThreadResolver.class.getSimpleName();
+
+    /** The number of phone numbers whose threads are kept. */
+    private static final int CACHE_SIZE = 100;
+
+    private static final Uri CANONICAL_ADDRESSES_URI =
+            Uri.withAppendedPath(Telephony.MmsSms.CONTENT_URI, "canonical-addresses");
+    /** The threads themselves, without their latest message. */
+    private static final Uri SIMPLE_THREADS_URI = Threads.CONTENT_URI.buildUpon()
+            .appendQueryParameter("simple", "true").build();
+
+    private static SmsThreadResolver sInstance;
+
+    private final ContentResolver mResolver;
+    private final LruCache<String, long[]> mCache = new LruCache<String, long[]>(CACHE_SIZE);
+    /** Incremented when the cache is cleared, so that a lookup running meanwhile is not cached. */
+    private int mGeneration;
+
+    public static synchronized SmsThreadResolver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SmsThreadResolver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SmsThreadResolver(Context context) {
+        mResolver = context.getContentResolver();
+        mResolver.registerContentObserver(Telephony.MmsSms.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        synchronized (SmsThreadResolver.this) {
+                            mGeneration++;
+                            mCache.evictAll();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the ids of the threads with any of the phone numbers, sorted. Must not be called on
+     * the UI thread.
+     */
+    public long[] getThreadIds(String[] phoneNumbers) {
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        final TreeSet<Long> threadIds = new TreeSet<>();
+        final LinkedHashSet<String> missingNumbers = new LinkedHashSet<>();
+        for (String phoneNumber : phoneNumbers) {
+            // Numbers made only of symbols match nothing.
+            if (TextUtils.isEmpty(PhoneNumberUtils.normalizeNumber(phoneNumber))) {
+                continue;
+            }
+            final long[] cached = mCache.get(phoneNumber);
+            if (cached == null) {
+                missingNumbers.add(phoneNumber);
+            } else {
+                addAll(threadIds, cached);
+            }
+        }
+
+        if (!missingNumbers.isEmpty()) {
+            final HashMap<String, long[]> found = findThreadIds(new ArrayList<>(missingNumbers));
+            if (found != null) {
+                synchronized (this) {
+                    for (String phoneNumber : missingNumbers) {
+                        final long[] numberThreadIds = found.get(phoneNumber);
+                        addAll(threadIds, numberThreadIds);
+                        if (generation == mGeneration) {
+                            mCache.put(phoneNumber, numberThreadIds);
+                        }
+                    }
+                }
+            }
+        }
+
+        final long[] result = new long[threadIds.size()];
+        int i = 0;
+        for (Long threadId : threadIds) {
+            result[i++] = threadId;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of the threads of each phone number, or null if the provider could not be
+     * read.
+     */
+    private HashMap<String, long[]> findThreadIds(List<String> phoneNumbers) {
+        try {
+            // The ids of the canonical addresses matching each number, in the same inexact way
+            // as the provider matches the number of a new message.
+            final List<List<Long>> addressIds = new ArrayList<>(phoneNumbers.size());
+            final LinkedHashSet<String> allAddressIds = new LinkedHashSet<>();
+            for (int i = 0; i < phoneNumbers.size(); i++) {
+                addressIds.add(new ArrayList<Long>());
+            }
+            Cursor cursor = mResolver.query(CANONICAL_ADDRESSES_URI,
+                    new String[] {BaseColumns._ID, CanonicalAddressesColumns.ADDRESS},
+                    ContactInteractionUtil.phoneNumbersEqualSelection(
+                            CanonicalAddressesColumns.ADDRESS, phoneNumbers.size()),
+                    phoneNumbers.toArray(new String[phoneNumbers.size()]), null);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    final long addressId = cursor.getLong(0);
+                    final String address = cursor.getString(1);
+                    for (int i = 0; i < phoneNumbers.size(); i++) {
+                        if (PhoneNumberUtils.compare(address, phoneNumbers.get(i))) {
+                            addressIds.get(i).add(addressId);
+                            allAddressIds.add(String.valueOf(addressId));
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // The threads with only one recipient, which is one of these addresses.
+            final HashMap<Long, List<Long>> addressThreadIds = new HashMap<>();
+            if (!allAddressIds.isEmpty()) {
+                cursor = mResolver.query(SIMPLE_THREADS_URI,
+                        new String[] {Threads._ID, Threads.RECIPIENT_IDS},
+                        Threads.RECIPIENT_IDS + " IN "
+                                + ContactInteractionUtil.questionMarks(allAddressIds.size()),
+                        allAddressIds.toArray(new String[allAddressIds.size()]), null);
+                if (cursor == null) {
+                    return null;
+                }
+                try {
+                    while (cursor.moveToNext()) {
+                        final Long addressId = Long.valueOf(cursor.getString(1));
+                        List<Long> threadIds = addressThreadIds.get(addressId);
+                        if (threadIds == null) {
+                            threadIds = new ArrayList<>();
+                            addressThreadIds.put(addressId, threadIds);
+                        }
+                        threadIds.add(cursor.getLong(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            final HashMap<String, long[]> result = new HashMap<>();
+            for (int i = 0; i < phoneNumbers.size(); i++) {
+                final TreeSet<Long> threadIds = new TreeSet<>();
+                for (Long addressId : addressIds.get(i)) {
+                    final List<Long> ids = addressThreadIds.get(addressId);
+                    if (ids != null) {
+                        threadIds.addAll(ids);
+                    }
+                }
+                final long[] numberThreadIds = new long[threadIds.size()];
+                int j = 0;
+                for (Long threadId : threadIds) {
+                    numberThreadIds[j++] = threadId;
+                }
+                result.put(phoneNumbers.get(i), numberThreadIds);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to find the threads of the numbers", e);
+            return null;
+        }
+    }
+
+    private static void addAll(TreeSet<Long> set, long[] values) {
+        for (long value : values) {
+            set.add(value);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.LongSparseArray;
+
+import java.util.Arrays;
+
+/**
+ * The items selected in a multiple choice list, keyed by the id of their row.
+ * <p>
+ * Selecting all the rows does not visit them: the selection only records that all the rows of the
+ * list are selected, except the ones deselected afterwards. The values describing the selected rows
+ * are then read from the cursor of the list only when they are needed, by {@link #toBundle}, and
+ * {@link #getIds} only reads the ids. The values of a row selected on its own are given when it is
+ * selected.
+ * <p>
+ * "All the rows" are the rows of the cursor shown when they were selected, so
+ * {@link #resolveAll} must be called with that cursor before it is replaced.
+ */
+public class MultiPickSelection implements Parcelable {
+
+    /** Reads the id and the values of a row of the list. */
+    public interface RowReader {
+        long getId(Cursor cursor);
+
+        String[] getValues(Cursor cursor);
+    }
+
+    /** Whether all the rows are selected, except the ones in {@link #mEntries}. */
+    private boolean mAllSelected;
+    /** The number of rows of the list when all the rows were selected. */
+    private int mAllCount;
+    /**
+     * The selected rows with their values, or the deselected rows when {@link #mAllSelected}, in
+     * which case the values are null.
+     */
+    private final LongSparseArray<String[]> mEntries;
+
+    public MultiPickSelection() {
+        mEntries = new LongSparseArray<String[]>();
+    }
+
+    private MultiPickSelection(Parcel source) {
+        mAllSelected = source.readInt() != 0;
+        mAllCount = source.readInt();
+        final long[] ids = source.createLongArray();
+        mEntries = new LongSparseArray<String[]>(ids.length);
+        for (long id : ids) {
+            mEntries.append(id, mAllSelected ? null : source.createStringArray());
+        }
+    }
+
+    public boolean isSelected(long id) {
+        return mAllSelected != (mEntries.indexOfKey(id) >= 0);
+    }
+
+    public boolean isAllSelected() {
+        return mAllSelected;
+    }
+
+    /** Selects a row, with the values to return for it. */
+    public void select(long id, String[] values) {
+        if (mAllSelected) {
+            mEntries.remove(id);
+        } else {
+            mEntries.put(id, values);
+        }
+    }
+
+    public void deselect(long id) {
+        if (mAllSelected) {
+            mEntries.put(id, null);
+        } else {
+            mEntries.remove(id);
+        }
+    }
+
+    /** Selects all the rows of the list, which has the given number of rows. */
+    public void selectAll(int count) {
+        mEntries.clear();
+        mAllSelected = true;
+        mAllCount = count;
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mAllSelected = false;
+        mAllCount = 0;
+    }
+
+    public int size() {
+        return mAllSelected ? mAllCount - mEntries.size() : mEntries.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Records the rows and values of the given cursor which are selected, if all the rows are
+     * selected, so that the selection no longer depends on the cursor. Does nothing if there is
+     * no cursor yet, as when the selection has been restored before the list was loaded.
+     */
+    public void resolveAll(Cursor cursor, RowReader reader) {
+        if (!mAllSelected || cursor == null) {
+            return;
+        }
+        final LongSparseArray<String[]> entries = new LongSparseArray<String[]>(size());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final long id = reader.getId(cursor);
+            if (mEntries.indexOfKey(id) < 0) {
+                entries.put(id, reader.getValues(cursor));
+            }
+        }
+        mAllSelected = false;
+        mAllCount = 0;
+        mEntries.clear();
+        for (int i = 0; i < entries.size(); i++) {
+            mEntries.append(entries.keyAt(i), entries.valueAt(i));
+        }
+    }
+
+    /**
+     * Returns the ids of the selected rows, reading them from the cursor if all the rows are
+     * selected. The values of the rows are not read, and the selection is left unchanged.
+     */
+    public long[] getIds(Cursor cursor, RowReader reader) {
+        if (mAllSelected) {
+            if (cursor == null) {
+                return new long[0];
+            }
+            final long[] ids = new long[cursor.getCount()];
+            int count = 0;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                final long id = reader.getId(cursor);
+                if (mEntries.indexOfKey(id) < 0) {
+                    ids[count++] = id;
+                }
+            }
+            return count == ids.length ? ids : Arrays.copyOf(ids, count);
+        }
+        final long[] ids = new long[mEntries.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mEntries.keyAt(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the values of the selected rows keyed by their id, reading them from the cursor if
+     * all the rows are selected.
+     */
+    public Bundle toBundle(Cursor cursor, RowReader reader) {
+        resolveAll(cursor, reader);
+        final Bundle bundle = new Bundle();
+        if (mAllSelected) {
+            return bundle;
+        }
+        for (int i = 0; i < mEntries.size(); i++) {
+            bundle.putStringArray(String.valueOf(mEntries.keyAt(i)), mEntries.valueAt(i));
+        }
+        return bundle;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mAllSelected ? 1 : 0);
+        dest.writeInt(mAllCount);
+        final long[] ids = new long[mEntries.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mEntries.keyAt(i);
+        }
+        dest.writeLongArray(ids);
+        if (!mAllSelected) {
+            for (int i = 0; i < ids.length; i++) {
+                dest.writeStringArray(mEntries.valueAt(i));
+            }
+        }
+    }
+
+    public static final Parcelable.Creator<MultiPickSelection> CREATOR =
+            new Parcelable.Creator<MultiPickSelection>() {
+                @Override
+                public MultiPickSelection createFromParcel(Parcel source) {
+                    return new MultiPickSelection(source);
+                }
+
+                @Override
+                public MultiPickSelection[] newArray(int size) {
+                    return new MultiPickSelection[size];
+                }
+            };
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.android.contacts.common.testing.NeededForTesting;
+import com.android.contacts.common.util.MaterialColorMapUtils.MaterialPalette;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Remembers the colors computed from the photos of the contacts shown by
+ * {@link QuickContactActivity}, so that the header of a contact already seen is tinted as soon
+ * as it is shown rather than once its photo has been analyzed.
+ *
+ * The colors are kept in their own preferences file, so that they outlive the process. Loading
+ * the preferences starts on a background thread when the cache is created, after which they are
+ * read from memory. A photo is identified by its URI and a hash of its thumbnail, since the URI
+ * of a photo without a display photo does not change with the photo.
+ */
+public class PhotoColorCache {
+
+    private static final String PREFERENCES_NAME = "quick_contact_photo_colors";
+
+    /** The number of photos whose colors are kept. */
+    @NeededForTesting
+    static final int MAX_ENTRIES = 200;
+
+    /** The colors computed from a photo. */
+    public static final class PhotoColors {
+        public final MaterialPalette palette;
+        /** Whether the photo is white where the header draws white text and icons. */
+        public final boolean isWhite;
+
+        public PhotoColors(MaterialPalette palette, boolean isWhite) {
+            this.palette = palette;
+            this.isWhite = isWhite;
+        }
+    }
+
+    private static PhotoColorCache sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    public static synchronized PhotoColorCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhotoColorCache(context.getApplicationContext()
+                    .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    @NeededForTesting
+    PhotoColorCache(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    /** Returns the key of the photo with the given URI and thumbnail. */
+    public static String getKey(String photoUri, byte[] thumbnail) {
+        return photoUri + "#" + Integer.toHexString(Arrays.hashCode(thumbnail));
+    }
+
+    /** Returns the colors of the photo, or null if they are not known. */
+    public PhotoColors get(String key) {
+        return decode(mPreferences.getString(key, null));
+    }
+
+    /**
+     * Remembers the colors of the photo, forgetting the ones computed the longest time ago if
+     * there are too many. Must not be called on the UI thread.
+     */
+    public void put(String key, PhotoColors colors) {
+        final SharedPreferences.Editor editor = mPreferences.edit();
+        final Map<String, ?> entries = mPreferences.getAll();
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(key)) {
+            String oldestKey = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                final long time = getTime(entry.getValue());
+                if (time < oldestTime) {
+                    oldestKey = entry.getKey();
+                    oldestTime = time;
+                }
+            }
+            editor.remove(oldestKey);
+        }
+        editor.putString(key, encode(colors)).apply();
+    }
+
+    /** Encodes the colors as "time:primaryColor:secondaryColor:isWhite". */
+    private static String encode(PhotoColors colors) {
+        return System.currentTimeMillis() + ":" + colors.palette.mPrimaryColor + ":"
+                + colors.palette.mSecondaryColor + ":" + (colors.isWhite ? 1 : 0);
+    }
+
+    private static PhotoColors decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        final String[] fields = value.split(":");
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            return new PhotoColors(new MaterialPalette(Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2])), "1".equals(fields[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long getTime(Object value) {
+        if (!(value instanceof String)) {
+            return Long.MIN_VALUE;
+        }
+        final String string = (String) value;
+        try {
+            return Long.parseLong(string.substring(0, Math.max(string.indexOf(':'), 0)));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -82,12 +82,13 @@ import android.provider.ContactsContract.RawContacts;
 import android.support.v7.graphics.Palette;
 import android.telecom.PhoneAccount;
 import android.telecom.TelecomManager;
-import android.telephony.SubscriptionManager;
 import android.text.BidiFormatter;
 import android.text.TextDirectionHeuristics;
 import android.text.TextUtils;
 import android.telephony.TelephonyManager;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Menu;
@@ -105,6 +106,7 @@ import com.android.contacts.ContactSaveService;
 import com.android.contacts.ContactsActivity;
 import com.android.contacts.NfcHandler;
 import com.android.contacts.RcsApiManager;
+import com.android.contacts.SimOccupancyCache;
 import com.android.contacts.common.MoreContactUtils;
 import com.android.contacts.common.SimContactsConstants;
 import com.android.contacts.R;
@@ -153,11 +155,13 @@ import com.android.contacts.interactions.CallLogInteraction;
 import com.android.contacts.interactions.CallLogInteractionsLoader;
 import com.android.contacts.interactions.ContactDeletionInteraction;
 import com.android.contacts.interactions.ContactInteraction;
+import com.android.contacts.interactions.ContactInteractionsCache;
 import com.android.contacts.interactions.SmsInteractionsLoader;
 import com.android.contacts.quickcontact.ExpandingEntryCardView.Entry;
 import com.android.contacts.quickcontact.ExpandingEntryCardView.EntryContextMenuInfo;
 import com.android.contacts.quickcontact.ExpandingEntryCardView.EntryTag;
 import com.android.contacts.quickcontact.ExpandingEntryCardView.ExpandingEntryCardViewListener;
+import com.android.contacts.quickcontact.PhotoColorCache.PhotoColors;
 import com.android.contacts.util.ImageViewDrawableSetter;
 import com.android.contacts.util.PhoneCapabilityTester;
 import com.android.contacts.util.RCSUtil;
@@ -357,6 +361,10 @@ public class QuickContactActivity extends ContactsActivity {
      */
     private Map<Integer, List<ContactInteraction>> mRecentLoaderResults =
         new ConcurrentHashMap<>(4, 0.9f, 1);
+    /** The phone numbers or email addresses each running interactions loader was started for. */
+    private final SparseArray<String[]> mRecentLoaderAddresses = new SparseArray<>();
+    /** The generation of the interactions cache when each interactions loader was started. */
+    private final SparseIntArray mRecentLoaderGenerations = new SparseIntArray();
 
     private static final String FRAGMENT_TAG_SELECT_ACCOUNT = "select_account_fragment";
 
@@ -1029,8 +1037,7 @@ public class QuickContactActivity extends ContactsActivity {
 
         mPhotoView.setIsBusiness(mContactData.isDisplayNameFromOrganization());
         mPhotoSetter.setupContactPhoto(data, mPhotoView);
-        extractAndApplyTintFromPhotoViewAsynchronously();
-        analyzeWhitenessOfPhotoAsynchronously();
+        extractAndApplyColorsFromPhotoViewAsynchronously();
         setHeaderNameText(ContactDisplayUtils.getDisplayName(this, data).toString());
 
         Trace.endSection();
@@ -1080,17 +1087,11 @@ public class QuickContactActivity extends ContactsActivity {
         phonesExtraBundle.putStringArray(KEY_LOADER_EXTRA_PHONES, phoneNumbers);
 
         Trace.beginSection("start sms loader");
-        getLoaderManager().initLoader(
-                LOADER_SMS_ID,
-                phonesExtraBundle,
-                mLoaderInteractionsCallbacks);
+        startInteractionLoader(LOADER_SMS_ID, phonesExtraBundle, phoneNumbers);
         Trace.endSection();
 
         Trace.beginSection("start call log loader");
-        getLoaderManager().initLoader(
-                LOADER_CALL_LOG_ID,
-                phonesExtraBundle,
-                mLoaderInteractionsCallbacks);
+        startInteractionLoader(LOADER_CALL_LOG_ID, phonesExtraBundle, phoneNumbers);
         Trace.endSection();
 
 
@@ -1108,11 +1109,44 @@ public class QuickContactActivity extends ContactsActivity {
         }
         final Bundle emailsExtraBundle = new Bundle();
         emailsExtraBundle.putStringArray(KEY_LOADER_EXTRA_EMAILS, emailAddresses);
-        getLoaderManager().initLoader(
-                LOADER_CALENDAR_ID,
-                emailsExtraBundle,
-                mLoaderInteractionsCallbacks);
+        startInteractionLoader(LOADER_CALENDAR_ID, emailsExtraBundle, emailAddresses);
         Trace.endSection();
+
+        // All the interactions may have been cached when the contact was last viewed.
+        if (isAllRecentDataLoaded()) {
+            bindRecentData();
+        }
+    }
+
+    /**
+     * Takes the interactions of the loader from the interactions cache if they are there, or else
+     * starts the loader.
+     */
+    private void startInteractionLoader(int loaderId, Bundle args, String[] addresses) {
+        final ContactInteractionsCache cache = ContactInteractionsCache.getInstance(this);
+        final int source = getInteractionSource(loaderId);
+        final List<ContactInteraction> cachedInteractions = cache.get(source, addresses);
+        if (cachedInteractions != null) {
+            getLoaderManager().destroyLoader(loaderId);
+            mRecentLoaderResults.put(loaderId, cachedInteractions);
+            return;
+        }
+        mRecentLoaderResults.remove(loaderId);
+        mRecentLoaderAddresses.put(loaderId, addresses);
+        mRecentLoaderGenerations.put(loaderId, cache.getGeneration(source));
+        // Restarted so that a loader of the previous numbers of the contact is not reused.
+        getLoaderManager().restartLoader(loaderId, args, mLoaderInteractionsCallbacks);
+    }
+
+    private static int getInteractionSource(int loaderId) {
+        switch (loaderId) {
+            case LOADER_SMS_ID:
+                return ContactInteractionsCache.SOURCE_SMS;
+            case LOADER_CALENDAR_ID:
+                return ContactInteractionsCache.SOURCE_CALENDAR;
+            default:
+                return ContactInteractionsCache.SOURCE_CALL_LOG;
+        }
     }
 
     private void showActivity() {
@@ -1158,8 +1192,9 @@ public class QuickContactActivity extends ContactsActivity {
         if (mContactCard != null) {
             mContactCard.isFireWallInstalled(isFireWallInstalled);
         }
-        // When exiting the activity and resuming, we want to force a full reload of all the
-        // interaction data in case something changed in the background. On screen rotation,
+        // When exiting the activity and resuming, we want to reload the interaction data in case
+        // something changed in the background. The interactions cache drops the interactions of
+        // the sources which changed, so only these are loaded again. On screen rotation,
         // we don't need to do this. And, mCachedCp2DataCardModel will be null, so we won't.
         if (mCachedCp2DataCardModel != null) {
             destroyInteractionLoaders();
@@ -1858,88 +1893,98 @@ public class QuickContactActivity extends ContactsActivity {
     }
 
     /**
-     * Asynchronously extract the most vibrant color from the PhotoView. Once extracted,
-     * apply this tint to {@link MultiShrinkScroller}. This operation takes about 20-30ms
-     * on a Nexus 5.
+     * Asynchronously extract the most vibrant color from the PhotoView, and examine how many white
+     * pixels are in it in order to determine whether or not we need gradient overlays on top of
+     * the image. Once done, apply these to {@link MultiShrinkScroller}. This operation takes
+     * about 20-30ms on a Nexus 5, so the results for a photo are remembered by
+     * {@link PhotoColorCache} and applied at once when the photo is shown again.
      */
-    private void extractAndApplyTintFromPhotoViewAsynchronously() {
+    private void extractAndApplyColorsFromPhotoViewAsynchronously() {
         if (mScroller == null) {
             return;
         }
         final Drawable imageViewDrawable = mPhotoView.getDrawable();
-        new AsyncTask<Void, Void, MaterialPalette>() {
+        final byte[] thumbnail = mContactData != null
+                ? mContactData.getThumbnailPhotoBinaryData() : null;
+        final String photoKey = imageViewDrawable instanceof BitmapDrawable
+                && thumbnail != null && thumbnail.length > 0
+                ? PhotoColorCache.getKey(mContactData.getPhotoUri(), thumbnail) : null;
+        if (photoKey != null) {
+            final PhotoColors cachedColors = PhotoColorCache.getInstance(this).get(photoKey);
+            if (cachedColors != null) {
+                applyPhotoColors(imageViewDrawable, cachedColors);
+                return;
+            }
+        }
+        new AsyncTask<Void, Void, PhotoColors>() {
             @Override
-            protected MaterialPalette doInBackground(Void... params) {
-
-                if (imageViewDrawable instanceof BitmapDrawable && mContactData != null
-                        && mContactData.getThumbnailPhotoBinaryData() != null
-                        && mContactData.getThumbnailPhotoBinaryData().length > 0) {
+            protected PhotoColors doInBackground(Void... params) {
+                MaterialPalette palette = null;
+                if (photoKey != null) {
                     // Perform the color analysis on the thumbnail instead of the full sized
                     // image, so that our results will be as similar as possible to the Bugle
                     // app.
-                    final Bitmap bitmap = BitmapFactory.decodeByteArray(
-                            mContactData.getThumbnailPhotoBinaryData(), 0,
-                            mContactData.getThumbnailPhotoBinaryData().length);
+                    final Bitmap bitmap = BitmapFactory.decodeByteArray(thumbnail, 0,
+                            thumbnail.length);
                     try {
                         final int primaryColor = colorFromBitmap(bitmap);
                         if (primaryColor != 0) {
-                            return mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(
+                            palette = mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(
                                     primaryColor);
                         }
                     } finally {
                         bitmap.recycle();
                     }
                 }
-                if (imageViewDrawable instanceof LetterTileDrawable) {
+                if (palette == null && imageViewDrawable instanceof LetterTileDrawable) {
                     final int primaryColor = ((LetterTileDrawable) imageViewDrawable).getColor();
-                    return mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(primaryColor);
+                    palette = mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(
+                            primaryColor);
                 }
-                return MaterialColorMapUtils.getDefaultPrimaryAndSecondaryColors(getResources());
-            }
-
-            @Override
-            protected void onPostExecute(MaterialPalette palette) {
-                super.onPostExecute(palette);
-                if (mHasComputedThemeColor) {
-                    // If we had previously computed a theme color from the contact photo,
-                    // then do not update the theme color. Changing the theme color several
-                    // seconds after QC has started, as a result of an updated/upgraded photo,
-                    // is a jarring experience. On the other hand, changing the theme color after
-                    // a rotation or onNewIntent() is perfectly fine.
-                    return;
+                if (palette == null) {
+                    palette = MaterialColorMapUtils.getDefaultPrimaryAndSecondaryColors(
+                            getResources());
                 }
-                // Check that the Photo has not changed. If it has changed, the new tint
-                // color needs to be extracted
-                if (imageViewDrawable == mPhotoView.getDrawable()) {
-                    mHasComputedThemeColor = true;
-                    setThemeColor(palette);
-                }
-            }
-        }.execute();
-    }
 
-    /**
-     * Examine how many white pixels are in the bitmap in order to determine whether or not
-     * we need gradient overlays on top of the image.
-     */
-    private void analyzeWhitenessOfPhotoAsynchronously() {
-        final Drawable imageViewDrawable = mPhotoView.getDrawable();
-        new AsyncTask<Void, Void, Boolean>() {
-            @Override
-            protected Boolean doInBackground(Void... params) {
+                final boolean isWhite;
                 if (imageViewDrawable instanceof BitmapDrawable) {
                     final Bitmap bitmap = ((BitmapDrawable) imageViewDrawable).getBitmap();
-                    return WhitenessUtils.isBitmapWhiteAtTopOrBottom(bitmap);
+                    isWhite = WhitenessUtils.isBitmapWhiteAtTopOrBottom(bitmap);
+                } else {
+                    isWhite = !(imageViewDrawable instanceof LetterTileDrawable);
                 }
-                return !(imageViewDrawable instanceof LetterTileDrawable);
+
+                final PhotoColors colors = new PhotoColors(palette, isWhite);
+                if (photoKey != null) {
+                    PhotoColorCache.getInstance(QuickContactActivity.this).put(photoKey, colors);
+                }
+                return colors;
             }
 
             @Override
-            protected void onPostExecute(Boolean isWhite) {
-                super.onPostExecute(isWhite);
-                mScroller.setUseGradient(isWhite);
+            protected void onPostExecute(PhotoColors colors) {
+                super.onPostExecute(colors);
+                applyPhotoColors(imageViewDrawable, colors);
             }
-        }.execute();
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void applyPhotoColors(Drawable imageViewDrawable, PhotoColors colors) {
+        mScroller.setUseGradient(colors.isWhite);
+        if (mHasComputedThemeColor) {
+            // If we had previously computed a theme color from the contact photo,
+            // then do not update the theme color. Changing the theme color several
+            // seconds after QC has started, as a result of an updated/upgraded photo,
+            // is a jarring experience. On the other hand, changing the theme color after
+            // a rotation or onNewIntent() is perfectly fine.
+            return;
+        }
+        // Check that the Photo has not changed. If it has changed, the new tint
+        // color needs to be extracted
+        if (imageViewDrawable == mPhotoView.getDrawable()) {
+            mHasComputedThemeColor = true;
+            setThemeColor(colors.palette);
+        }
     }
 
     private void setThemeColor(MaterialPalette palette) {
@@ -2139,7 +2184,11 @@ public class QuickContactActivity extends ContactsActivity {
         @Override
         public void onLoadFinished(Loader<List<ContactInteraction>> loader,
                 List<ContactInteraction> data) {
-            mRecentLoaderResults.put(loader.getId(), data);
+            final int loaderId = loader.getId();
+            mRecentLoaderResults.put(loaderId, data);
+            ContactInteractionsCache.getInstance(QuickContactActivity.this).put(
+                    getInteractionSource(loaderId), mRecentLoaderAddresses.get(loaderId), data,
+                    mRecentLoaderGenerations.get(loaderId));
 
             if (isAllRecentDataLoaded()) {
                 bindRecentData();
@@ -2867,38 +2916,16 @@ public class QuickContactActivity extends ContactsActivity {
                     int anrCountInSimContact = 0;
                     int emailCountInSimContact = 0;
 
-                    Cursor cr = null;
-                    // call query first, otherwise the count queries will fail
-                    try{
-                        int[] subId = SubscriptionManager.getSubId(sub);
-                        if (subId != null
-                            && TelephonyManager.getDefault().isMultiSimEnabled()) {
-                            cr = getContentResolver().query(
-                                Uri.parse(SimContactsConstants.SIM_SUB_URI
-                                    + subId[0]), null, null, null, null);
-                        } else {
-                            cr = getContentResolver().query(
-                                Uri.parse(SimContactsConstants.SIM_URI), null,
-                                null, null, null);
-                        }
-                    } catch (NullPointerException e) {
-                        Log.e(TAG, "Exception:" + e);
-                    } finally {
-                        if (cr != null) {
-                            cr.close();
-                        }
-                    }
-
-                    if (MoreContactUtils.canSaveAnr(sub)) {
-                        anrCountInSimContact = MoreContactUtils.getOneSimAnrCount(sub);
-                    }
-                    if (MoreContactUtils.canSaveEmail(sub)) {
-                        emailCountInSimContact = MoreContactUtils.getOneSimEmailCount(sub);
-                    }
-                    int totalEmptyAdn = MoreContactUtils.getSimFreeCount(
-                            QuickContactActivity.this, sub);
-                    int totalEmptyAnr = MoreContactUtils.getSpareAnrCount(sub);
-                    int totalEmptyEmail = MoreContactUtils.getSpareEmailCount(sub);
+                    // The occupancy of the SIM is cached, so that copying a contact does not
+                    // read all the contacts of the SIM.
+                    final SimOccupancyCache.Occupancy occupancy =
+                            SimOccupancyCache.getInstance(QuickContactActivity.this)
+                                    .getOccupancy(sub);
+                    anrCountInSimContact = occupancy.anrPerContact;
+                    emailCountInSimContact = occupancy.emailPerContact;
+                    int totalEmptyAdn = occupancy.getFreeCount();
+                    int totalEmptyAnr = occupancy.freeAnrCount;
+                    int totalEmptyEmail = occupancy.freeEmailCount;
 
                     Message msg = Message.obtain();
                     if (totalEmptyAdn <= 0) {
@@ -3029,6 +3056,11 @@ public class QuickContactActivity extends ContactsActivity {
                         }
                         itemUri = MoreContactUtils.insertToCard(QuickContactActivity.this, strName,
                                 strNum, strEmail.toString(), strAnrNum.toString(), sub);
+                        if (itemUri != null) {
+                            SimOccupancyCache.getInstance(QuickContactActivity.this)
+                                    .onContactInserted(sub, strAnrNum.toString(),
+                                            strEmail.toString());
+                        }
                     }
                     if (itemUri != null) {
                         msg.what = MSG_COPY_DONE;
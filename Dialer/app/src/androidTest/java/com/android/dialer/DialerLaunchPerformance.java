@@ -20,13 +20,21 @@ import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.test.LaunchPerformanceBase;
 
+import com.android.dialer.util.LaunchPhaseTimer;
+
+import java.util.Map;
+
 /**
  * Instrumentation class for Address Book launch performance testing.
  */
 public class DialerLaunchPerformance extends LaunchPerformanceBase {
 
+    /** How long to wait for the deferred launch phases to complete. */
+    private static final long DEFERRED_PHASES_TIMEOUT_MS = 5000;
+
     @Override
     public void onCreate(Bundle arguments) {
         mIntent.setAction(Intent.ACTION_MAIN);
@@ -38,12 +46,28 @@ public class DialerLaunchPerformance extends LaunchPerformanceBase {
     }
 
     /**
-     * Calls LaunchApp and finish.
+     * Calls LaunchApp, reports the time each launch phase took to complete and finishes.
      */
     @Override
     public void onStart() {
         super.onStart();
         LaunchApp();
+        waitForIdleSync();
+        waitForPhase(LaunchPhaseTimer.PHASE_SMART_DIAL_SYNCED);
+        for (Map.Entry<String, Long> phase : LaunchPhaseTimer.getPhaseTimes().entrySet()) {
+            mResults.putLong("phase_" + phase.getKey(), phase.getValue());
+        }
         finish(Activity.RESULT_OK, mResults);
     }
+
+    /**
+     * Waits for the given phase, usually the last to complete, so that all phases are reported.
+     */
+    private void waitForPhase(String phase) {
+        final long deadline = SystemClock.elapsedRealtime() + DEFERRED_PHASES_TIMEOUT_MS;
+        while (!LaunchPhaseTimer.getPhaseTimes().containsKey(phase)
+                && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(50);
+        }
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.CallLog;
+import android.provider.CallLog.Calls;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link CallLogBulkDeleteTask}, run against a call log held in memory.
+ */
+@SmallTest
+public class CallLogBulkDeleteTaskTest extends AndroidTestCase {
+    private FakeCallLogProvider mProvider;
+    private MockContentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mProvider = new FakeCallLogProvider();
+        mProvider.attachInfo(getContext(), null);
+        mResolver = new MockContentResolver();
+        mResolver.addProvider(CallLog.AUTHORITY, mProvider);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mProvider.mDb.close();
+        super.tearDown();
+    }
+
+    public void testDelete_NoSelection_DeletesAllAtOnce() {
+        insertCalls(3, "6502530000");
+        final boolean[] allDeleted = new boolean[1];
+        final CallLogBulkDeleteTask task =
+                new CallLogBulkDeleteTask(mResolver, Calls.CONTENT_URI, null, null) {
+            @Override
+            protected void onAllCallsDeleted() {
+                allDeleted[0] = true;
+            }
+        };
+
+        assertEquals(3, (int) task.doInBackground());
+        assertEquals(1, mProvider.mDeleteCount);
+        assertEquals(0, mProvider.mQueryCount);
+        assertEquals(0, countCalls(null, null));
+        assertTrue(allDeleted[0]);
+    }
+
+    public void testDelete_Selection_DeletesMatchingCallsInRanges() {
+        // Ids 1 to 2 * IDS_PER_DELETE + 10, alternating between the two numbers.
+        for (int i = 0; i < CallLogBulkDeleteTask.IDS_PER_DELETE + 5; i++) {
+            insertCalls(1, "6502530000");
+            insertCalls(1, "6502531111");
+        }
+        final CallLogBulkDeleteTask task = new CallLogBulkDeleteTask(mResolver,
+                Calls.CONTENT_URI, Calls.NUMBER + " = ?", new String[] { "6502530000" });
+
+        assertEquals(CallLogBulkDeleteTask.IDS_PER_DELETE + 5, (int) task.doInBackground());
+        // The matching calls have ids 1 to 2 * IDS_PER_DELETE + 9.
+        assertEquals(3, mProvider.mDeleteCount);
+        assertEquals(0, countCalls(Calls.NUMBER + " = ?", new String[] { "6502530000" }));
+        assertEquals(CallLogBulkDeleteTask.IDS_PER_DELETE + 5, countCalls(null, null));
+    }
+
+    public void testDelete_Selection_NoMatchingCall() {
+        insertCalls(2, "6502531111");
+        final CallLogBulkDeleteTask task = new CallLogBulkDeleteTask(mResolver,
+                Calls.CONTENT_URI, Calls.NUMBER + " = ?", new String[] { "6502530000" });
+
+        assertEquals(0, (int) task.doInBackground());
+        assertEquals(0, mProvider.mDeleteCount);
+        assertEquals(2, countCalls(null, null));
+    }
+
+    public void testGetRangeSelection_NoSelection() {
+        assertEquals("_id > ? AND _id <= ?", CallLogBulkDeleteTask.getRangeSelection(null));
+        assertEquals("_id > ? AND _id <= ?", CallLogBulkDeleteTask.getRangeSelection(""));
+    }
+
+    public void testGetRangeSelection_WrapsSelection() {
+        assertEquals("(number = ? OR type = ?) AND _id > ? AND _id <= ?",
+                CallLogBulkDeleteTask.getRangeSelection("number = ? OR type = ?"));
+    }
+
+    public void testGetRangeSelectionArgs_NoArgs() {
+        assertTrue(Arrays.equals(new String[] { "-1", "500" },
+                CallLogBulkDeleteTask.getRangeSelectionArgs(null, -1, 500)));
+    }
+
+    public void testGetRangeSelectionArgs_AppendsRange() {
+        final String[] args = new String[] { "123" };
+        assertTrue(Arrays.equals(new String[] { "123", "500", "1000" },
+                CallLogBulkDeleteTask.getRangeSelectionArgs(args, 500, 1000)));
+        assertEquals(1, args.length);
+    }
+
+    private void insertCalls(int count, String number) {
+        final ContentValues values = new ContentValues();
+        values.put(Calls.NUMBER, number);
+        for (int i = 0; i < count; i++) {
+            mProvider.mDb.insert(FakeCallLogProvider.TABLE, null, values);
+        }
+    }
+
+    private int countCalls(String selection, String[] selectionArgs) {
+        final Cursor cursor = mProvider.mDb.query(FakeCallLogProvider.TABLE, null, selection,
+                selectionArgs, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** A call log provider with only the ids and numbers of the calls, in memory. */
+    private static class FakeCallLogProvider extends ContentProvider {
+        static final String TABLE = "calls";
+
+        final SQLiteDatabase mDb = SQLiteDatabase.create(null);
+        int mQueryCount;
+        int mDeleteCount;
+
+        @Override
+        public boolean onCreate() {
+            mDb.execSQL("CREATE TABLE " + TABLE + " (" + Calls._ID + " INTEGER PRIMARY KEY, "
+                    + Calls.NUMBER + " TEXT)");
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mQueryCount++;
+            return mDb.query(TABLE, projection, selection, selectionArgs, null, null, sortOrder);
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            mDeleteCount++;
+            // A selection of "1" makes SQLiteDatabase count the rows deleted without a selection.
+            return mDb.delete(TABLE, selection == null ? "1" : selection, selectionArgs);
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.CallLog.Calls;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Unit tests for {@link CallLogProjections}.
+ */
+@SmallTest
+public class CallLogProjectionsTest extends AndroidTestCase {
+    private static final String SLOT_0_ACCOUNT_ID = "1";
+    private static final String SLOT_1_ACCOUNT_ID = "2";
+
+    private MatrixCursor mCursor;
+    private CallLogProjections mProjections;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCursor = new MatrixCursor(CallLogQuery._PROJECTION);
+        addCall(0, Calls.INCOMING_TYPE, SLOT_0_ACCOUNT_ID);
+        addCall(1, Calls.MISSED_TYPE, SLOT_1_ACCOUNT_ID);
+        addCall(2, Calls.OUTGOING_IMS_TYPE, SLOT_0_ACCOUNT_ID);
+        addCall(3, Calls.MISSED_IMS_TYPE, SLOT_0_ACCOUNT_ID);
+        addCall(4, Calls.VOICEMAIL_TYPE, null);
+        mProjections = new CallLogProjections(mCursor,
+                new String[] { SLOT_0_ACCOUNT_ID, SLOT_1_ACCOUNT_ID });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCursor.close();
+        super.tearDown();
+    }
+
+    public void testGetProjection_AllSlotsAllTypes() {
+        assertIds(mProjections.getProjection(CallLogQueryHandler.CALL_SUB_ALL,
+                CallLogQueryHandler.CALL_TYPE_ALL), 0, 1, 2, 3, 4);
+    }
+
+    public void testGetProjection_ByType_IncludesImsCalls() {
+        assertIds(mProjections.getProjection(CallLogQueryHandler.CALL_SUB_ALL,
+                Calls.MISSED_TYPE), 1, 3);
+        assertIds(mProjections.getProjection(CallLogQueryHandler.CALL_SUB_ALL,
+                Calls.OUTGOING_TYPE), 2);
+        assertIds(mProjections.getProjection(CallLogQueryHandler.CALL_SUB_ALL,
+                Calls.VOICEMAIL_TYPE), 4);
+        assertIds(mProjections.getProjection(CallLogQueryHandler.CALL_SUB_ALL,
+                Calls.BLACKLIST_TYPE));
+    }
+
+    public void testGetProjection_BySlotAndType() {
+        assertIds(mProjections.getProjection(0, CallLogQueryHandler.CALL_TYPE_ALL), 0, 2, 3);
+        assertIds(mProjections.getProjection(0, Calls.MISSED_TYPE), 3);
+        assertIds(mProjections.getProjection(1, CallLogQueryHandler.CALL_TYPE_ALL), 1);
+        assertIds(mProjections.getProjection(1, Calls.INCOMING_TYPE));
+    }
+
+    public void testGetProjection_SlotWithoutSubscription_ShowsAllSlots() {
+        final CallLogProjections projections = new CallLogProjections(mCursor,
+                new String[] { SLOT_0_ACCOUNT_ID, null });
+        assertIds(projections.getProjection(1, Calls.MISSED_TYPE), 1, 3);
+    }
+
+    public void testProjectionCursor_CloseKeepsCursorOpen() {
+        final Cursor projection = mProjections.getProjection(0, Calls.MISSED_TYPE);
+        assertTrue(projection.moveToFirst());
+        assertTrue(projection.isFirst());
+        assertTrue(projection.isLast());
+        assertFalse(projection.moveToNext());
+        assertTrue(projection.isAfterLast());
+        projection.close();
+        assertFalse(mCursor.isClosed());
+    }
+
+    private void addCall(long id, int callType, String accountId) {
+        final Object[] values = new Object[CallLogQuery._PROJECTION.length];
+        values[CallLogQuery.ID] = id;
+        values[CallLogQuery.CALL_TYPE] = callType;
+        values[CallLogQuery.ACCOUNT_ID] = accountId;
+        mCursor.addRow(values);
+    }
+
+    private void assertIds(Cursor cursor, long... expectedIds) {
+        assertEquals(expectedIds.length, cursor.getCount());
+        cursor.moveToPosition(-1);
+        for (long expectedId : expectedIds) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(expectedId, cursor.getLong(CallLogQuery.ID));
+        }
+        assertFalse(cursor.moveToNext());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Unit tests for {@link PhoneNumberFormatCache}.
+ */
+@SmallTest
+public class PhoneNumberFormatCacheTest extends AndroidTestCase {
+    private PhoneNumberFormatCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new PhoneNumberFormatCache(getContext(), "US");
+    }
+
+    public void testGet_FormatsAndCaches() {
+        assertNull(mCache.getCached("6502530000", "US"));
+        final PhoneNumberFormatCache.FormattedNumber formatted = mCache.get("6502530000", "US");
+        assertEquals("(650) 253-0000", formatted.formattedNumber);
+        assertEquals("+16502530000", formatted.e164Number);
+        assertSame(formatted, mCache.getCached("6502530000", "US"));
+        assertSame(formatted, mCache.get("6502530000", "US"));
+    }
+
+    public void testGet_KeyedByCountry() {
+        mCache.get("6502530000", "US");
+        assertNull(mCache.getCached("6502530000", "GB"));
+    }
+
+    public void testGet_UsesCurrentCountryWhenMissing() {
+        assertEquals("+16502530000", mCache.get("6502530000", null).e164Number);
+    }
+
+    public void testGet_SipAddressIsNotFormatted() {
+        final PhoneNumberFormatCache.FormattedNumber formatted =
+                mCache.get("alice@example.com", "US");
+        assertEquals("alice@example.com", formatted.formattedNumber);
+        assertNull(formatted.e164Number);
+        assertNull(mCache.getGeocoded("alice@example.com", "US").getGeocode());
+    }
+
+    public void testGet_DoesNotGeocode() {
+        final PhoneNumberFormatCache.FormattedNumber formatted = mCache.get("6502530000", "US");
+        assertFalse(formatted.hasGeocode());
+
+        assertSame(formatted, mCache.getGeocoded("6502530000", "US"));
+        assertTrue(formatted.hasGeocode());
+    }
+
+    public void testGet_EmptyNumber() {
+        assertNull(mCache.get("", "US").formattedNumber);
+        assertNull(mCache.getCached("", "US"));
+    }
+}
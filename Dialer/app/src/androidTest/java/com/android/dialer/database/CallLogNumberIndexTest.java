@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.database;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.dialer.database.CallLogNumberIndex.Entry;
+
+import java.util.ArrayList;
+
+/**
+ * Unit tests for {@link CallLogNumberIndex}.
+ */
+@SmallTest
+public class CallLogNumberIndexTest extends AndroidTestCase {
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private CallLogNumberIndex mIndex;
+    private long mNow;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIndex = new CallLogNumberIndex();
+        mNow = System.currentTimeMillis();
+    }
+
+    public void testGetMatches_MatchesDigitsAnywhereInNumber() {
+        mIndex.addCall(1, "(650) 555-1234", mNow, false);
+
+        assertEquals(1, mIndex.getMatches("650", 10).size());
+        assertEquals(1, mIndex.getMatches("5551", 10).size());
+        assertEquals(0, mIndex.getMatches("5552", 10).size());
+        assertEquals(0, mIndex.getMatches("", 10).size());
+    }
+
+    public void testGetMatches_SkipsContactNumbers() {
+        mIndex.addCall(1, "6505551234", mNow, true);
+
+        assertEquals(0, mIndex.getMatches("650", 10).size());
+    }
+
+    public void testAddCall_MergesDifferentlyFormattedNumbers() {
+        mIndex.addCall(1, "650-555-1234", mNow - DAY_MS, false);
+        mIndex.addCall(2, "6505551234", mNow, false);
+
+        final ArrayList<Entry> matches = mIndex.getMatches("650", 10);
+        assertEquals(1, matches.size());
+        assertEquals(2, matches.get(0).timesUsed);
+        assertEquals(mNow, matches.get(0).lastTimeUsed);
+    }
+
+    public void testGetMatches_RanksRecentThenFrequent() {
+        // Called often, but more than 30 days ago.
+        mIndex.addCall(1, "6505550001", mNow - 40 * DAY_MS, false);
+        mIndex.addCall(2, "6505550001", mNow - 40 * DAY_MS, false);
+        mIndex.addCall(3, "6505550001", mNow - 40 * DAY_MS, false);
+        // Called once within the last 30 days.
+        mIndex.addCall(4, "6505550002", mNow - 10 * DAY_MS, false);
+        // Called twice within the last 3 days.
+        mIndex.addCall(5, "6505550003", mNow - DAY_MS, false);
+        mIndex.addCall(6, "6505550003", mNow - DAY_MS, false);
+        // Called once within the last 3 days.
+        mIndex.addCall(7, "6505550004", mNow, false);
+
+        final ArrayList<Entry> matches = mIndex.getMatches("650", 10);
+        assertEquals(4, matches.size());
+        assertEquals("6505550003", matches.get(0).number);
+        assertEquals("6505550004", matches.get(1).number);
+        assertEquals("6505550002", matches.get(2).number);
+        assertEquals("6505550001", matches.get(3).number);
+
+        final ArrayList<Entry> limited = mIndex.getMatches("650", 2);
+        assertEquals(2, limited.size());
+        assertEquals("6505550003", limited.get(0).number);
+    }
+}
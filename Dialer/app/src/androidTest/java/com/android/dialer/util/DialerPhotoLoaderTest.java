@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Unit tests for the sizing logic of {@link DialerPhotoLoader}.
+ */
+@SmallTest
+public class DialerPhotoLoaderTest extends AndroidTestCase {
+    public void testGetBucketSize_RoundsUpToPowerOfTwo() {
+        assertEquals(64, DialerPhotoLoader.getBucketSize(1));
+        assertEquals(64, DialerPhotoLoader.getBucketSize(64));
+        assertEquals(128, DialerPhotoLoader.getBucketSize(65));
+        assertEquals(128, DialerPhotoLoader.getBucketSize(120));
+        assertEquals(256, DialerPhotoLoader.getBucketSize(160));
+    }
+
+    public void testGetBucketSize_CapsLargeRequests() {
+        assertEquals(512, DialerPhotoLoader.getBucketSize(512));
+        assertEquals(512, DialerPhotoLoader.getBucketSize(2000));
+    }
+
+    public void testGetSampleSize_KeepsPhotoAtLeastBucketSize() {
+        assertEquals(1, DialerPhotoLoader.getSampleSize(100, 100, 128));
+        assertEquals(1, DialerPhotoLoader.getSampleSize(255, 255, 128));
+        assertEquals(2, DialerPhotoLoader.getSampleSize(256, 256, 128));
+        assertEquals(8, DialerPhotoLoader.getSampleSize(1080, 1080, 128));
+    }
+
+    public void testGetSampleSize_UsesShortestSide() {
+        assertEquals(2, DialerPhotoLoader.getSampleSize(1920, 300, 128));
+        assertEquals(2, DialerPhotoLoader.getSampleSize(300, 1920, 128));
+    }
+}
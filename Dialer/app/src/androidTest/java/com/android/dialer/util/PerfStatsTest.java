@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.dialer.util.PerfStats.Histogram;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link PerfStats}.
+ */
+@SmallTest
+public class PerfStatsTest extends AndroidTestCase {
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PerfStats.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PerfStats.reset();
+        super.tearDown();
+    }
+
+    public void testGetBucket() {
+        assertEquals(0, Histogram.getBucket(0));
+        assertEquals(1, Histogram.getBucket(1));
+        assertEquals(2, Histogram.getBucket(2));
+        assertEquals(2, Histogram.getBucket(3));
+        assertEquals(3, Histogram.getBucket(4));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    public void testGetPercentile() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 0; i < 9; i++) {
+            histogram.add(3);
+        }
+        histogram.add(100);
+
+        assertEquals(4, histogram.getPercentile(50));
+        assertEquals(4, histogram.getPercentile(90));
+        // Capped at the maximum rather than the bucket bound of 128.
+        assertEquals(100, histogram.getPercentile(99));
+    }
+
+    public void testSectionsAndCounters() {
+        final long start = PerfStats.beginSection(PerfStats.SMART_DIAL_QUERY);
+        PerfStats.endSection(PerfStats.SMART_DIAL_QUERY, start);
+        PerfStats.recordLatency(PerfStats.SMART_DIAL_QUERY, 10);
+        PerfStats.incrementCounter(PerfStats.LOOKUP_TIMEOUTS);
+        PerfStats.addToCounter(PerfStats.LOOKUP_TIMEOUTS, 2);
+
+        assertEquals(2, PerfStats.getCount(PerfStats.SMART_DIAL_QUERY));
+        assertEquals(0, PerfStats.getCount(PerfStats.CALLER_ID_LOOKUP));
+        assertEquals(3, PerfStats.getCounter(PerfStats.LOOKUP_TIMEOUTS));
+
+        final StringWriter output = new StringWriter();
+        PerfStats.dump("", new PrintWriter(output, true));
+        assertTrue(output.toString().contains(PerfStats.SMART_DIAL_QUERY + ": count=2"));
+        assertTrue(output.toString().contains(PerfStats.LOOKUP_TIMEOUTS + ": 3"));
+
+        PerfStats.reset();
+        assertEquals(0, PerfStats.getCount(PerfStats.SMART_DIAL_QUERY));
+        assertEquals(0, PerfStats.getCounter(PerfStats.LOOKUP_TIMEOUTS));
+    }
+}
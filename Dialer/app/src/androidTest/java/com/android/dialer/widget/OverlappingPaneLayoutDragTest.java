@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.widget;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.android.dialer.DialtactsActivity;
+import com.android.dialer.R;
+
+/**
+ * Replays drag gestures on the panes of {@link OverlappingPaneLayout} and reports how many frames
+ * were dropped while the panes slid.
+ *
+ * To run this test, use the command:
+ * adb shell am instrument -w -e class com.android.dialer.widget.OverlappingPaneLayoutDragTest /
+ * com.android.dialer.tests/android.test.InstrumentationTestRunner
+ */
+@LargeTest
+public class OverlappingPaneLayoutDragTest
+        extends ActivityInstrumentationTestCase2<DialtactsActivity> {
+    private static final String TAG = "OverlappingPaneLayoutDragTest";
+
+    /** The number of times the panes are slid down and back up. */
+    private static final int GESTURE_REPETITIONS = 5;
+    /** The number of move events per stroke, delivered at roughly 60Hz. */
+    private static final int MOVES_PER_STROKE = 30;
+    private static final long MOVE_INTERVAL_MS = 16;
+    /** Time given to the panes to settle after each stroke. */
+    private static final long SETTLE_TIME_MS = 700;
+
+    private static final int MAX_FRAMES = 2048;
+
+    private final long[] mFrameTimesNanos = new long[MAX_FRAMES];
+    private int mFrameCount;
+    private volatile boolean mRecording;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) {
+                return;
+            }
+            if (mFrameCount < MAX_FRAMES) {
+                mFrameTimesNanos[mFrameCount++] = frameTimeNanos;
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    public OverlappingPaneLayoutDragTest() {
+        super(DialtactsActivity.class);
+    }
+
+    public void testDragPanes_ReportsDroppedFrames() {
+        final DialtactsActivity activity = getActivity();
+        getInstrumentation().waitForIdleSync();
+
+        final View paneLayout = activity.findViewById(R.id.lists_frame);
+        assertNotNull(paneLayout);
+        final int[] location = new int[2];
+        paneLayout.getLocationOnScreen(location);
+        final float x = location[0] + paneLayout.getWidth() / 2f;
+        final float top = location[1] + paneLayout.getHeight() / 4f;
+        final float bottom = location[1] + paneLayout.getHeight() * 3 / 4f;
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mFrameCount = 0;
+                mRecording = true;
+                Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            }
+        });
+
+        for (int i = 0; i < GESTURE_REPETITIONS; i++) {
+            replayStroke(x, top, bottom);
+            replayStroke(x, bottom, top);
+        }
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecording = false;
+            }
+        });
+
+        final float refreshRate =
+                activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        final long frameIntervalNanos = (long) (1000000000L / refreshRate);
+        final int droppedFrames = countDroppedFrames(frameIntervalNanos);
+
+        final Bundle results = new Bundle();
+        results.putInt("frames", mFrameCount);
+        results.putInt("dropped_frames", droppedFrames);
+        getInstrumentation().sendStatus(0, results);
+        Log.i(TAG, "Frames: " + mFrameCount + ", dropped: " + droppedFrames);
+
+        assertTrue(mFrameCount > 0);
+    }
+
+    /**
+     * Sends a down event, evenly spaced move events and an up event from fromY to toY, then
+     * waits for the panes to settle.
+     */
+    private void replayStroke(float x, float fromY, float toY) {
+        final long downTime = SystemClock.uptimeMillis();
+        sendEvent(downTime, MotionEvent.ACTION_DOWN, x, fromY);
+        for (int i = 1; i <= MOVES_PER_STROKE; i++) {
+            SystemClock.sleep(MOVE_INTERVAL_MS);
+            final float y = fromY + (toY - fromY) * i / MOVES_PER_STROKE;
+            sendEvent(downTime, MotionEvent.ACTION_MOVE, x, y);
+        }
+        sendEvent(downTime, MotionEvent.ACTION_UP, x, toY);
+        SystemClock.sleep(SETTLE_TIME_MS);
+    }
+
+    private void sendEvent(long downTime, int action, float x, float y) {
+        final MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action,
+                x, y, 0);
+        getInstrumentation().sendPointerSync(event);
+        event.recycle();
+    }
+
+    /**
+     * Counts the frames missed between consecutive recorded frames. A gap of more than one and a
+     * half frame intervals counts as the number of intervals which were skipped.
+     */
+    private int countDroppedFrames(long frameIntervalNanos) {
+        int dropped = 0;
+        for (int i = 1; i < mFrameCount; i++) {
+            final long gap = mFrameTimesNanos[i] - mFrameTimesNanos[i - 1];
+            if (gap > frameIntervalNanos * 3 / 2) {
+                dropped += (int) ((gap + frameIntervalNanos / 2) / frameIntervalNanos) - 1;
+            }
+        }
+        return dropped;
+    }
+}
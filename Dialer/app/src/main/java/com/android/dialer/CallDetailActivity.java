@@ -42,6 +42,7 @@ import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -60,6 +61,9 @@ import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.GeoUtil;
 import com.android.contacts.common.MoreContactUtils;
 import com.android.dialer.calllog.CallDetailHistoryAdapter;
+import com.android.dialer.calllog.CallLogBulkDeleteTask;
+import com.android.dialer.calllog.CallLogAdapterHelper;
+import com.android.dialer.calllog.CallLogAdapterHelper.NumberWithCountryIso;
 import com.android.dialer.calllog.CallTypeHelper;
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.calllog.ContactInfoHelper;
@@ -77,8 +81,10 @@ import com.android.dialer.voicemail.VoicemailStatusHelperImpl;
 import com.android.dialerbind.analytics.AnalyticsActivity;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.util.BlacklistUtils;
+import com.google.common.collect.Maps;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Displays the details of a specific call log entry.
@@ -108,6 +114,7 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
         DELETE_VOICEMAIL_AND_FINISH,
         REMOVE_FROM_CALL_LOG_AND_FINISH,
         UPDATE_PHONE_CALL_DETAILS,
+        ADD_NUMBER_TO_FIREWALL,
     }
 
     /** A long array extra containing ids of call log entries to display. */
@@ -126,6 +133,8 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
     private PhoneNumberDisplayHelper mPhoneNumberHelper;
     private AsyncTaskExecutor mAsyncTaskExecutor;
     private ContactInfoHelper mContactInfoHelper;
+    /** The task loading the details of the calls, if one is running. */
+    private AsyncTask<Void, ?, ?> mUpdateTask;
 
     private String mNumber = null;
     private String mDefaultCountryIso;
@@ -226,7 +235,8 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
         CallLog.Calls.FEATURES,
         CallLog.Calls.DATA_USAGE,
         CallLog.Calls.TRANSCRIPTION,
-        CallLog.Calls.DURATION_TYPE
+        CallLog.Calls.DURATION_TYPE,
+        CallLog.Calls._ID
     };
 
     static final int DATE_COLUMN_INDEX = 0;
@@ -242,6 +252,7 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
     static final int DATA_USAGE = 10;
     static final int TRANSCRIPTION_COLUMN_INDEX = 11;
     static final int DURATION_TYPE_COLUMN_INDEX = 12;
+    static final int ID_COLUMN_INDEX = 13;
 
     @Override
     protected void onCreate(Bundle icicle) {
@@ -400,15 +411,8 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
         class UpdateContactDetailsTask extends AsyncTask<Void, Void, PhoneCallDetails[]> {
             @Override
             public PhoneCallDetails[] doInBackground(Void... params) {
-                // TODO: All phone calls correspond to the same person, so we can make a single
-                // lookup.
-                final int numCalls = callUris.length;
-                PhoneCallDetails[] details = new PhoneCallDetails[numCalls];
                 try {
-                    for (int index = 0; index < numCalls; ++index) {
-                        details[index] = getPhoneCallDetailsForUri(callUris[index]);
-                    }
-                    return details;
+                    return getPhoneCallDetailsForUris(callUris);
                 } catch (IllegalArgumentException e) {
                     // Something went wrong reading in our primary data.
                     Log.w(TAG, "invalid URI starting call details", e);
@@ -418,6 +422,7 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
 
             @Override
             public void onPostExecute(PhoneCallDetails[] details) {
+                mUpdateTask = null;
                 if (details == null) {
                     // Somewhere went wrong: we're going to bail out and show error to users.
                     Toast.makeText(CallDetailActivity.this, R.string.toast_call_detail_error,
@@ -487,93 +492,173 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
                 }
             }
         }
-        mAsyncTaskExecutor.submit(Tasks.UPDATE_PHONE_CALL_DETAILS, new UpdateContactDetailsTask());
+        if (mUpdateTask != null) {
+            mUpdateTask.cancel(false);
+        }
+        mUpdateTask = mAsyncTaskExecutor.submit(Tasks.UPDATE_PHONE_CALL_DETAILS,
+                new UpdateContactDetailsTask());
     }
 
-    /** Return the phone call details for a given call log URI. */
-    private PhoneCallDetails getPhoneCallDetailsForUri(Uri callUri) {
+    /**
+     * Return the phone call details for the given call log URIs, in the same order.
+     * <p>
+     * The calls of a group are read with a single query, and the contact of each distinct number
+     * is only resolved once.
+     */
+    private PhoneCallDetails[] getPhoneCallDetailsForUris(Uri[] callUris) {
+        final int numCalls = callUris.length;
+        final PhoneCallDetails[] details = new PhoneCallDetails[numCalls];
+        final Map<NumberWithCountryIso, ContactInfo> contactInfos = Maps.newHashMap();
         ContentResolver resolver = getContentResolver();
-        Cursor callCursor = resolver.query(callUri, CALL_LOG_PROJECTION, null, null, null);
-        try {
-            if (callCursor == null || !callCursor.moveToFirst()) {
-                throw new IllegalArgumentException("Cannot find content: " + callUri);
-            }
 
-            // Read call log specifics.
-            final String number = callCursor.getString(NUMBER_COLUMN_INDEX);
-            final int numberPresentation = callCursor.getInt(
-                    NUMBER_PRESENTATION_COLUMN_INDEX);
-            final long date = callCursor.getLong(DATE_COLUMN_INDEX);
-            final long duration = callCursor.getLong(DURATION_COLUMN_INDEX);
-            final int callType = callCursor.getInt(CALL_TYPE_COLUMN_INDEX);
-            String countryIso = callCursor.getString(COUNTRY_ISO_COLUMN_INDEX);
-            final String geocode = callCursor.getString(GEOCODED_LOCATION_COLUMN_INDEX);
-            final String transcription = callCursor.getString(TRANSCRIPTION_COLUMN_INDEX);
-            final int durationType = callCursor.getInt(DURATION_TYPE_COLUMN_INDEX);
-
-            final String accountLabel = PhoneAccountUtils.getAccountLabel(this,
-                    PhoneAccountUtils.getAccount(
-                    callCursor.getString(ACCOUNT_COMPONENT_NAME),
-                    callCursor.getString(ACCOUNT_ID)));
-            String accId = callCursor.getString(ACCOUNT_ID);
-            int subId = SubscriptionManager.DEFAULT_SUBSCRIPTION_ID;
-            if (accId!=null && !accId.equals("E") && !accId.toLowerCase().contains("sip")) {
-                subId = Integer.parseInt(accId);
+        if (numCalls == 1) {
+            Cursor callCursor = resolver.query(callUris[0], CALL_LOG_PROJECTION, null, null, null);
+            try {
+                if (callCursor == null || !callCursor.moveToFirst()) {
+                    throw new IllegalArgumentException("Cannot find content: " + callUris[0]);
+                }
+                details[0] = getPhoneCallDetailsFromCursor(callCursor, contactInfos);
+            } finally {
+                if (callCursor != null) {
+                    callCursor.close();
+                }
             }
+            return details;
+        }
 
-            if (TextUtils.isEmpty(countryIso)) {
-                countryIso = mDefaultCountryIso;
+        final StringBuilder callIds = new StringBuilder();
+        for (Uri callUri : callUris) {
+            if (callIds.length() != 0) {
+                callIds.append(",");
             }
-
-            // Formatted phone number.
-            final CharSequence formattedNumber;
-            // Read contact specifics.
-            final CharSequence nameText;
-            final int numberType;
-            final CharSequence numberLabel;
-            final Uri photoUri;
-            final Uri lookupUri;
-            int sourceType;
-            // If this is not a regular number, there is no point in looking it up in the contacts.
-            ContactInfo info =
-                    PhoneNumberUtilsWrapper.canPlaceCallsTo(number, numberPresentation)
-                    && !new PhoneNumberUtilsWrapper().isVoicemailNumber(subId, number)
-                            ? mContactInfoHelper.lookupNumber(number, countryIso)
-                            : null;
-            if (info == null) {
-                formattedNumber = mPhoneNumberHelper.getDisplayNumber(subId, number,
-                        numberPresentation, null);
-                nameText = "";
-                numberType = 0;
-                numberLabel = "";
-                photoUri = null;
-                lookupUri = null;
-                sourceType = 0;
-            } else {
-                formattedNumber = info.formattedNumber;
-                nameText = info.name;
-                numberType = info.type;
-                numberLabel = info.label;
-                photoUri = info.photoUri;
-                lookupUri = info.lookupUri;
-                sourceType = info.sourceType;
+            callIds.append(ContentUris.parseId(callUri));
+        }
+        final LongSparseArray<PhoneCallDetails> detailsById =
+                new LongSparseArray<PhoneCallDetails>(numCalls);
+        Cursor callCursor = resolver.query(Calls.CONTENT_URI_WITH_VOICEMAIL, CALL_LOG_PROJECTION,
+                Calls._ID + " IN (" + callIds + ")", null, null);
+        try {
+            if (callCursor == null) {
+                throw new IllegalArgumentException("Cannot find content: " + callIds);
             }
-            final int features = callCursor.getInt(FEATURES);
-            Long dataUsage = null;
-            if (!callCursor.isNull(DATA_USAGE)) {
-                dataUsage = callCursor.getLong(DATA_USAGE);
+            while (callCursor.moveToNext()) {
+                detailsById.put(callCursor.getLong(ID_COLUMN_INDEX),
+                        getPhoneCallDetailsFromCursor(callCursor, contactInfos));
             }
-            return new PhoneCallDetails(number, numberPresentation,
-                    formattedNumber, countryIso, geocode,
-                    new int[]{ callType }, date, duration,
-                    nameText, numberType, numberLabel, lookupUri, photoUri, sourceType,
-                    accountLabel, null, features, dataUsage, transcription, durationType,
-                    subId);
         } finally {
             if (callCursor != null) {
                 callCursor.close();
             }
         }
+
+        for (int index = 0; index < numCalls; ++index) {
+            details[index] = detailsById.get(ContentUris.parseId(callUris[index]));
+            if (details[index] == null) {
+                throw new IllegalArgumentException("Cannot find content: " + callUris[index]);
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Return the phone call details for the call at the current position of the cursor.
+     *
+     * @param contactInfos the contact details already resolved while loading the same group,
+     *     updated with the ones resolved by this call
+     */
+    private PhoneCallDetails getPhoneCallDetailsFromCursor(Cursor callCursor,
+            Map<NumberWithCountryIso, ContactInfo> contactInfos) {
+        // Read call log specifics.
+        final String number = callCursor.getString(NUMBER_COLUMN_INDEX);
+        final int numberPresentation = callCursor.getInt(
+                NUMBER_PRESENTATION_COLUMN_INDEX);
+        final long date = callCursor.getLong(DATE_COLUMN_INDEX);
+        final long duration = callCursor.getLong(DURATION_COLUMN_INDEX);
+        final int callType = callCursor.getInt(CALL_TYPE_COLUMN_INDEX);
+        String countryIso = callCursor.getString(COUNTRY_ISO_COLUMN_INDEX);
+        final String geocode = callCursor.getString(GEOCODED_LOCATION_COLUMN_INDEX);
+        final String transcription = callCursor.getString(TRANSCRIPTION_COLUMN_INDEX);
+        final int durationType = callCursor.getInt(DURATION_TYPE_COLUMN_INDEX);
+
+        final String accountLabel = PhoneAccountUtils.getAccountLabel(this,
+                PhoneAccountUtils.getAccount(
+                callCursor.getString(ACCOUNT_COMPONENT_NAME),
+                callCursor.getString(ACCOUNT_ID)));
+        String accId = callCursor.getString(ACCOUNT_ID);
+        int subId = SubscriptionManager.DEFAULT_SUBSCRIPTION_ID;
+        if (accId!=null && !accId.equals("E") && !accId.toLowerCase().contains("sip")) {
+            subId = Integer.parseInt(accId);
+        }
+
+        if (TextUtils.isEmpty(countryIso)) {
+            countryIso = mDefaultCountryIso;
+        }
+
+        // Formatted phone number.
+        final CharSequence formattedNumber;
+        // Read contact specifics.
+        final CharSequence nameText;
+        final int numberType;
+        final CharSequence numberLabel;
+        final Uri photoUri;
+        final Uri lookupUri;
+        int sourceType;
+        // If this is not a regular number, there is no point in looking it up in the contacts.
+        ContactInfo info =
+                PhoneNumberUtilsWrapper.canPlaceCallsTo(number, numberPresentation)
+                && !new PhoneNumberUtilsWrapper().isVoicemailNumber(subId, number)
+                        ? lookupContactInfo(number, countryIso, contactInfos)
+                        : null;
+        if (info == null) {
+            formattedNumber = mPhoneNumberHelper.getDisplayNumber(subId, number,
+                    numberPresentation, null);
+            nameText = "";
+            numberType = 0;
+            numberLabel = "";
+            photoUri = null;
+            lookupUri = null;
+            sourceType = 0;
+        } else {
+            formattedNumber = info.formattedNumber;
+            nameText = info.name;
+            numberType = info.type;
+            numberLabel = info.label;
+            photoUri = info.photoUri;
+            lookupUri = info.lookupUri;
+            sourceType = info.sourceType;
+        }
+        final int features = callCursor.getInt(FEATURES);
+        Long dataUsage = null;
+        if (!callCursor.isNull(DATA_USAGE)) {
+            dataUsage = callCursor.getLong(DATA_USAGE);
+        }
+        return new PhoneCallDetails(number, numberPresentation,
+                formattedNumber, countryIso, geocode,
+                new int[]{ callType }, date, duration,
+                nameText, numberType, numberLabel, lookupUri, photoUri, sourceType,
+                accountLabel, null, features, dataUsage, transcription, durationType,
+                subId);
+    }
+
+    /**
+     * Returns the contact details for the given number, preferring the ones already resolved for
+     * the same group or by the call log lists over a new lookup.
+     */
+    private ContactInfo lookupContactInfo(String number, String countryIso,
+            Map<NumberWithCountryIso, ContactInfo> contactInfos) {
+        final NumberWithCountryIso key = new NumberWithCountryIso(number, countryIso);
+        if (contactInfos.containsKey(key)) {
+            return contactInfos.get(key);
+        }
+        ContactInfo info = CallLogAdapterHelper.getSharedContactInfo(number, countryIso);
+        if (info == null || info == ContactInfo.EMPTY) {
+            info = mContactInfoHelper.lookupNumber(number, countryIso);
+            if (info != null) {
+                CallLogAdapterHelper.putSharedContactInfo(number, countryIso, info);
+            }
+        }
+        contactInfos.put(key, info);
+        return info;
     }
 
     protected void updateVoicemailStatusMessage(Cursor statusCursor) {
@@ -631,6 +716,8 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
         // This action deletes all elements in the group from the call log.
         // We don't have this action for voicemails, because you can just use the trash button.
         menu.findItem(R.id.menu_remove_from_call_log).setVisible(mHasRemoveFromCallLogOption);
+        menu.findItem(R.id.menu_remove_all_from_number).setVisible(
+                mHasRemoveFromCallLogOption && !TextUtils.isEmpty(mNumber));
         menu.findItem(R.id.menu_edit_number_before_call).setVisible(mHasEditNumberBeforeCallOption);
         menu.findItem(R.id.menu_trash).setVisible(mHasTrashOption);
 
@@ -660,11 +747,7 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
             .setPositiveButton(android.R.string.ok, new OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialog, int which) {
-                    if (addNumberToFirewall(mNumber, true)) {
-                        Toast.makeText(CallDetailActivity.this,
-                            getString(R.string.firewall_save_success),
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    addNumberToFirewall(mNumber, true);
                 }
             })
             .setNegativeButton(android.R.string.cancel, null)
@@ -673,54 +756,71 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
     }
 
     public void onMenuAddToWhiteList(MenuItem menuItem) {
-        if (addNumberToFirewall(mNumber, true)) {
-             Toast.makeText(CallDetailActivity.this,
-                getString(R.string.firewall_save_success),
-                    Toast.LENGTH_SHORT).show();
-        }
-
+        addNumberToFirewall(mNumber, true);
     }
 
-    private boolean addNumberToFirewall(String number, boolean isBlacklist) {
+    /**
+     * Adds the number to the firewall list, unless it is already in it.
+     * <p>
+     * The firewall provider is queried in the background, and the result is shown in a toast.
+     */
+    private void addNumberToFirewall(String number, final boolean isBlacklist) {
         Log.d(TAG, "number: " + number);
          if (TextUtils.isEmpty(number)) {
             Toast.makeText(CallDetailActivity.this,
                 getString(R.string.firewall_number_len_not_valid),
                     Toast.LENGTH_SHORT).show();
-            return false;
+            return;
         }
-        ContentValues values = new ContentValues();
         String queryNumber = number.replaceAll("[\\-\\/ ]", "");
         int len = queryNumber.length();
         if (len > 11){
             queryNumber = number.substring(len - 11, len);
         }
-        Uri firewallUri = isBlacklist? BLACKLIST_CONTENT_URI: WHITELIST_CONTENT_URI;
-        Cursor firewallCursor = getContentResolver().query(firewallUri,
-                new String[] {
-                        "_id", "number", "person_id", "name"
-                },
-                "number" + " LIKE '%" + queryNumber + "'",
-                null,
-                null);
-        if (firewallCursor != null){
-            if (firewallCursor.getCount() > 0) {
-                firewallCursor.close();
-                firewallCursor = null;
-                String toastString = isBlacklist? getString(R.string.firewall_number_in_black)
-                        : getString(R.string.firewall_number_in_white);
-                Toast.makeText(CallDetailActivity.this, toastString,
-                    Toast.LENGTH_SHORT).show();
-                return false;
-            }
-            firewallCursor.close();
-            firewallCursor = null;
-        }
-        values.put("number", queryNumber);
-        values.put("name", "");
-        // add new
-        getContentResolver().insert(firewallUri, values);
-        return true;
+        final String firewallNumber = queryNumber;
+        final Uri firewallUri = isBlacklist? BLACKLIST_CONTENT_URI: WHITELIST_CONTENT_URI;
+        mAsyncTaskExecutor.submit(Tasks.ADD_NUMBER_TO_FIREWALL,
+                new AsyncTask<Void, Void, Boolean>() {
+                    @Override
+                    public Boolean doInBackground(Void... params) {
+                        Cursor firewallCursor = getContentResolver().query(firewallUri,
+                                new String[] {
+                                        "_id", "number", "person_id", "name"
+                                },
+                                "number" + " LIKE '%" + firewallNumber + "'",
+                                null,
+                                null);
+                        if (firewallCursor != null){
+                            try {
+                                if (firewallCursor.getCount() > 0) {
+                                    return false;
+                                }
+                            } finally {
+                                firewallCursor.close();
+                            }
+                        }
+                        ContentValues values = new ContentValues();
+                        values.put("number", firewallNumber);
+                        values.put("name", "");
+                        // add new
+                        getContentResolver().insert(firewallUri, values);
+                        return true;
+                    }
+
+                    @Override
+                    public void onPostExecute(Boolean added) {
+                        final String toastString;
+                        if (added) {
+                            toastString = getString(R.string.firewall_save_success);
+                        } else {
+                            toastString = isBlacklist
+                                    ? getString(R.string.firewall_number_in_black)
+                                    : getString(R.string.firewall_number_in_white);
+                        }
+                        Toast.makeText(CallDetailActivity.this, toastString,
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     public void onMenuRemoveFromCallLog(MenuItem menuItem) {
@@ -748,6 +848,37 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
         );
     }
 
+    /**
+     * Removes every call with this number from the call log, not only the calls of the group
+     * shown, with a single delete per range of calls. The number is matched the way the call
+     * log provider matches it, so calls with the number in another format are removed too.
+     */
+    public void onMenuRemoveAllFromNumber(MenuItem menuItem) {
+        final String number = mNumber;
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.remove_all_from_number_confirmation_title)
+            .setMessage(number)
+            .setPositiveButton(android.R.string.ok, new OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    final CallLogBulkDeleteTask task = new CallLogBulkDeleteTask(
+                            getContentResolver(), Calls.CONTENT_URI_WITH_VOICEMAIL,
+                            "PHONE_NUMBERS_EQUAL(" + Calls.NUMBER + ", ?)",
+                            new String[] { number });
+                    task.executeWithProgressDialog(CallDetailActivity.this,
+                            getString(R.string.delete_filtered_calls_progress_title),
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    finish();
+                                }
+                            });
+                }
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .create().show();
+    }
+
     public void onMenuEditNumberBeforeCall(MenuItem menuItem) {
         startActivity(new Intent(Intent.ACTION_DIAL, CallUtil.getCallUri(mNumber)));
     }
@@ -775,6 +906,11 @@ public class CallDetailActivity extends AnalyticsActivity implements ProximitySe
 
     @Override
     protected void onPause() {
+        if (mUpdateTask != null) {
+            // The details are loaded again when the activity is resumed.
+            mUpdateTask.cancel(false);
+            mUpdateTask = null;
+        }
         // Immediately stop the proximity sensor.
         disableProximitySensor(false);
         mProximitySensorListener.clearPendingRequests();
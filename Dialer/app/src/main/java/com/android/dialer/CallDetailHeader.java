@@ -52,6 +52,7 @@ import com.android.contacts.common.util.Constants;
 import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.calllog.PhoneNumberDisplayHelper;
 import com.android.dialer.calllog.PhoneNumberUtilsWrapper;
+import com.android.dialer.util.DialerPhotoLoader;
 
 public class CallDetailHeader {
     private static final char LEFT_TO_RIGHT_EMBEDDING = '\u202A';
@@ -60,7 +61,7 @@ public class CallDetailHeader {
     private Activity mActivity;
     private Resources mResources;
     private PhoneNumberDisplayHelper mPhoneNumberHelper;
-    private ContactPhotoManager mContactPhotoManager;
+    private DialerPhotoLoader mPhotoLoader;
     private BidiFormatter mBidiFormatter = BidiFormatter.getInstance();
 
     private String mNumber;
@@ -95,7 +96,7 @@ public class CallDetailHeader {
         mActivity = activity;
         mResources = activity.getResources();
         mPhoneNumberHelper = phoneNumberHelper;
-        mContactPhotoManager = ContactPhotoManager.getInstance(activity);
+        mPhotoLoader = DialerPhotoLoader.getInstance(activity);
 
 
         mCallerName = (TextView) activity.findViewById(R.id.caller_name);
@@ -189,8 +190,9 @@ public class CallDetailHeader {
         mQuickContactBadge.setContentDescription(
                 mResources.getString(R.string.description_contact_details, data.getName()));
 
-        mContactPhotoManager.loadDirectoryPhoto(mQuickContactBadge, data.getPhotoUri(),
-                contactAccount, false /* darkTheme */, true /* isCircular */, request);
+        mPhotoLoader.loadPhoto(mQuickContactBadge, data.getPhotoUri(),
+                mResources.getDimensionPixelSize(R.dimen.contact_photo_size), contactAccount,
+                false /* darkTheme */, true /* isCircular */, request);
     }
 
     static final class ViewEntry {
@@ -31,6 +31,9 @@ public class DialerApplication extends Application {
         super.onCreate();
         ExtensionsFactory.init(getApplicationContext());
         RcsApiManager.init(getApplicationContext());
+        // Loads the speed dial assignments in the background, so that they can be dialed
+        // without a lookup.
+        SpeedDialStore.getInstance(this);
     }
 
     @Override
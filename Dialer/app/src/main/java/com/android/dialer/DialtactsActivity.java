@@ -85,7 +85,10 @@ import com.android.dialer.list.SearchFragment;
 import com.android.dialer.list.SmartDialSearchFragment;
 import com.android.dialer.list.SpeedDialFragment;
 import com.android.dialer.settings.DialerSettingsActivity;
+import com.android.dialer.util.DialerPhotoLoader;
 import com.android.dialer.util.DialerUtils;
+import com.android.dialer.util.LaunchPhaseTimer;
+import com.android.dialer.util.PerfStats;
 import com.android.dialer.widget.ActionBarController;
 import com.android.dialer.widget.SearchEditTextLayout;
 import com.android.dialer.widget.SearchEditTextLayout.OnBackButtonClickedListener;
@@ -95,9 +98,13 @@ import com.android.phone.common.animation.AnimUtils;
 import com.android.internal.telephony.TelephonyProperties;
 import com.android.phone.common.animation.AnimationListenerAdapter;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -131,6 +138,9 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
     private static final String KEY_FIRST_LAUNCH = "first_launch";
     private static final String KEY_IS_DIALPAD_SHOWN = "is_dialpad_shown";
 
+    /** Argument to {@link #dump} which resets the performance stats after dumping them. */
+    private static final String DUMP_ARG_RESET_PERF_STATS = "--reset-perf-stats";
+
     private static final String TAG_DIALPAD_FRAGMENT = "dialpad";
     private static final String TAG_REGULAR_SEARCH_FRAGMENT = "search";
     private static final String TAG_SMARTDIAL_SEARCH_FRAGMENT = "smartdial";
@@ -343,6 +353,17 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
         }
     };
 
+    /**
+     * Work started on resume which is deferred until the first frame has been drawn.
+     */
+    private final Runnable mDeferredStartupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            LaunchPhaseTimer.markPhase(LaunchPhaseTimer.PHASE_FIRST_FRAME);
+            mDialerDatabaseHelper.startSmartDialUpdateThread();
+        }
+    };
+
     /**
      * If the search term is empty and the user closes the soft keyboard, close the search UI.
      */
@@ -369,6 +390,7 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        LaunchPhaseTimer.start();
         mFirstLaunch = true;
 
         final Resources resources = getResources();
@@ -476,6 +498,7 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
 
         mDialerDatabaseHelper = DatabaseHelperManager.getDatabaseHelper(this);
         SmartDialPrefix.initializeNanpSettings(this);
+        LaunchPhaseTimer.markPhase(LaunchPhaseTimer.PHASE_CREATED);
     }
 
     private void setupActivityOverlay() {
@@ -516,7 +539,9 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
 
         mFirstLaunch = false;
         prepareVoiceSearchButton();
-        mDialerDatabaseHelper.startSmartDialUpdateThread();
+        // Bringing the smart dial database up to date is not needed to show the dialer, so it
+        // waits until the first frame has been drawn.
+        DialerUtils.runAfterNextFrame(mParentLayout, mDeferredStartupRunnable);
         updateFloatingActionButtonControllerAlignment(false /* animate */);
         setConferenceDialButtonImage(false);
         setConferenceDialButtonVisibility(true);
@@ -546,6 +571,48 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
         mStateSaved = true;
     }
 
+    /**
+     * Dumps the latencies and counters collected by {@link PerfStats}, the phases of the last
+     * launch and the state of the photo cache. Pulled with
+     * {@code adb shell dumpsys activity com.android.dialer/.DialtactsActivity}; pass
+     * {@link #DUMP_ARG_RESET_PERF_STATS} to start collecting afresh after dumping.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        final String innerPrefix = prefix + "  ";
+        writer.print(prefix);
+        writer.println("Performance stats:");
+        PerfStats.dump(innerPrefix, writer);
+
+        writer.print(innerPrefix);
+        writer.println("Launch phases (ms):");
+        for (Map.Entry<String, Long> phase : LaunchPhaseTimer.getPhaseTimes().entrySet()) {
+            writer.print(innerPrefix);
+            writer.print("  ");
+            writer.print(phase.getKey());
+            writer.print(": ");
+            writer.println(phase.getValue());
+        }
+
+        final DialerPhotoLoader photoLoader = DialerPhotoLoader.getInstance(this);
+        writer.print(innerPrefix);
+        writer.print("Photo cache: hits=");
+        writer.print(photoLoader.getHitCount());
+        writer.print(" misses=");
+        writer.print(photoLoader.getMissCount());
+        writer.print(" sharedLoads=");
+        writer.print(photoLoader.getSharedLoadCount());
+        writer.print(" bytesHeld=");
+        writer.print(photoLoader.getBytesHeld());
+        writer.print("/");
+        writer.println(photoLoader.getMaxBytes());
+
+        if (args != null && Arrays.asList(args).contains(DUMP_ARG_RESET_PERF_STATS)) {
+            PerfStats.reset();
+        }
+    }
+
     @Override
     public void onAttachFragment(Fragment fragment) {
         if (fragment instanceof DialpadFragment) {
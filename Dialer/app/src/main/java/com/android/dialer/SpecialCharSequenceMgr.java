@@ -47,6 +47,7 @@ import android.widget.TextView;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Locale;
 
 import com.android.common.io.MoreCloseables;
@@ -104,6 +105,7 @@ public class SpecialCharSequenceMgr {
     private static final String CHECK_TRIGGER = "*#3251"; 
     private static final String TESTING_SCAN_TYPE     = "*#1261*#";
     private static final String SCAN_AGE     = "*#1260*#";
+    private static final String NETWORK_SETTING = "*#410";
     private static QcRilHook mQcRilOemHook;
     private static String mHWNStr;
     private static String qcnStr;
@@ -158,50 +160,208 @@ public class SpecialCharSequenceMgr {
 
         //get rid of the separators so that the string gets parsed correctly
         String dialString = PhoneNumberUtils.stripSeparators(input);
+        if (dialString == null || dialString.length() < 2) {
+            // All of the codes are at least two characters long.
+            return false;
+        }
+
+        // Codes which must match exactly are resolved with a single table lookup, instead of
+        // asking every handler in turn.
+        final CodeHandler handler = getCodeTable(context).get(dialString);
+        if (handler != null && handler.handle(context, dialString, useSystemWindow, textField)) {
+            return true;
+        }
+
+        // The remaining handlers match patterns, and check them before doing any other work.
+        return handlePinEntry(context, dialString)
+                || handleAdnEntry(context, dialString, textField)
+                || handleSecretCode(context, dialString);
+    }
+
+    /**
+     * Handles a code entered on the dialpad.
+     *
+     * @see #registerCode(String, CodeHandler)
+     */
+    public interface CodeHandler {
+        /**
+         * @param context the context to use
+         * @param input the code, with separators removed
+         * @param useSystemWindow whether dialogs should be shown in a system window
+         * @param textField the dialpad text field, may be null
+         * @return true if the code was handled
+         */
+        boolean handle(Context context, String input, boolean useSystemWindow,
+                EditText textField);
+    }
+
+    /** Codes registered through {@link #registerCode(String, CodeHandler)}. */
+    private static final HashMap<String, CodeHandler> sRegisteredCodes =
+            new HashMap<String, CodeHandler>();
+    /** The codes handled by this class, and the registered ones, keyed by code. */
+    private static HashMap<String, CodeHandler> sCodeTable;
+
+    /**
+     * Registers a handler for a code which must be entered exactly (e.g. a vendor specific test
+     * tool code), in addition to the codes handled by this class. Must be run inside the main
+     * thread.
+     */
+    public static void registerCode(String code, CodeHandler handler) {
+        sRegisteredCodes.put(code, handler);
+        if (sCodeTable != null) {
+            sCodeTable.put(code, handler);
+        }
+    }
+
+    /** Builds the table of exact codes the first time it is needed. */
+    private static HashMap<String, CodeHandler> getCodeTable(Context context) {
+        if (sCodeTable != null) {
+            return sCodeTable;
+        }
+
+        final HashMap<String, CodeHandler> table = new HashMap<String, CodeHandler>();
+        table.put(PRL_VERSION_DISPLAY, new CodeHandler() {
+            @Override
+            public boolean handle(Context context, String input, boolean useSystemWindow,
+                    EditText textField) {
+                return handlePRLVersion(context, input);
+            }
+        });
+        table.put(MMI_IMEI_DISPLAY, new CodeHandler() {
+            @Override
+            public boolean handle(Context context, String input, boolean useSystemWindow,
+                    EditText textField) {
+                return handleIMEIDisplay(context, input, useSystemWindow);
+            }
+        });
+        table.put(MMI_REGULATORY_INFO_DISPLAY, new CodeHandler() {
+            @Override
+            public boolean handle(Context context, String input, boolean useSystemWindow,
+                    EditText textField) {
+                return handleRegulatoryInfoDisplay(context, input);
+            }
+        });
+        table.put(MMI_ENGINEER_MODE_DISPLAY, new CodeHandler() {
+            @Override
+            public boolean handle(Context context, String input, boolean useSystemWindow,
+                    EditText textField) {
+                return handleEngineerModeDisplay(context, input);
+            }
+        });
 
         if (context.getResources().getBoolean(R.bool.def_dialer_secretcode_enabled) ||
                 context.getResources().getBoolean(R.bool.def_dialer_settings_diagport_enabled)) {
-            if (handlePRLVersion(context, dialString)
-                    || handleIMEIDisplay(context, dialString, useSystemWindow)
-                    || handleRegulatoryInfoDisplay(context, dialString)
-                    || handleEngineerModeDisplay(context, dialString)
-                    || handlePinEntry(context, dialString)
-                    || handleAdnEntry(context, dialString, textField)
-                    || handleSecretCode(context, dialString)
-                    || handleFactorySetCode(context, dialString)
-                    || handleSetDiagPortCode(context, dialString)) {
-                return true;
-            }
+            table.put(MMI_FACTORY_MODE_DISPLAY, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleFactorySetCode(context, input);
+                }
+            });
+            table.put(MMI_OPEN_DIAG_MENU_DISPLAY, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleSetDiagPortCode(context, input);
+                }
+            });
         } else {
-            if (handlePRLVersion(context, dialString)
-                    || handleIMEIDisplay(context, dialString, useSystemWindow)
-                    || handleRegulatoryInfoDisplay(context, dialString)
-                    || handleEngineerModeDisplay(context, dialString)
-                    || handlePinEntry(context, dialString)
-                    || handleAdnEntry(context, dialString, textField)
-                    || handleQualcommQLog(context, dialString)
-                    || handleGpsTool(context, dialString)
-                    || handleTounchCal(context, dialString)
-                    || handleScanType(context, dialString)
-                    || handleScanAgeTest(context, dialString)
-                    || handleTestingEntry(context, dialString)
-                    || handleDeviceInfoEntry(context, dialString, useSystemWindow)
-                    || handlePWVBUILDIDEntry(context, dialString, useSystemWindow)
-                    || handleSecretCode(context, dialString)
-	                // add max3250
-	                || handleMaxTool(context, dialString)
-	                || handleCheckTrigger(context,dialString)
-                    || handleShowNetworkSetting(context, dialString)) {
-                return true;
-            }
+            table.put(QUAL_DISPLAY_QLOG, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleQualcommQLog(context, input);
+                }
+            });
+            table.put(GPS_TOOL, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleGpsTool(context, input);
+                }
+            });
+            table.put(Fine_Touch_Cal, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleTounchCal(context, input);
+                }
+            });
+            table.put(TESTING_SCAN_TYPE, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleScanType(context, input);
+                }
+            });
+            table.put(SCAN_AGE, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleScanAgeTest(context, input);
+                }
+            });
+            final CodeHandler testingHandler = new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleTestingEntry(context, input);
+                }
+            };
+            table.put(TESTING_TOOL, testingHandler);
+            table.put(TESTING_TOOL_319, testingHandler);
+            table.put(TESTING_TOOL_UROVO, testingHandler);
+            final CodeHandler deviceInfoHandler = new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleDeviceInfoEntry(context, input, useSystemWindow);
+                }
+            };
+            // TESTING_NAME is the common prefix of the device info codes, entering it starts
+            // loading the values shown by the device info panel.
+            table.put(TESTING_NAME, deviceInfoHandler);
+            table.put(DEVICEINFO_DISPLAY, deviceInfoHandler);
+            table.put(PWV_BUILD_ID, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handlePWVBUILDIDEntry(context, input, useSystemWindow);
+                }
+            });
+            // add max3250
+            table.put(MAX_TOOL, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleMaxTool(context, input);
+                }
+            });
+            table.put(CHECK_TRIGGER, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleCheckTrigger(context, input);
+                }
+            });
+            table.put(NETWORK_SETTING, new CodeHandler() {
+                @Override
+                public boolean handle(Context context, String input, boolean useSystemWindow,
+                        EditText textField) {
+                    return handleShowNetworkSetting(context, input);
+                }
+            });
         }
-        return false;
+
+        table.putAll(sRegisteredCodes);
+        sCodeTable = table;
+        return table;
     }
     
     
     static private boolean handleShowNetworkSetting(Context context, String input) {
         int len = input.length();
-        if (len > 4 && input.equals("*#410")) {
+        if (len > 4 && input.equals(NETWORK_SETTING)) {
         	Intent intent = new Intent();
             intent.setClassName("com.android.phone","com.android.phone.MobileNetworkSettings");
             intent.putExtra("networksetting",true);
@@ -570,6 +730,10 @@ public class SpecialCharSequenceMgr {
      */
     static boolean handleAdnEntry(Context context, String input, EditText textField) {
         /* ADN entries are of the form "N(N)(N)#" */
+        int len = input.length();
+        if ((len <= 1) || (len >= 5) || (!input.endsWith("#"))) {
+            return false;
+        }
 
         TelephonyManager telephonyManager =
                 (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
@@ -588,58 +752,55 @@ public class SpecialCharSequenceMgr {
             return false;
         }
 
-        int len = input.length();
-        if ((len > 1) && (len < 5) && (input.endsWith("#"))) {
-            try {
-                // get the ordinal number of the sim contact
-                int index = Integer.parseInt(input.substring(0, len-1));
-
-                // The original code that navigated to a SIM Contacts list view did not
-                // highlight the requested contact correctly, a requirement for PTCRB
-                // certification.  This behaviour is consistent with the UI paradigm
-                // for touch-enabled lists, so it does not make sense to try to work
-                // around it.  Instead we fill in the the requested phone number into
-                // the dialer text field.
-
-                // create the async query handler
-                QueryHandler handler = new QueryHandler (context.getContentResolver());
-
-                // create the cookie object
-                SimContactQueryCookie sc = new SimContactQueryCookie(index - 1, handler,
-                        ADN_QUERY_TOKEN);
-
-                // setup the cookie fields
-                sc.contactNum = index - 1;
-                sc.setTextField(textField);
-
-                // create the progress dialog
-                sc.progressDialog = new ProgressDialog(context);
-                sc.progressDialog.setTitle(R.string.simContacts_title);
-                sc.progressDialog.setMessage(context.getText(R.string.simContacts_emptyLoading));
-                sc.progressDialog.setIndeterminate(true);
-                sc.progressDialog.setCancelable(true);
-                sc.progressDialog.setOnCancelListener(sc);
-                sc.progressDialog.getWindow().addFlags(
-                        WindowManager.LayoutParams.FLAG_BLUR_BEHIND);
-
-                // display the progress dialog
-                sc.progressDialog.show();
-
-                // run the query.
-                int subId = SubscriptionManager.from(context).getDefaultVoiceSubId();
-                Uri uri = Uri.parse("content://icc/adn/subId/" + subId);
-                handler.startQuery(ADN_QUERY_TOKEN, sc, uri,
-                        new String[]{ADN_PHONE_NUMBER_COLUMN_NAME}, null, null, null);
-
-                if (sPreviousAdnQueryHandler != null) {
-                    // It is harmless to call cancel() even after the handler's gone.
-                    sPreviousAdnQueryHandler.cancel();
-                }
-                sPreviousAdnQueryHandler = handler;
-                return true;
-            } catch (NumberFormatException ex) {
-                // Ignore
+        try {
+            // get the ordinal number of the sim contact
+            int index = Integer.parseInt(input.substring(0, len-1));
+
+            // The original code that navigated to a SIM Contacts list view did not
+            // highlight the requested contact correctly, a requirement for PTCRB
+            // certification.  This behaviour is consistent with the UI paradigm
+            // for touch-enabled lists, so it does not make sense to try to work
+            // around it.  Instead we fill in the the requested phone number into
+            // the dialer text field.
+
+            // create the async query handler
+            QueryHandler handler = new QueryHandler (context.getContentResolver());
+
+            // create the cookie object
+            SimContactQueryCookie sc = new SimContactQueryCookie(index - 1, handler,
+                    ADN_QUERY_TOKEN);
+
+            // setup the cookie fields
+            sc.contactNum = index - 1;
+            sc.setTextField(textField);
+
+            // create the progress dialog
+            sc.progressDialog = new ProgressDialog(context);
+            sc.progressDialog.setTitle(R.string.simContacts_title);
+            sc.progressDialog.setMessage(context.getText(R.string.simContacts_emptyLoading));
+            sc.progressDialog.setIndeterminate(true);
+            sc.progressDialog.setCancelable(true);
+            sc.progressDialog.setOnCancelListener(sc);
+            sc.progressDialog.getWindow().addFlags(
+                    WindowManager.LayoutParams.FLAG_BLUR_BEHIND);
+
+            // display the progress dialog
+            sc.progressDialog.show();
+
+            // run the query.
+            int subId = SubscriptionManager.from(context).getDefaultVoiceSubId();
+            Uri uri = Uri.parse("content://icc/adn/subId/" + subId);
+            handler.startQuery(ADN_QUERY_TOKEN, sc, uri,
+                    new String[]{ADN_PHONE_NUMBER_COLUMN_NAME}, null, null, null);
+
+            if (sPreviousAdnQueryHandler != null) {
+                // It is harmless to call cancel() even after the handler's gone.
+                sPreviousAdnQueryHandler.cancel();
             }
+            sPreviousAdnQueryHandler = handler;
+            return true;
+        } catch (NumberFormatException ex) {
+            // Ignore
         }
         return false;
     }
@@ -73,7 +73,8 @@ import static com.android.internal.telephony.PhoneConstants.SUBSCRIPTION_KEY;
 import java.util.List;
 
 public class SpeedDialListActivity extends ListActivity implements
-        AdapterView.OnItemClickListener, PopupMenu.OnMenuItemClickListener {
+        AdapterView.OnItemClickListener, PopupMenu.OnMenuItemClickListener,
+        SpeedDialStore.Listener {
     private static final String TAG = "SpeedDial";
     private static final String ACTION_ADD_VOICEMAIL =
             "com.android.phone.CallFeaturesSetting.ADD_VOICEMAIL";
@@ -115,6 +116,7 @@ public class SpeedDialListActivity extends ListActivity implements
     }
 
     private SparseArray<Record> mRecords;
+    private SpeedDialStore mSpeedDialStore;
 
     private int mPickNumber;
     private int mInitialPickNumber;
@@ -132,6 +134,7 @@ public class SpeedDialListActivity extends ListActivity implements
 
         mInitialPickNumber = getIntent().getIntExtra(EXTRA_INITIAL_PICK_NUMBER, -1);
         mRecords = new SparseArray<Record>();
+        mSpeedDialStore = SpeedDialStore.getInstance(this);
 
         //the first item is the "1.voice mail", it never changes
         mRecords.put(1, new Record(getString(R.string.voicemail)));
@@ -155,23 +158,13 @@ public class SpeedDialListActivity extends ListActivity implements
     protected void onResume() {
         super.onResume();
 
-        // get number from shared preferences
-        for (int i = 2; i <= 9; i++) {
-            String phoneNumber = SpeedDialUtils.getNumber(this, i);
-            Record record = null;
-            if (phoneNumber != null) {
-                Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI,
-                        Uri.encode(phoneNumber));
-                record = getRecordFromQuery(uri, LOOKUP_PROJECTION);
-                if (record == null) {
-                    record = new Record(phoneNumber);
-                }
-            }
-            mRecords.put(i, record);
+        // The contacts of the assigned numbers have already been looked up by the store, which
+        // notifies us when they are loaded again.
+        mSpeedDialStore.addListener(this);
+        if (mSpeedDialStore.isLoaded()) {
+            onSpeedDialsChanged();
         }
 
-        mAdapter.notifyDataSetChanged();
-
         if (mInitialPickNumber >= 2 && mInitialPickNumber <= 9) {
             pickContact(mInitialPickNumber);
             // we only want to trigger the picker once
@@ -179,6 +172,29 @@ public class SpeedDialListActivity extends ListActivity implements
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mSpeedDialStore.removeListener(this);
+    }
+
+    @Override
+    public void onSpeedDialsChanged() {
+        for (int i = SpeedDialStore.MIN_KEY; i <= SpeedDialStore.MAX_KEY; i++) {
+            final SpeedDialStore.Entry entry = mSpeedDialStore.getEntry(i);
+            Record record = null;
+            if (entry != null) {
+                record = new Record(entry.displayNumber);
+                record.contactId = entry.contactId;
+                record.name = entry.name;
+                record.photoId = entry.photoId;
+                record.normalizedNumber = entry.normalizedNumber;
+            }
+            mRecords.put(i, record);
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
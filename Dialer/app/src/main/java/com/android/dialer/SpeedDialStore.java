@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import com.android.dialer.util.AsyncTaskExecutor;
+import com.android.dialer.util.AsyncTaskExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the speed dial assignments in memory, with the name, number and photo of the contact each
+ * one belongs to already looked up, so that a long press on the dialpad can dial without reading
+ * the preferences or querying the contacts provider on the UI thread.
+ * <p>
+ * The assignments are loaded in the background when the process starts, and loaded again whenever
+ * an assignment or the contacts change. Until the first load completes, {@link #getNumber} reads
+ * the assignment from the preferences. Must be used from the UI thread.
+ */
+public class SpeedDialStore {
+    private static final String TAG = "SpeedDialStore";
+
+    /** The lowest and highest keys which can be assigned; key 1 is the voicemail. */
+    public static final int MIN_KEY = 2;
+    public static final int MAX_KEY = 9;
+
+    private static final String[] LOOKUP_PROJECTION = new String[] {
+        ContactsContract.PhoneLookup._ID,
+        ContactsContract.PhoneLookup.DISPLAY_NAME,
+        ContactsContract.PhoneLookup.PHOTO_ID,
+        ContactsContract.PhoneLookup.NUMBER,
+        ContactsContract.PhoneLookup.NORMALIZED_NUMBER
+    };
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_NAME = 1;
+    private static final int COLUMN_PHOTO = 2;
+    private static final int COLUMN_NUMBER = 3;
+    private static final int COLUMN_NORMALIZED = 4;
+
+    /** Identifiers of the tasks submitted to the {@link AsyncTaskExecutor}. */
+    public enum Tasks {
+        LOAD_SPEED_DIALS,
+    }
+
+    /** Notified on the UI thread once the assignments have been loaded again. */
+    public interface Listener {
+        void onSpeedDialsChanged();
+    }
+
+    /** A speed dial assignment, and the contact its number belongs to if there is one. */
+    public static class Entry {
+        /** The number assigned to the key, as saved. */
+        public final String number;
+        /** The number as stored for the contact, or {@link #number} if there is no contact. */
+        public final String displayNumber;
+        public final String normalizedNumber;
+        /** The id of the contact, or -1 if the number does not belong to a contact. */
+        public final long contactId;
+        public final String name;
+        public final long photoId;
+
+        @VisibleForTesting
+        Entry(String number, String displayNumber, String normalizedNumber, long contactId,
+                String name, long photoId) {
+            this.number = number;
+            this.displayNumber = displayNumber;
+            this.normalizedNumber = normalizedNumber;
+            this.contactId = contactId;
+            this.name = name;
+            this.photoId = photoId;
+        }
+    }
+
+    private static SpeedDialStore sInstance;
+
+    private final Context mContext;
+    private final AsyncTaskExecutor mAsyncTaskExecutor;
+    private final ArrayList<Listener> mListeners = Lists.newArrayList();
+    /** The entry of each key, indexed by key; null once loaded means the key is unassigned. */
+    private Entry[] mEntries;
+    private boolean mLoading;
+    /** Whether something changed while loading, so the loaded entries may be out of date. */
+    private boolean mReloadPending;
+
+    private final ContentObserver mContactsObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            reload();
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    reload();
+                }
+            };
+
+    /** Returns the store, starting to load the assignments the first time it is called. */
+    public static synchronized SpeedDialStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SpeedDialStore(context.getApplicationContext());
+            sInstance.startObserving();
+            sInstance.reload();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    SpeedDialStore(Context context) {
+        mContext = context;
+        mAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+    }
+
+    private void startObserving() {
+        mContext.getContentResolver().registerContentObserver(
+                ContactsContract.Contacts.CONTENT_URI, true, mContactsObserver);
+        // The preferences keep a strong reference to the listener, since the store lives as long
+        // as the process.
+        SpeedDialUtils.getPrefs(mContext).registerOnSharedPreferenceChangeListener(mPrefsListener);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** Whether the assignments have been loaded, so that {@link #getEntry} can be used. */
+    public boolean isLoaded() {
+        return mEntries != null;
+    }
+
+    /** Returns the assignment of the given key, or null if it is unassigned or not yet loaded. */
+    public Entry getEntry(int key) {
+        if (mEntries == null || key < MIN_KEY || key > MAX_KEY) {
+            return null;
+        }
+        return mEntries[key];
+    }
+
+    /** Returns the number assigned to the given key, or null if it is unassigned. */
+    public String getNumber(int key) {
+        if (mEntries == null) {
+            return SpeedDialUtils.getNumber(mContext, key);
+        }
+        final Entry entry = getEntry(key);
+        return entry != null ? entry.number : null;
+    }
+
+    /** Loads the assignments again, once the load in progress if any has completed. */
+    private void reload() {
+        if (mLoading) {
+            mReloadPending = true;
+            return;
+        }
+        mLoading = true;
+        mAsyncTaskExecutor.submit(Tasks.LOAD_SPEED_DIALS, new AsyncTask<Void, Void, Entry[]>() {
+            @Override
+            protected Entry[] doInBackground(Void... params) {
+                return loadEntries();
+            }
+
+            @Override
+            protected void onPostExecute(Entry[] entries) {
+                mLoading = false;
+                mEntries = entries;
+                for (Listener listener : Lists.newArrayList(mListeners)) {
+                    listener.onSpeedDialsChanged();
+                }
+                if (mReloadPending) {
+                    mReloadPending = false;
+                    reload();
+                }
+            }
+        });
+    }
+
+    private Entry[] loadEntries() {
+        final Entry[] entries = new Entry[MAX_KEY + 1];
+        final ContentResolver resolver = mContext.getContentResolver();
+        for (int key = MIN_KEY; key <= MAX_KEY; key++) {
+            final String number = SpeedDialUtils.getNumber(mContext, key);
+            if (number != null) {
+                entries[key] = lookupEntry(resolver, number);
+            }
+        }
+        return entries;
+    }
+
+    private static Entry lookupEntry(ContentResolver resolver, String number) {
+        final Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI,
+                Uri.encode(number));
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, LOOKUP_PROJECTION, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                final String normalizedNumber = cursor.getString(COLUMN_NORMALIZED);
+                final String displayNumber = cursor.getString(COLUMN_NUMBER);
+                return new Entry(number, displayNumber,
+                        normalizedNumber != null ? normalizedNumber : displayNumber,
+                        cursor.getLong(COLUMN_ID), cursor.getString(COLUMN_NAME),
+                        cursor.getLong(COLUMN_PHOTO));
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not look up the contact of a speed dial number", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return new Entry(number, number, number, -1, null, 0);
+    }
+}
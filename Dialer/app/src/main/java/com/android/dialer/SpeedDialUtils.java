@@ -57,7 +57,7 @@ public class SpeedDialUtils {
         return getPrefs(context).getString(key, null);
     }
 
-    private static SharedPreferences getPrefs(Context context) {
+    static SharedPreferences getPrefs(Context context) {
         return context.getSharedPreferences("speeddial", context.MODE_PRIVATE);
     }
 }
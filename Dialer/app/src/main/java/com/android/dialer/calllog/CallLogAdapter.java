@@ -45,6 +45,7 @@ import android.view.accessibility.AccessibilityEvent;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -59,6 +60,7 @@ import com.android.dialer.DialtactsActivity;
 import com.android.dialer.PhoneCallDetails;
 import com.android.dialer.PhoneCallDetailsHelper;
 import com.android.dialer.R;
+import com.android.dialer.util.DialerPhotoLoader;
 import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.ExpirableCache;
 
@@ -80,6 +82,8 @@ public class CallLogAdapter extends GroupingListAdapter
 
     private static final String TAG = CallLogAdapter.class.getSimpleName();
     private static final int VOICEMAIL_TRANSCRIPTION_MAX_LINES = 10;
+    /** The number of rows below the visible ones whose photos are decoded ahead of time. */
+    private static final int PHOTO_PREFETCH_COUNT = 8;
 
     /** The enumeration of {@link android.os.AsyncTask} objects used in this class. */
     public enum Tasks {
@@ -156,7 +160,11 @@ public class CallLogAdapter extends GroupingListAdapter
     private final CallLogListItemHelper mCallLogViewsHelper;
 
     /** Helper to set up contact photos. */
-    private final ContactPhotoManager mContactPhotoManager;
+    private final DialerPhotoLoader mPhotoLoader;
+    /** The size contact photos are displayed at, in pixels. */
+    private final int mPhotoSizePx;
+    /** The formatted numbers and locations shared with the other screens showing calls. */
+    private final PhoneNumberFormatCache mFormatCache;
     /** Helper to parse and process phone numbers. */
     private PhoneNumberDisplayHelper mPhoneNumberHelper;
     /** Helper to group call log entries. */
@@ -242,7 +250,9 @@ public class CallLogAdapter extends GroupingListAdapter
         mExpandedBackgroundColor = resources.getColor(R.color.call_log_expanded_background_color);
         mExpandedTranslationZ = resources.getDimension(R.dimen.call_log_expanded_translation_z);
 
-        mContactPhotoManager = ContactPhotoManager.getInstance(mContext);
+        mPhotoLoader = DialerPhotoLoader.getInstance(mContext);
+        mPhotoSizePx = resources.getDimensionPixelSize(R.dimen.contact_photo_size);
+        mFormatCache = PhoneNumberFormatCache.getInstance(mContext);
         mPhoneNumberHelper = new PhoneNumberDisplayHelper(resources);
         mAdapterHelper = new CallLogAdapterHelper(context, this,
                 contactInfoHelper, mPhoneNumberHelper);
@@ -434,7 +444,20 @@ public class CallLogAdapter extends GroupingListAdapter
             final Uri photoUri = info.photoUri;
             CharSequence formattedNumber = info.formattedNumber;
             final int[] callTypes = getCallTypes(c, count);
-            final String geocode = c.getString(CallLogQuery.GEOCODED_LOCATION);
+            String geocode = c.getString(CallLogQuery.GEOCODED_LOCATION);
+            if (TextUtils.isEmpty(formattedNumber) || TextUtils.isEmpty(geocode)) {
+                // Only use the numbers which have already been formatted in the background.
+                final PhoneNumberFormatCache.FormattedNumber formatted =
+                        mFormatCache.getCached(number, countryIso);
+                if (formatted != null) {
+                    if (TextUtils.isEmpty(formattedNumber)) {
+                        formattedNumber = formatted.formattedNumber;
+                    }
+                    if (TextUtils.isEmpty(geocode)) {
+                        geocode = formatted.getGeocode();
+                    }
+                }
+            }
             final int sourceType = info.sourceType;
             final int features = getCallFeatures(c, count);
             final String transcription = c.getString(CallLogQuery.TRANSCRIPTION);
@@ -533,7 +556,14 @@ public class CallLogAdapter extends GroupingListAdapter
      */
     public void setPhoneCallDetailsTemp(
             CallLogListItemViews views, Cursor c, int count, String number, long date) {
-        final String formattedNumber = c.getString(CallLogQuery.CACHED_FORMATTED_NUMBER);
+        String formattedNumber = c.getString(CallLogQuery.CACHED_FORMATTED_NUMBER);
+        if (TextUtils.isEmpty(formattedNumber)) {
+            final PhoneNumberFormatCache.FormattedNumber formatted =
+                    mFormatCache.getCached(number, c.getString(CallLogQuery.COUNTRY_ISO));
+            if (formatted != null) {
+                formattedNumber = formatted.formattedNumber;
+            }
+        }
         views.phoneCallDetailsViews.nameView.setText(TextUtils
                 .isEmpty(formattedNumber) ? number : formattedNumber);
         views.phoneCallDetailsViews.callTypeIcons.clear();
@@ -558,7 +588,7 @@ public class CallLogAdapter extends GroupingListAdapter
         int contactType = ContactPhotoManager.TYPE_DEFAULT;
         DefaultImageRequest request = new DefaultImageRequest(number, null,
                 contactType, true /* isCircular */);
-        mContactPhotoManager.loadThumbnail(views.quickContactView, 0, null,
+        mPhotoLoader.loadThumbnail(views.quickContactView, 0, null,
                 false /* darkTheme */, true /* isCircular */, request);
     }
 
@@ -979,7 +1009,7 @@ public class CallLogAdapter extends GroupingListAdapter
         views.quickContactView.setOverlay(null);
         DefaultImageRequest request = new DefaultImageRequest(displayName, identifier,
                 contactType, true /* isCircular */);
-        mContactPhotoManager.loadThumbnail(views.quickContactView, photoId, account,
+        mPhotoLoader.loadThumbnail(views.quickContactView, photoId, account,
                 false /* darkTheme */, true /* isCircular */, request);
     }
 
@@ -989,7 +1019,7 @@ public class CallLogAdapter extends GroupingListAdapter
         views.quickContactView.setOverlay(null);
         DefaultImageRequest request = new DefaultImageRequest(displayName, identifier,
                 contactType, true /* isCircular */);
-        mContactPhotoManager.loadDirectoryPhoto(views.quickContactView, photoUri, account,
+        mPhotoLoader.loadPhoto(views.quickContactView, photoUri, mPhotoSizePx, account,
                 false /* darkTheme */, true /* isCircular */, request);
     }
 
@@ -1223,6 +1253,57 @@ public class CallLogAdapter extends GroupingListAdapter
     @Override
     public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
                          int totalItemCount) {
-        // no-op
+        if (mAdapterHelper.isBusy()) {
+            // Rows are not bound while flinging, so there is no use in decoding their photos yet.
+            return;
+        }
+        // The list may have header views, which the adapter positions do not account for.
+        final int headerCount =
+                view instanceof ListView ? ((ListView) view).getHeaderViewsCount() : 0;
+        final int firstPrefetchPosition = firstVisibleItem + visibleItemCount - headerCount;
+        prefetchPhotos(Math.max(firstPrefetchPosition, 0), PHOTO_PREFETCH_COUNT);
+        // Formats the numbers of the rows shown and of the next page in one batch.
+        prefetchFormattedNumbers(Math.max(firstVisibleItem - headerCount, 0),
+                visibleItemCount * 2);
+    }
+
+    /**
+     * Starts formatting the numbers of the given rows which are not in the call log's cached
+     * contact info yet, in a single background task.
+     */
+    private void prefetchFormattedNumbers(int firstPosition, int count) {
+        final int lastPosition = Math.min(firstPosition + count, getCount());
+        final ArrayList<NumberWithCountryIso> numbers = Lists.newArrayList();
+        for (int position = firstPosition; position < lastPosition; position++) {
+            final Cursor c = (Cursor) getItem(position);
+            if (c == null || !TextUtils.isEmpty(c.getString(CallLogQuery.CACHED_FORMATTED_NUMBER))
+                    && !TextUtils.isEmpty(c.getString(CallLogQuery.GEOCODED_LOCATION))) {
+                continue;
+            }
+            numbers.add(new NumberWithCountryIso(c.getString(CallLogQuery.NUMBER),
+                    c.getString(CallLogQuery.COUNTRY_ISO)));
+        }
+        if (!numbers.isEmpty()) {
+            mFormatCache.prefetch(numbers);
+        }
+    }
+
+    /**
+     * Starts decoding the photos of the given rows, if the contacts of their numbers have already
+     * been looked up, so that the photos are ready by the time the rows are scrolled into view.
+     */
+    private void prefetchPhotos(int firstPosition, int count) {
+        final int lastPosition = Math.min(firstPosition + count, getCount());
+        for (int position = firstPosition; position < lastPosition; position++) {
+            final Cursor c = (Cursor) getItem(position);
+            if (c == null) {
+                continue;
+            }
+            final ContactInfo info = mAdapterHelper.getCachedContactInfo(
+                    c.getString(CallLogQuery.NUMBER), c.getString(CallLogQuery.COUNTRY_ISO));
+            if (info != null && info.photoId == 0 && info.photoUri != null) {
+                mPhotoLoader.prefetch(info.photoUri, mPhotoSizePx);
+            }
+        }
     }
 }
@@ -200,6 +200,15 @@ public class CallLogAdapterHelper implements ViewTreeObserver.OnPreDrawListener
      */
     private ExpirableCache<NumberWithCountryIso, ContactInfo> mContactInfoCache;
 
+    /**
+     * A process-wide cache of the contact details resolved by any call log list, so that other
+     * screens (e.g. the call details) showing the same numbers do not need to look them up again.
+     * <p>
+     * It is expired together with {@link #mContactInfoCache}.
+     */
+    private static final ExpirableCache<NumberWithCountryIso, ContactInfo> sSharedContactInfoCache =
+            ExpirableCache.create(CONTACT_INFO_CACHE_SIZE);
+
     private QueryThread mCallerIdThread;
     /** Can be set to true by tests to disable processing of requests. */
     private volatile boolean mRequestProcessingDisabled = false;
@@ -297,6 +306,7 @@ public class CallLogAdapterHelper implements ViewTreeObserver.OnPreDrawListener
 
     public void invalidateCache() {
         mContactInfoCache.expireAll();
+        sSharedContactInfoCache.expireAll();
 
         // Restart the request-processing thread after the next draw.
         stopRequestProcessing();
@@ -362,10 +372,29 @@ public class CallLogAdapterHelper implements ViewTreeObserver.OnPreDrawListener
         // Store the data in the cache so that the UI thread can use to display it. Store it
         // even if it has not changed so that it is marked as not expired.
         mContactInfoCache.put(numberCountryIso, info);
+        sSharedContactInfoCache.put(numberCountryIso, info);
         mCb.updateContactInfo(number, countryIso, info, callLogInfo);
         return updated;
     }
 
+    /**
+     * Returns the contact details looked up for the given number by any call log list, or null if
+     * there are none or they are no longer up to date.
+     */
+    public static ContactInfo getSharedContactInfo(String number, String countryIso) {
+        ExpirableCache.CachedValue<ContactInfo> cachedInfo = sSharedContactInfoCache
+                .getCachedValue(new NumberWithCountryIso(number, countryIso));
+        if (cachedInfo == null || cachedInfo.isExpired()) {
+            return null;
+        }
+        return cachedInfo.getValue();
+    }
+
+    /** Stores contact details looked up outside of the call log lists in the shared cache. */
+    public static void putSharedContactInfo(String number, String countryIso, ContactInfo info) {
+        sSharedContactInfoCache.put(new NumberWithCountryIso(number, countryIso), info);
+    }
+
     /*
      * Get the number from the Contacts, if available, since sometimes
      * the number provided by caller id may not be formatted properly
@@ -414,6 +443,13 @@ public class CallLogAdapterHelper implements ViewTreeObserver.OnPreDrawListener
                 && TextUtils.equals(callLogInfo.label, info.label);
     }
 
+    /**
+     * Returns the contact details cached for the given number, even if they are no longer up to
+     * date, without requesting a lookup. Returns null if nothing is cached for the number.
+     */
+    public ContactInfo getCachedContactInfo(String number, String countryIso) {
+        return mContactInfoCache.getPossiblyExpired(new NumberWithCountryIso(number, countryIso));
+    }
 
     public ContactInfo lookupContact(String number, int numberPresentation,
             String countryIso, ContactInfo cachedContactInfo) {
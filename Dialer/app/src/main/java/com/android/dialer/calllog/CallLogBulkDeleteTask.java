@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.ContentResolver;
+import android.content.DialogInterface;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.provider.CallLog.Calls;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * Deletes all the calls matching a selection from the call log, in the background.
+ * <p>
+ * Without a selection, all the calls are deleted with a single provider delete. Otherwise the
+ * lowest and highest ids of the matching calls are read first, and the calls are deleted in
+ * ranges of {@link #IDS_PER_DELETE} ids up to the highest one, each with a single provider delete
+ * whose selection is the given one restricted to the range. Progress is reported after each
+ * range, and the task can be cancelled between ranges. Calls logged after the task started are
+ * then not deleted.
+ */
+public class CallLogBulkDeleteTask extends AsyncTask<Void, Integer, Integer> {
+    private static final String TAG = "CallLogBulkDeleteTask";
+
+    /** The number of ids in the range of each provider delete, the most calls it can delete. */
+    @VisibleForTesting
+    static final int IDS_PER_DELETE = 500;
+
+    /** Listener of the progress of the deletion, called on the UI thread. */
+    public interface Listener {
+        /**
+         * Called after each range of calls has been deleted, with the number of ids covered so far
+         * out of the number of ids to cover. Not called when all the calls are deleted at once.
+         */
+        void onDeleteProgress(int progress, int max);
+
+        /** Called once the calls have been deleted, or the deletion has been cancelled. */
+        void onDeleteFinished(int deletedCount, boolean cancelled);
+    }
+
+    private final ContentResolver mResolver;
+    private final Uri mUri;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private Listener mListener;
+
+    /**
+     * @param uri The call log URI to delete from, {@link Calls#CONTENT_URI} or
+     *     {@link Calls#CONTENT_URI_WITH_VOICEMAIL}.
+     * @param selection The calls to delete, or null to delete all the calls.
+     */
+    public CallLogBulkDeleteTask(ContentResolver resolver, Uri uri, String selection,
+            String[] selectionArgs) {
+        mResolver = resolver;
+        mUri = uri;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts the deletion, showing its progress in a dialog which lets the user cancel it.
+     *
+     * @param onFinished Run once the dialog has been dismissed, if the activity is still alive.
+     */
+    public void executeWithProgressDialog(final Activity activity, CharSequence title,
+            final Runnable onFinished) {
+        final ProgressDialog progressDialog = new ProgressDialog(activity);
+        progressDialog.setTitle(title);
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        // The progress counts ids rather than calls, so only the percentage is shown.
+        progressDialog.setProgressNumberFormat(null);
+        // Indeterminate until the ids of the calls to delete are known.
+        progressDialog.setIndeterminate(true);
+        progressDialog.setCanceledOnTouchOutside(false);
+        progressDialog.setOwnerActivity(activity);
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE,
+                activity.getString(android.R.string.cancel),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        cancel(false);
+                    }
+                });
+        progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                cancel(false);
+            }
+        });
+        setListener(new Listener() {
+            @Override
+            public void onDeleteProgress(int progress, int max) {
+                progressDialog.setIndeterminate(false);
+                progressDialog.setMax(max);
+                progressDialog.setProgress(progress);
+            }
+
+            @Override
+            public void onDeleteFinished(int deletedCount, boolean cancelled) {
+                if (activity.isDestroyed() || activity.isFinishing()) {
+                    return;
+                }
+                if (progressDialog.isShowing()) {
+                    progressDialog.dismiss();
+                }
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            }
+        });
+        progressDialog.show();
+        execute();
+    }
+
+    /**
+     * Called on the background thread after all the calls have been deleted, unless the task was
+     * cancelled. Lets callers clear data derived from the deleted calls.
+     */
+    protected void onAllCallsDeleted() {
+    }
+
+    @Override
+    protected Integer doInBackground(Void... params) {
+        if (TextUtils.isEmpty(mSelection)) {
+            final int deletedCount = mResolver.delete(mUri, null, null);
+            if (!isCancelled()) {
+                onAllCallsDeleted();
+            }
+            return deletedCount;
+        }
+
+        final long firstId = getBoundaryId(Calls._ID + " ASC");
+        final long lastId = getBoundaryId(Calls._ID + " DESC");
+        if (firstId < 0 || lastId < firstId) {
+            return 0;
+        }
+        final int max = (int) Math.min(lastId - firstId + 1, Integer.MAX_VALUE);
+        publishProgress(0, max);
+
+        final String rangeSelection = getRangeSelection(mSelection);
+        int deletedCount = 0;
+        for (long lowerId = firstId - 1; lowerId < lastId; lowerId += IDS_PER_DELETE) {
+            if (isCancelled()) {
+                return deletedCount;
+            }
+            final long upperId = Math.min(lowerId + IDS_PER_DELETE, lastId);
+            deletedCount += mResolver.delete(mUri, rangeSelection,
+                    getRangeSelectionArgs(mSelectionArgs, lowerId, upperId));
+            publishProgress((int) Math.min(upperId - firstId + 1, max), max);
+        }
+        if (!isCancelled()) {
+            onAllCallsDeleted();
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Returns the id of the first call to delete in the given order of ids, or -1 if there is no
+     * call to delete or the calls could not be read.
+     */
+    private long getBoundaryId(String sortOrder) {
+        final Cursor cursor = mResolver.query(mUri, new String[] { Calls._ID }, mSelection,
+                mSelectionArgs, sortOrder + " LIMIT 1");
+        if (cursor == null) {
+            Log.w(TAG, "Could not read the calls to delete");
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Restricts the selection to the calls with an id in a range. */
+    @VisibleForTesting
+    static String getRangeSelection(String selection) {
+        final String range = Calls._ID + " > ? AND " + Calls._ID + " <= ?";
+        if (TextUtils.isEmpty(selection)) {
+            return range;
+        }
+        return "(" + selection + ") AND " + range;
+    }
+
+    @VisibleForTesting
+    static String[] getRangeSelectionArgs(String[] selectionArgs, long lowerId, long upperId) {
+        final int count = selectionArgs == null ? 0 : selectionArgs.length;
+        final String[] args = selectionArgs == null
+                ? new String[2] : Arrays.copyOf(selectionArgs, count + 2);
+        args[count] = Long.toString(lowerId);
+        args[count + 1] = Long.toString(upperId);
+        return args;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        if (mListener != null) {
+            mListener.onDeleteProgress(values[0], values[1]);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(Integer deletedCount) {
+        if (mListener != null) {
+            mListener.onDeleteFinished(deletedCount, false);
+        }
+    }
+
+    @Override
+    protected void onCancelled(Integer deletedCount) {
+        if (mListener != null) {
+            mListener.onDeleteFinished(deletedCount == null ? 0 : deletedCount, true);
+        }
+    }
+}
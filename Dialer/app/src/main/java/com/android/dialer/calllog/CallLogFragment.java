@@ -47,6 +47,7 @@ import com.android.dialer.R;
 import com.android.dialer.list.ListsFragment.HostInterface;
 import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.EmptyLoader;
+import com.android.dialer.voicemail.VoicemailPrefetcher;
 import com.android.dialer.voicemail.VoicemailStatusHelper;
 import com.android.dialer.voicemail.VoicemailStatusHelper.StatusMessage;
 import com.android.dialer.voicemail.VoicemailStatusHelperImpl;
@@ -135,7 +136,7 @@ public class CallLogFragment extends AnalyticsListFragment
 
     // Date limit (in millis since epoch) - when non-zero, only calls which occurred on or after
     // the date filter are included.  If zero, no date-based filtering occurs.
-    private long mDateLimit = 0;
+    protected long mDateLimit = 0;
 
     // Whether or not to show the Show call history footer view
     private boolean mHasFooterView = false;
@@ -418,8 +419,12 @@ public class CallLogFragment extends AnalyticsListFragment
     }
 
     protected void fetchCalls(long filterFromDate, long filterToDate, int subId) {
+        fetchCalls(mCallTypeFilter, filterFromDate, filterToDate, subId);
+    }
+
+    protected void fetchCalls(int callType, long filterFromDate, long filterToDate, int subId) {
         mCallLogQueryHandler.fetchCallsInDateRange(
-                mCallTypeFilter, filterFromDate > 0 ? filterFromDate : mDateLimit, filterToDate,
+                callType, filterFromDate > 0 ? filterFromDate : mDateLimit, filterToDate,
                 subId);
     }
 
@@ -432,7 +437,7 @@ public class CallLogFragment extends AnalyticsListFragment
         mCallLogQueryHandler.fetchVoicemailStatus();
     }
 
-    private void updateCallList(int filterType, long dateLimit) {
+    protected void updateCallList(int filterType, long dateLimit) {
         mCallLogQueryHandler.fetchCalls(filterType, dateLimit);
     }
 
@@ -482,6 +487,7 @@ public class CallLogFragment extends AnalyticsListFragment
             mAdapter.invalidateCache();
             startCallsQuery();
             startVoicemailStatusQuery();
+            VoicemailPrefetcher.prefetchNewestUnheardVoicemails(getActivity());
             updateOnEntry();
             mRefreshDataRequired = false;
         }
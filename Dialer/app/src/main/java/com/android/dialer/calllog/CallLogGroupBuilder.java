@@ -24,6 +24,7 @@ import android.text.format.Time;
 import com.android.common.widget.GroupingListAdapter;
 import com.android.contacts.common.util.DateUtils;
 import com.android.contacts.common.util.PhoneNumberHelper;
+import com.android.dialer.util.PerfStats;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -110,6 +111,15 @@ public class CallLogGroupBuilder {
             return;
         }
 
+        final long start = PerfStats.beginSection(PerfStats.CALL_LOG_GROUP_BUILD);
+        try {
+            doAddGroups(cursor, count);
+        } finally {
+            PerfStats.endSection(PerfStats.CALL_LOG_GROUP_BUILD, start);
+        }
+    }
+
+    private void doAddGroups(Cursor cursor, int count) {
         // Clear any previous day grouping information.
         mGroupCreator.clearDayGroups();
 
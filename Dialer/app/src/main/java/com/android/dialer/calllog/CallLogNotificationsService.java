@@ -21,6 +21,8 @@ import android.content.Intent;
 import android.net.Uri;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Provides operations for managing notifications.
  * <p>
@@ -58,6 +60,17 @@ public class CallLogNotificationsService extends IntentService {
 
     private CallLogQueryHandler mCallLogQueryHandler;
 
+    /**
+     * The number of {@link #ACTION_UPDATE_NOTIFICATIONS} intents which have been delivered to the
+     * service but not handled yet.
+     */
+    private final AtomicInteger mPendingUpdates = new AtomicInteger();
+    /**
+     * The most recent voicemail uri of an update which was skipped because another update was
+     * already queued behind it. Only accessed from the worker thread.
+     */
+    private Uri mSkippedVoicemailUri;
+
     public CallLogNotificationsService() {
         super("CallLogNotificationsService");
     }
@@ -68,6 +81,14 @@ public class CallLogNotificationsService extends IntentService {
         mCallLogQueryHandler = new CallLogQueryHandler(getContentResolver(), null /*listener*/);
     }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_UPDATE_NOTIFICATIONS.equals(intent.getAction())) {
+            mPendingUpdates.incrementAndGet();
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         if (intent == null) {
@@ -78,6 +99,17 @@ public class CallLogNotificationsService extends IntentService {
             mCallLogQueryHandler.markNewVoicemailsAsOld();
         } else if (ACTION_UPDATE_NOTIFICATIONS.equals(intent.getAction())) {
             Uri voicemailUri = (Uri) intent.getParcelableExtra(EXTRA_NEW_VOICEMAIL_URI);
+            if (voicemailUri == null) {
+                voicemailUri = mSkippedVoicemailUri;
+            }
+            if (mPendingUpdates.decrementAndGet() > 0) {
+                // Another update is already queued, e.g. because a burst of voicemails was
+                // delivered. It will query the same new calls, so let it do the work and only
+                // remember which voicemail should still be announced.
+                mSkippedVoicemailUri = voicemailUri;
+                return;
+            }
+            mSkippedVoicemailUri = null;
             DefaultVoicemailNotifier.getInstance(this).updateNotification(voicemailUri);
         } else {
             Log.d(TAG, "onHandleIntent: could not handle: " + intent);
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.provider.CallLog.Calls;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Splits a cursor over the call log by SIM slot and call type, so that the calls of a single slot
+ * or type can be shown without querying the call log again.
+ * <p>
+ * The rows of every combination of slot and type are found in a single pass over the cursor when
+ * the projections are built. {@link #getProjection} then only wraps the cursor, mapping the
+ * positions of the projection to the rows of the cursor. The projections do not close the cursor;
+ * it stays owned by the caller, and must be kept open as long as a projection of it is in use.
+ */
+public class CallLogProjections {
+    /**
+     * The call types which can be filtered on. Incoming, outgoing and missed IMS calls are counted
+     * as incoming, outgoing and missed calls. Calls of other types are only shown unfiltered.
+     */
+    private static final int[] CALL_TYPES = new int[] {
+        Calls.INCOMING_TYPE,
+        Calls.OUTGOING_TYPE,
+        Calls.MISSED_TYPE,
+        Calls.BLACKLIST_TYPE,
+        Calls.VOICEMAIL_TYPE,
+    };
+    /** Index of the projection over all call types, one past the indexes of {@link #CALL_TYPES}. */
+    private static final int TYPE_INDEX_ALL = CALL_TYPES.length;
+    private static final int TYPE_INDEX_COUNT = CALL_TYPES.length + 1;
+    /** Marks rows whose call type or slot is not one which can be filtered on. */
+    private static final byte INDEX_NONE = -1;
+
+    private final Cursor mCursor;
+    private final String[] mSlotAccountIds;
+    /**
+     * The positions of the rows of each projection in the cursor, indexed by
+     * {@code (slot + 1) * TYPE_INDEX_COUNT + typeIndex}, slot -1 being all slots.
+     */
+    private final int[][] mPositions;
+
+    /**
+     * Builds the projections of the given cursor, which must have the columns of
+     * {@link CallLogQuery#_PROJECTION}.
+     *
+     * @param slotAccountIds The phone account id of the calls made with each slot, or null for
+     *     slots with no subscription.
+     */
+    public CallLogProjections(Cursor cursor, String[] slotAccountIds) {
+        mCursor = cursor;
+        mSlotAccountIds = slotAccountIds;
+        mPositions = new int[(slotAccountIds.length + 1) * TYPE_INDEX_COUNT][];
+
+        // Finds the slot and type of every row and counts the rows of each projection first, so
+        // that the positions are stored in arrays of the exact size.
+        final int count = cursor.getCount();
+        final byte[] rowSlots = new byte[count];
+        final byte[] rowTypes = new byte[count];
+        final int[] sizes = new int[mPositions.length];
+        cursor.moveToPosition(-1);
+        for (int position = 0; cursor.moveToNext(); position++) {
+            rowSlots[position] = (byte) getSlot(cursor.getString(CallLogQuery.ACCOUNT_ID));
+            rowTypes[position] = (byte) getTypeIndex(cursor.getInt(CallLogQuery.CALL_TYPE));
+            forEachProjection(rowSlots[position], rowTypes[position], sizes, null, position);
+        }
+        for (int i = 0; i < mPositions.length; i++) {
+            mPositions[i] = new int[sizes[i]];
+        }
+        final int[] filled = new int[mPositions.length];
+        for (int position = 0; position < count; position++) {
+            forEachProjection(rowSlots[position], rowTypes[position], filled, mPositions,
+                    position);
+        }
+    }
+
+    /**
+     * Counts the row in each projection it belongs to, and stores its position there if the
+     * positions are given.
+     */
+    private static void forEachProjection(int slot, int typeIndex, int[] counts,
+            int[][] positions, int position) {
+        addToProjection(getIndex(-1, TYPE_INDEX_ALL), counts, positions, position);
+        if (typeIndex != INDEX_NONE) {
+            addToProjection(getIndex(-1, typeIndex), counts, positions, position);
+        }
+        if (slot != INDEX_NONE) {
+            addToProjection(getIndex(slot, TYPE_INDEX_ALL), counts, positions, position);
+            if (typeIndex != INDEX_NONE) {
+                addToProjection(getIndex(slot, typeIndex), counts, positions, position);
+            }
+        }
+    }
+
+    private static void addToProjection(int index, int[] counts, int[][] positions,
+            int position) {
+        if (positions != null) {
+            positions[index][counts[index]] = position;
+        }
+        counts[index]++;
+    }
+
+    private static int getIndex(int slot, int typeIndex) {
+        return (slot + 1) * TYPE_INDEX_COUNT + typeIndex;
+    }
+
+    private int getSlot(String accountId) {
+        if (TextUtils.isEmpty(accountId)) {
+            return INDEX_NONE;
+        }
+        for (int slot = 0; slot < mSlotAccountIds.length; slot++) {
+            if (accountId.equals(mSlotAccountIds[slot])) {
+                return slot;
+            }
+        }
+        return INDEX_NONE;
+    }
+
+    private static int getTypeIndex(int callType) {
+        switch (callType) {
+            case Calls.INCOMING_IMS_TYPE:
+                callType = Calls.INCOMING_TYPE;
+                break;
+            case Calls.OUTGOING_IMS_TYPE:
+                callType = Calls.OUTGOING_TYPE;
+                break;
+            case Calls.MISSED_IMS_TYPE:
+                callType = Calls.MISSED_TYPE;
+                break;
+        }
+        for (int i = 0; i < CALL_TYPES.length; i++) {
+            if (CALL_TYPES[i] == callType) {
+                return i;
+            }
+        }
+        return INDEX_NONE;
+    }
+
+    /**
+     * Returns a cursor over the calls of the given slot and type. Closing it does not close the
+     * cursor the projections were built from.
+     *
+     * @param slotId The slot, or {@link CallLogQueryHandler#CALL_SUB_ALL} for all slots. A slot
+     *     without a subscription shows the calls of all slots.
+     * @param callType The call type, or {@link CallLogQueryHandler#CALL_TYPE_ALL} for all types.
+     */
+    public Cursor getProjection(int slotId, int callType) {
+        int slot = slotId;
+        if (slot < 0 || slot >= mSlotAccountIds.length || mSlotAccountIds[slot] == null) {
+            slot = -1;
+        }
+        int typeIndex = TYPE_INDEX_ALL;
+        if (callType != CallLogQueryHandler.CALL_TYPE_ALL) {
+            typeIndex = getTypeIndex(callType);
+            if (typeIndex == INDEX_NONE) {
+                // Not a type which can be filtered on, so there are no calls of that type.
+                return new ProjectionCursor(mCursor, new int[0]);
+            }
+        }
+        return new ProjectionCursor(mCursor, mPositions[getIndex(slot, typeIndex)]);
+    }
+
+    /**
+     * Returns the phone account id of the calls made with each slot of the device, as stored in
+     * the call log, or null for the slots which have no subscription.
+     */
+    public static String[] getSlotAccountIds(Context context) {
+        final TelephonyManager telephonyManager =
+                (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        final String[] accountIds = new String[telephonyManager.getPhoneCount()];
+        for (int slot = 0; slot < accountIds.length; slot++) {
+            final int[] subId = SubscriptionManager.getSubId(slot);
+            if (subId != null && subId.length >= 1) {
+                accountIds[slot] = Long.toString(subId[0]);
+            }
+        }
+        return accountIds;
+    }
+
+    /** A cursor over the given rows of another cursor, which it does not close. */
+    @VisibleForTesting
+    static class ProjectionCursor extends CursorWrapper {
+        private final Cursor mCursor;
+        private final int[] mPositions;
+        private int mPosition = -1;
+
+        public ProjectionCursor(Cursor cursor, int[] positions) {
+            super(cursor);
+            mCursor = cursor;
+            mPositions = positions;
+        }
+
+        @Override
+        public int getCount() {
+            return mPositions.length;
+        }
+
+        @Override
+        public int getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            if (position >= mPositions.length) {
+                mPosition = mPositions.length;
+                return false;
+            }
+            if (position < 0) {
+                mPosition = -1;
+                return false;
+            }
+            mPosition = position;
+            return mCursor.moveToPosition(mPositions[position]);
+        }
+
+        @Override
+        public boolean move(int offset) {
+            return moveToPosition(mPosition + offset);
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            return moveToPosition(0);
+        }
+
+        @Override
+        public boolean moveToLast() {
+            return moveToPosition(mPositions.length - 1);
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return moveToPosition(mPosition + 1);
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            return moveToPosition(mPosition - 1);
+        }
+
+        @Override
+        public boolean isFirst() {
+            return mPositions.length != 0 && mPosition == 0;
+        }
+
+        @Override
+        public boolean isLast() {
+            return mPositions.length != 0 && mPosition == mPositions.length - 1;
+        }
+
+        @Override
+        public boolean isBeforeFirst() {
+            return mPositions.length == 0 || mPosition == -1;
+        }
+
+        @Override
+        public boolean isAfterLast() {
+            return mPositions.length == 0 || mPosition == mPositions.length;
+        }
+
+        @Override
+        public void close() {
+            // The wrapped cursor is shared with the other projections and closed by its owner.
+        }
+    }
+}
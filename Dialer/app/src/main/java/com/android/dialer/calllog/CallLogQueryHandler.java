@@ -169,11 +169,28 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
 
     private void fetchCalls(int token, int callType, boolean newOnly,
             long olderThan, long newerThan, int slotId) {
+        final List<String> selectionArgs = Lists.newArrayList();
+        final String selection = createCallsSelection(callType, newOnly, olderThan, newerThan,
+                slotId, selectionArgs);
+        final int limit = (mLogLimit == -1) ? NUM_LOGS_TO_DISPLAY : mLogLimit;
+        Uri uri = Calls.CONTENT_URI_WITH_VOICEMAIL.buildUpon()
+                .appendQueryParameter(Calls.LIMIT_PARAM_KEY, Integer.toString(limit))
+                .build();
+        startQuery(token, null, uri,
+                CallLogQuery._PROJECTION, selection, selectionArgs.toArray(EMPTY_STRING_ARRAY),
+                Calls.DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Returns the selection of the calls of the given type, slot and date range, adding its
+     * arguments to the given list, or null to select all the calls.
+     */
+    public static String createCallsSelection(int callType, boolean newOnly, long olderThan,
+            long newerThan, int slotId, List<String> selectionArgs) {
         // We need to check for NULL explicitly otherwise entries with where READ is NULL
         // may not match either the query or its negation.
         // We consider the calls that are not yet consumed (i.e. IS_READ = 0) as "new".
         StringBuilder where = new StringBuilder();
-        List<String> selectionArgs = Lists.newArrayList();
 
         if (newOnly) {
             where.append(Calls.NEW);
@@ -231,14 +248,7 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
             selectionArgs.add(Long.toString(olderThan));
         }
 
-        final int limit = (mLogLimit == -1) ? NUM_LOGS_TO_DISPLAY : mLogLimit;
-        final String selection = where.length() > 0 ? where.toString() : null;
-        Uri uri = Calls.CONTENT_URI_WITH_VOICEMAIL.buildUpon()
-                .appendQueryParameter(Calls.LIMIT_PARAM_KEY, Integer.toString(limit))
-                .build();
-        startQuery(token, null, uri,
-                CallLogQuery._PROJECTION, selection, selectionArgs.toArray(EMPTY_STRING_ARRAY),
-                Calls.DEFAULT_SORT_ORDER);
+        return where.length() > 0 ? where.toString() : null;
     }
 
 
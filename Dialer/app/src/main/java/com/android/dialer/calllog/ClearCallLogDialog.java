@@ -16,17 +16,14 @@
 
 package com.android.dialer.calllog;
 
-import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.FragmentManager;
-import android.app.ProgressDialog;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.CallLog.Calls;
 
@@ -55,37 +52,18 @@ public class ClearCallLogDialog extends DialogFragment {
         final OnClickListener okListener = new OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                final ProgressDialog progressDialog = ProgressDialog.show(getActivity(),
-                        getString(R.string.clearCallLogProgress_title),
-                        "", true, false);
-                progressDialog.setOwnerActivity(getActivity());
-                final AsyncTask<Void, Void, Void> task = new AsyncTask<Void, Void, Void>() {
+                final CallLogBulkDeleteTask task =
+                        new CallLogBulkDeleteTask(resolver, Calls.CONTENT_URI, null, null) {
                     @Override
-                    protected Void doInBackground(Void... params) {
-                        resolver.delete(Calls.CONTENT_URI, null, null);
+                    protected void onAllCallsDeleted() {
                         if (mCachedNumberLookupService != null) {
                             mCachedNumberLookupService.clearAllCacheEntries(context);
                         }
                         LookupCache.deleteCachedContacts(context);
-                        return null;
-                    }
-                    @Override
-                    protected void onPostExecute(Void result) {
-                        final Activity activity = progressDialog.getOwnerActivity();
-
-                        if (activity == null || activity.isDestroyed() || activity.isFinishing()) {
-                            return;
-                        }
-
-                        if (progressDialog != null && progressDialog.isShowing()) {
-                            progressDialog.dismiss();
-                        }
                     }
                 };
-                // TODO: Once we have the API, we should configure this ProgressDialog
-                // to only show up after a certain time (e.g. 150ms)
-                progressDialog.show();
-                task.execute();
+                task.executeWithProgressDialog(getActivity(),
+                        getString(R.string.clearCallLogProgress_title), null);
             }
         };
         return new AlertDialog.Builder(getActivity())
@@ -38,6 +38,7 @@ import com.android.dialer.lookup.LookupCache;
 import com.android.dialer.R;
 import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
+import com.android.dialer.util.PerfStats;
 import com.android.dialerbind.ObjectFactory;
 import com.android.internal.telephony.util.BlacklistUtils;
 
@@ -73,6 +74,15 @@ public class ContactInfoHelper {
      * @param countryIso the country associated with this number
      */
     public ContactInfo lookupNumber(String number, String countryIso) {
+        final long start = PerfStats.beginSection(PerfStats.CALLER_ID_LOOKUP);
+        try {
+            return doLookupNumber(number, countryIso);
+        } finally {
+            PerfStats.endSection(PerfStats.CALLER_ID_LOOKUP, start);
+        }
+    }
+
+    private ContactInfo doLookupNumber(String number, String countryIso) {
         final ContactInfo info;
 
         // Determine the contact info.
@@ -110,8 +120,8 @@ public class ContactInfoHelper {
                 updatedInfo = new ContactInfo();
                 updatedInfo.number = number;
                 updatedInfo.formattedNumber = formatPhoneNumber(number, null, countryIso);
-                updatedInfo.normalizedNumber = PhoneNumberUtils.formatNumberToE164(
-                        number, countryIso);
+                updatedInfo.normalizedNumber = PhoneNumberFormatCache.getInstance(mContext)
+                        .get(number, countryIso).e164Number;
                 updatedInfo.lookupUri = createTemporaryContactUri(updatedInfo.formattedNumber);
             } else {
                 updatedInfo = info;
@@ -245,7 +255,8 @@ public class ContactInfoHelper {
         if (!TextUtils.isEmpty(countryIso)) {
             // Normalize the number: this is needed because the PhoneLookup query below does not
             // accept a country code as an input.
-            String numberE164 = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+            String numberE164 = PhoneNumberFormatCache.getInstance(mContext)
+                    .get(number, countryIso).e164Number;
             if (!TextUtils.isEmpty(numberE164)) {
                 // Only use it if the number could be formatted to E164.
                 contactNumber = numberE164;
@@ -292,6 +303,11 @@ public class ContactInfoHelper {
         if (TextUtils.isEmpty(countryIso)) {
             countryIso = mCurrentCountryIso;
         }
+        if (normalizedNumber == null) {
+            // The same number is formatted again for every screen showing it, so share the result.
+            return PhoneNumberFormatCache.getInstance(mContext)
+                    .get(number, countryIso).formattedNumber;
+        }
         return PhoneNumberUtils.formatNumber(number, normalizedNumber, countryIso);
     }
 
@@ -27,16 +27,24 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
 import android.provider.CallLog.Calls;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.PhoneLookup;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.common.io.MoreCloseables;
+import com.android.contacts.common.GeoUtil;
 import com.android.dialer.CallDetailActivity;
 import com.android.dialer.R;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of {@link VoicemailNotifier} that shows a notification in the
@@ -59,6 +67,11 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
     private final NameLookupQuery mNameLookupQuery;
     private final PhoneNumberDisplayHelper mPhoneNumberHelper;
 
+    /** The new calls shown by the current notification, or null if there is none. */
+    private NewCall[] mNotifiedCalls;
+    /** The names resolved for the numbers of {@link #mNotifiedCalls}, keyed by number. */
+    private final Map<String, String> mCachedNames = Maps.newHashMap();
+
     /** Returns the singleton instance of the {@link DefaultVoicemailNotifier}. */
     public static synchronized DefaultVoicemailNotifier getInstance(Context context) {
         if (sInstance == null) {
@@ -67,7 +80,7 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
             ContentResolver contentResolver = context.getContentResolver();
             sInstance = new DefaultVoicemailNotifier(context, notificationManager,
                     createNewCallsQuery(contentResolver),
-                    createNameLookupQuery(contentResolver),
+                    createNameLookupQuery(context),
                     createPhoneNumberHelper(context));
         }
         return sInstance;
@@ -85,7 +98,7 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
 
     /** Updates the notification and notifies of the call with the given URI. */
     @Override
-    public void updateNotification(Uri newCallUri) {
+    public synchronized void updateNotification(Uri newCallUri) {
         // Lookup the list of new voicemails to include in the notification.
         // TODO: Move this into a service, to avoid holding the receiver up.
         final NewCall[] newCalls = mNewCallsQuery.query();
@@ -101,6 +114,12 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
             return;
         }
 
+        if (newCallUri == null && isSameAsNotified(newCalls)) {
+            // The notification already shows exactly these voicemails, and there is no new one to
+            // alert the user about.
+            return;
+        }
+
         Resources resources = mContext.getResources();
 
         // This represents a list of names to include in the notification.
@@ -108,27 +127,16 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
 
         // Maps each number into a name: if a number is in the map, it has already left a more
         // recent voicemail.
-        final Map<String, String> names = Maps.newHashMap();
+        final Map<String, String> names = resolveNames(newCalls);
+        final Set<String> listedNumbers = Sets.newHashSet();
 
         // Determine the call corresponding to the new voicemail we have to notify about.
         NewCall callToNotify = null;
 
         // Iterate over the new voicemails to determine all the information above.
         for (NewCall newCall : newCalls) {
-            // Check if we already know the name associated with this number.
-            String name = names.get(newCall.number);
-            if (name == null) {
-                name = mPhoneNumberHelper.getDisplayName(newCall.accountId, newCall.number,
-                        newCall.numberPresentation).toString();
-                // If we cannot lookup the contact, use the number instead.
-                if (TextUtils.isEmpty(name)) {
-                    // Look it up in the database.
-                    name = mNameLookupQuery.query(newCall.number);
-                    if (TextUtils.isEmpty(name)) {
-                        name = newCall.number;
-                    }
-                }
-                names.put(newCall.number, name);
+            if (listedNumbers.add(newCall.number)) {
+                final String name = names.get(newCall.number);
                 // This is a new caller. Add it to the back of the list of callers.
                 if (TextUtils.isEmpty(callers)) {
                     callers = name;
@@ -194,6 +202,71 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
         }
 
         mNotificationManager.notify(NOTIFICATION_TAG, NOTIFICATION_ID, notificationBuilder.build());
+        mNotifiedCalls = newCalls;
+    }
+
+    /**
+     * Returns true if the given new calls are the ones shown by the current notification, in the
+     * same order.
+     */
+    private boolean isSameAsNotified(NewCall[] newCalls) {
+        if (mNotifiedCalls == null || mNotifiedCalls.length != newCalls.length) {
+            return false;
+        }
+        for (int i = 0; i < newCalls.length; i++) {
+            if (!newCalls[i].callsUri.equals(mNotifiedCalls[i].callsUri)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name to display for the number of each of the given calls.
+     * <p>
+     * Names resolved by a previous update are reused as long as the number still has a new
+     * voicemail, and all numbers which are not known yet are looked up together. A number whose
+     * contact is not found is looked up again by the next update, in case it has been saved since.
+     */
+    private Map<String, String> resolveNames(NewCall[] newCalls) {
+        final Map<String, String> names = Maps.newHashMap();
+        final Set<String> numbersToLookup = Sets.newHashSet();
+        for (NewCall newCall : newCalls) {
+            if (names.containsKey(newCall.number)) {
+                continue;
+            }
+            String name = mCachedNames.get(newCall.number);
+            if (name == null) {
+                name = mPhoneNumberHelper.getDisplayName(newCall.accountId, newCall.number,
+                        newCall.numberPresentation).toString();
+            }
+            if (TextUtils.isEmpty(name)) {
+                // We cannot lookup the contact from the number alone, look it up in the database.
+                numbersToLookup.add(newCall.number);
+            }
+            names.put(newCall.number, name);
+        }
+
+        final Set<String> unresolvedNumbers = Sets.newHashSet();
+        if (!numbersToLookup.isEmpty()) {
+            final Map<String, String> contactNames = mNameLookupQuery.query(numbersToLookup);
+            for (String number : numbersToLookup) {
+                final String name = contactNames.get(number);
+                if (TextUtils.isEmpty(name)) {
+                    // If we cannot lookup the contact, use the number instead.
+                    names.put(number, number);
+                    unresolvedNumbers.add(number);
+                } else {
+                    names.put(number, name);
+                }
+            }
+        }
+
+        // Only keep the names of the numbers which still have new voicemails.
+        mCachedNames.clear();
+        mCachedNames.putAll(names);
+        mCachedNames.keySet().removeAll(unresolvedNumbers);
+        return names;
     }
 
     /** Creates a pending intent that marks all new voicemails as old. */
@@ -204,8 +277,10 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
     }
 
     @Override
-    public void clearNotification() {
+    public synchronized void clearNotification() {
         mNotificationManager.cancel(NOTIFICATION_TAG, NOTIFICATION_ID);
+        mNotifiedCalls = null;
+        mCachedNames.clear();
     }
 
     /** Information about a new voicemail. */
@@ -292,46 +367,133 @@ public class DefaultVoicemailNotifier implements VoicemailNotifier {
         }
     }
 
-    /** Allows determining the name associated with a given phone number. */
+    /** Allows determining the names associated with phone numbers. */
     public interface NameLookupQuery {
         /**
-         * Returns the name associated with the given number in the contacts database, or null if
-         * the number does not correspond to any of the contacts.
+         * Returns the names associated with the given numbers in the contacts database, keyed by
+         * number. Numbers that do not correspond to any of the contacts are not included.
          * <p>
-         * If there are multiple contacts with the same phone number, it will return the name of one
-         * of the matching contacts.
+         * If there are multiple contacts with the same phone number, the name of one of the
+         * matching contacts is returned.
          */
-        public String query(String number);
+        public Map<String, String> query(Collection<String> numbers);
     }
 
     /** Create a new instance of {@link NameLookupQuery}. */
-    public static NameLookupQuery createNameLookupQuery(ContentResolver contentResolver) {
-        return new DefaultNameLookupQuery(contentResolver);
+    public static NameLookupQuery createNameLookupQuery(Context context) {
+        return new DefaultNameLookupQuery(context.getContentResolver(),
+                GeoUtil.getCurrentCountryIso(context));
     }
 
     /**
-     * Default implementation of {@link NameLookupQuery} that looks up the name of a contact in the
+     * Default implementation of {@link NameLookupQuery} that looks up the names of contacts in the
      * contacts database.
+     * <p>
+     * All numbers which can be normalized are matched by a single query on the normalized number
+     * of the phone data rows. The numbers which this does not match, because they cannot be
+     * normalized (e.g. short codes) or because their contact has another normalized number, fall
+     * back to a {@link PhoneLookup} each, which matches numbers loosely.
      */
     private static final class DefaultNameLookupQuery implements NameLookupQuery {
-        private static final String[] PROJECTION = { PhoneLookup.DISPLAY_NAME };
-        private static final int DISPLAY_NAME_COLUMN_INDEX = 0;
+        private static final String[] PHONE_LOOKUP_PROJECTION = { PhoneLookup.DISPLAY_NAME };
+        private static final int PHONE_LOOKUP_DISPLAY_NAME_COLUMN_INDEX = 0;
+
+        private static final String[] PHONE_PROJECTION = {
+            Phone.NORMALIZED_NUMBER, Phone.DISPLAY_NAME };
+        private static final int PHONE_NORMALIZED_NUMBER_COLUMN_INDEX = 0;
+        private static final int PHONE_DISPLAY_NAME_COLUMN_INDEX = 1;
 
         private final ContentResolver mContentResolver;
+        private final String mCountryIso;
 
-        private DefaultNameLookupQuery(ContentResolver contentResolver) {
+        private DefaultNameLookupQuery(ContentResolver contentResolver, String countryIso) {
             mContentResolver = contentResolver;
+            mCountryIso = countryIso;
         }
 
         @Override
-        public String query(String number) {
+        public Map<String, String> query(Collection<String> numbers) {
+            final Map<String, String> names = Maps.newHashMap();
+            // Maps each normalized number to the numbers it was computed from.
+            final Map<String, List<String>> numbersByNormalizedNumber = Maps.newHashMap();
+            for (String number : numbers) {
+                final String normalizedNumber =
+                        PhoneNumberUtils.formatNumberToE164(number, mCountryIso);
+                if (TextUtils.isEmpty(normalizedNumber)) {
+                    continue;
+                }
+                List<String> matching = numbersByNormalizedNumber.get(normalizedNumber);
+                if (matching == null) {
+                    matching = Lists.newArrayList();
+                    numbersByNormalizedNumber.put(normalizedNumber, matching);
+                }
+                matching.add(number);
+            }
+
+            if (!numbersByNormalizedNumber.isEmpty()) {
+                queryNormalizedNumbers(numbersByNormalizedNumber, names);
+            }
+
+            for (String number : numbers) {
+                if (!names.containsKey(number)) {
+                    final String name = queryPhoneLookup(number);
+                    if (!TextUtils.isEmpty(name)) {
+                        names.put(number, name);
+                    }
+                }
+            }
+            return names;
+        }
+
+        /** Adds the names of the contacts whose normalized number is one of the given ones. */
+        private void queryNormalizedNumbers(Map<String, List<String>> numbersByNormalizedNumber,
+                Map<String, String> names) {
+            final StringBuilder selection = new StringBuilder(Phone.NORMALIZED_NUMBER)
+                    .append(" IN (");
+            final String[] selectionArgs = new String[numbersByNormalizedNumber.size()];
+            int i = 0;
+            for (String normalizedNumber : numbersByNormalizedNumber.keySet()) {
+                selection.append(i == 0 ? "?" : ",?");
+                selectionArgs[i++] = normalizedNumber;
+            }
+            selection.append(")");
+
+            Cursor cursor = null;
+            try {
+                cursor = mContentResolver.query(Phone.CONTENT_URI, PHONE_PROJECTION,
+                        selection.toString(), selectionArgs, null);
+                if (cursor == null) {
+                    return;
+                }
+                while (cursor.moveToNext()) {
+                    final List<String> matching = numbersByNormalizedNumber.get(
+                            cursor.getString(PHONE_NORMALIZED_NUMBER_COLUMN_INDEX));
+                    final String name = cursor.getString(PHONE_DISPLAY_NAME_COLUMN_INDEX);
+                    if (matching == null || TextUtils.isEmpty(name)) {
+                        continue;
+                    }
+                    for (String number : matching) {
+                        if (!names.containsKey(number)) {
+                            names.put(number, name);
+                        }
+                    }
+                }
+            } finally {
+                MoreCloseables.closeQuietly(cursor);
+            }
+        }
+
+        private String queryPhoneLookup(String number) {
+            if (TextUtils.isEmpty(number)) {
+                return null;
+            }
             Cursor cursor = null;
             try {
                 cursor = mContentResolver.query(
                         Uri.withAppendedPath(PhoneLookup.CONTENT_FILTER_URI, Uri.encode(number)),
-                        PROJECTION, null, null, null);
+                        PHONE_LOOKUP_PROJECTION, null, null, null);
                 if (cursor == null || !cursor.moveToFirst()) return null;
-                return cursor.getString(DISPLAY_NAME_COLUMN_INDEX);
+                return cursor.getString(PHONE_LOOKUP_DISPLAY_NAME_COLUMN_INDEX);
             } finally {
                 if (cursor != null) {
                     cursor.close();
@@ -30,7 +30,9 @@
 package com.android.dialer.calllog;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -56,6 +58,7 @@ import com.android.dialer.R;
 import com.android.dialer.voicemail.VoicemailStatusHelperImpl;
 import com.android.dialer.widget.DoubleDatePickerDialog;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 
 import java.util.List;
 
@@ -82,6 +85,13 @@ public class MSimCallLogFragment extends CallLogFragment
     // Default to all slots.
     private int mCallSubFilter = CallLogQueryHandler.CALL_SUB_ALL;
 
+    /**
+     * The calls of all slots and types, loaded once for the date filter. Switching the slot or
+     * type filter shows a projection of these calls instead of querying the call log again.
+     */
+    private Cursor mCallsCursor;
+    private CallLogProjections mCallLogProjections;
+
     private OnItemSelectedListener mSubSelectedListener = new OnItemSelectedListener() {
 
         @Override
@@ -90,7 +100,7 @@ public class MSimCallLogFragment extends CallLogFragment
             int sub = position - 1;
             mCallSubFilter = sub;
             setSelectedSub(sub);
-            fetchCalls();
+            showFilteredCalls();
         }
 
         @Override
@@ -106,7 +116,7 @@ public class MSimCallLogFragment extends CallLogFragment
         public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
             Log.i(TAG, "Status selected, position: " + position);
             mCallTypeFilter = ((SpinnerContent)parent.getItemAtPosition(position)).value;
-            fetchCalls();
+            showFilteredCalls();
         }
 
         @Override
@@ -149,7 +159,27 @@ public class MSimCallLogFragment extends CallLogFragment
 
     @Override
     public void fetchCalls() {
-        fetchCalls(mFilterFrom, mFilterTo, mCallSubFilter);
+        // The slot and type filters are applied in memory, see showFilteredCalls().
+        fetchCalls(CallLogQueryHandler.CALL_TYPE_ALL, mFilterFrom, mFilterTo,
+                CallLogQueryHandler.CALL_SUB_ALL);
+    }
+
+    /**
+     * Shows the calls of the selected slot and type, from the calls which have already been
+     * loaded. Loads them if they have not been yet.
+     */
+    private void showFilteredCalls() {
+        if (mCallLogProjections == null) {
+            fetchCalls();
+            return;
+        }
+        super.onCallsFetched(mCallLogProjections.getProjection(mCallSubFilter, mCallTypeFilter));
+    }
+
+    @Override
+    protected void updateCallList(int filterType, long dateLimit) {
+        // Loads the calls of all types, so that the projections for every type can be built.
+        fetchCalls();
     }
 
     @Override
@@ -225,6 +255,15 @@ public class MSimCallLogFragment extends CallLogFragment
         resetItem.setVisible(mFilterFrom != -1);
     }
 
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        final MenuItem deleteItem = menu.findItem(R.id.delete_filtered_calls);
+        if (deleteItem != null) {
+            deleteItem.setVisible(mAdapter != null && !mAdapter.isEmpty());
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -241,13 +280,62 @@ public class MSimCallLogFragment extends CallLogFragment
                 fetchCalls();
                 getActivity().invalidateOptionsMenu();
                 return true;
+            case R.id.delete_filtered_calls:
+                new AlertDialog.Builder(getActivity())
+                        .setTitle(R.string.delete_filtered_calls_confirmation_title)
+                        .setIconAttribute(android.R.attr.alertDialogIcon)
+                        .setMessage(R.string.delete_filtered_calls_confirmation)
+                        .setNegativeButton(android.R.string.cancel, null)
+                        .setPositiveButton(android.R.string.ok,
+                                new DialogInterface.OnClickListener() {
+                                    @Override
+                                    public void onClick(DialogInterface dialog, int which) {
+                                        deleteFilteredCalls();
+                                    }
+                                })
+                        .setCancelable(true)
+                        .show();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Deletes all the calls matching the slot, type and date filters, with the same selection
+     * the calls were queried with, rather than deleting the calls shown one by one.
+     */
+    private void deleteFilteredCalls() {
+        final List<String> selectionArgs = Lists.newArrayList();
+        final String selection = CallLogQueryHandler.createCallsSelection(mCallTypeFilter,
+                false /* newOnly */, mFilterTo, mFilterFrom > 0 ? mFilterFrom : mDateLimit,
+                mCallSubFilter, selectionArgs);
+        final CallLogBulkDeleteTask task = new CallLogBulkDeleteTask(
+                getActivity().getContentResolver(), Calls.CONTENT_URI_WITH_VOICEMAIL, selection,
+                selectionArgs.toArray(new String[selectionArgs.size()]));
+        task.executeWithProgressDialog(getActivity(),
+                getString(R.string.delete_filtered_calls_progress_title), new Runnable() {
+                    @Override
+                    public void run() {
+                        fetchCalls();
+                    }
+                });
+    }
+
     @Override
     public boolean onCallsFetched(Cursor cursor) {
-        boolean result = super.onCallsFetched(cursor);
+        if (getActivity() == null || getActivity().isFinishing()) {
+            // Return false; we did not take ownership of the cursor
+            return false;
+        }
+        final Cursor previousCursor = mCallsCursor;
+        mCallsCursor = cursor;
+        mCallLogProjections = new CallLogProjections(cursor,
+                CallLogProjections.getSlotAccountIds(getActivity()));
+        showFilteredCalls();
+        // The adapter has been moved off the projections of the previous calls.
+        if (previousCursor != null) {
+            previousCursor.close();
+        }
 
         if (mDateFilterView != null) {
             if (mFilterFrom == -1) {
@@ -258,7 +346,19 @@ public class MSimCallLogFragment extends CallLogFragment
                 mDateFilterView.setVisibility(View.VISIBLE);
             }
         }
-        return result;
+        // The projections shown by the adapter do not close the cursor, so it is closed here once
+        // it has been replaced, or when the fragment is destroyed.
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mCallLogProjections = null;
+        if (mCallsCursor != null) {
+            mCallsCursor.close();
+            mCallsCursor = null;
+        }
     }
 
     @Override
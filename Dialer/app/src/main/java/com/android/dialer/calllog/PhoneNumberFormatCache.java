@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.calllog;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.android.contacts.common.GeoUtil;
+import com.android.contacts.common.util.PhoneNumberHelper;
+import com.android.dialer.calllog.CallLogAdapterHelper.NumberWithCountryIso;
+import com.android.dialer.util.AsyncTaskExecutor;
+import com.android.dialer.util.AsyncTaskExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Caches the formatted number, the E.164 number and the geocoded location of phone numbers for the
+ * whole process, keyed by number and country, so that the call log, the call details and the call
+ * stats share the cost of formatting a number with libphonenumber.
+ * <p>
+ * {@link #get} formats a number which is not cached yet, and must only be called from a
+ * background thread. The geocoded location is only looked up by {@link #getGeocoded}, since most
+ * callers only need the E.164 form. The UI thread reads the cache with {@link #getCached}, and
+ * fills it ahead of binding with {@link #prefetch}, which formats and geocodes the numbers of a
+ * page of rows in a single background task.
+ */
+public class PhoneNumberFormatCache {
+    /** The number of numbers to keep; entries are a few short strings each. */
+    private static final int CACHE_SIZE = 500;
+
+    /** Identifiers of the tasks submitted to the {@link AsyncTaskExecutor}. */
+    public enum Tasks {
+        FORMAT_NUMBERS,
+    }
+
+    /** The formatted forms of a number. The fields are null if the number could not be parsed. */
+    public static final class FormattedNumber {
+        public final String formattedNumber;
+        public final String e164Number;
+        private volatile String mGeocode;
+        /** Whether {@link #mGeocode} has been looked up. */
+        private volatile boolean mHasGeocode;
+
+        FormattedNumber(String formattedNumber, String e164Number) {
+            this.formattedNumber = formattedNumber;
+            this.e164Number = e164Number;
+        }
+
+        FormattedNumber(String formattedNumber, String e164Number, String geocode) {
+            this(formattedNumber, e164Number);
+            setGeocode(geocode);
+        }
+
+        /**
+         * Returns the geocoded location, or null if it is not known or has not been looked up by
+         * {@link PhoneNumberFormatCache#getGeocoded} yet.
+         */
+        public String getGeocode() {
+            return mGeocode;
+        }
+
+        boolean hasGeocode() {
+            return mHasGeocode;
+        }
+
+        private void setGeocode(String geocode) {
+            mGeocode = geocode;
+            mHasGeocode = true;
+        }
+    }
+
+    private static PhoneNumberFormatCache sInstance;
+
+    private final Context mContext;
+    private final String mCurrentCountryIso;
+    private final LruCache<NumberWithCountryIso, FormattedNumber> mCache =
+            new LruCache<NumberWithCountryIso, FormattedNumber>(CACHE_SIZE);
+    /** The numbers being formatted by a prefetch. Only accessed on the UI thread. */
+    private final HashSet<NumberWithCountryIso> mPendingNumbers = Sets.newHashSet();
+    private AsyncTaskExecutor mAsyncTaskExecutor;
+
+    public static synchronized PhoneNumberFormatCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context applicationContext = context.getApplicationContext();
+            sInstance = new PhoneNumberFormatCache(applicationContext,
+                    GeoUtil.getCurrentCountryIso(applicationContext));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PhoneNumberFormatCache(Context context, String currentCountryIso) {
+        mContext = context;
+        mCurrentCountryIso = currentCountryIso;
+    }
+
+    /** Returns the formatted forms of the number if they are cached, null otherwise. */
+    public FormattedNumber getCached(String number, String countryIso) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        return mCache.get(new NumberWithCountryIso(number, countryIso));
+    }
+
+    /**
+     * Returns the formatted forms of the number, formatting it if it is not cached yet. Must not be
+     * called on the UI thread.
+     */
+    public FormattedNumber get(String number, String countryIso) {
+        if (TextUtils.isEmpty(number)) {
+            return new FormattedNumber(null, null, null);
+        }
+        final NumberWithCountryIso key = new NumberWithCountryIso(number, countryIso);
+        FormattedNumber formatted = mCache.get(key);
+        if (formatted == null) {
+            formatted = format(number, countryIso);
+            mCache.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * Same as {@link #get}, but also looks up the geocoded location of the number if it has not
+     * been looked up yet. Must not be called on the UI thread.
+     */
+    public FormattedNumber getGeocoded(String number, String countryIso) {
+        final FormattedNumber formatted = get(number, countryIso);
+        if (!formatted.hasGeocode()) {
+            formatted.setGeocode(GeoUtil.getGeocodedLocationFor(mContext, number));
+        }
+        return formatted;
+    }
+
+    /**
+     * Formats and geocodes the numbers which are not cached yet in a single background task. Must
+     * be called on the UI thread.
+     */
+    public void prefetch(List<NumberWithCountryIso> numbers) {
+        final ArrayList<NumberWithCountryIso> missing = Lists.newArrayList();
+        for (NumberWithCountryIso number : numbers) {
+            if (TextUtils.isEmpty(number.number)) {
+                continue;
+            }
+            final FormattedNumber cached = mCache.get(number);
+            if ((cached == null || !cached.hasGeocode()) && mPendingNumbers.add(number)) {
+                missing.add(number);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        if (mAsyncTaskExecutor == null) {
+            mAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+        }
+        mAsyncTaskExecutor.submit(Tasks.FORMAT_NUMBERS, new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                for (NumberWithCountryIso number : missing) {
+                    getGeocoded(number.number, number.countryIso);
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                mPendingNumbers.removeAll(missing);
+            }
+        });
+    }
+
+    private FormattedNumber format(String number, String countryIso) {
+        // SIP addresses are shown as they are, and have neither an E.164 form nor a location.
+        if (PhoneNumberHelper.isUriNumber(number)) {
+            return new FormattedNumber(number, null, null);
+        }
+        if (TextUtils.isEmpty(countryIso)) {
+            countryIso = mCurrentCountryIso;
+        }
+        final String e164Number = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+        final String formattedNumber = PhoneNumberUtils.formatNumber(number, null, countryIso);
+        return new FormattedNumber(formattedNumber, e164Number);
+    }
+}
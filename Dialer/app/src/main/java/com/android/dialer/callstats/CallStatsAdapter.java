@@ -37,6 +37,7 @@ import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.calllog.PhoneNumberDisplayHelper;
 import com.android.dialer.calllog.PhoneNumberUtilsWrapper;
+import com.android.dialer.util.DialerPhotoLoader;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -78,7 +79,7 @@ class CallStatsAdapter extends ArrayAdapter<CallStatsDetails>
     private long mFilterTo;
     private boolean mSortByDuration;
 
-    private final ContactPhotoManager mContactPhotoManager;
+    private final DialerPhotoLoader mPhotoLoader;
     private PhoneNumberDisplayHelper mPhoneNumberHelper;
 
     private final Comparator<CallStatsDetails> mDurationComparator = new Comparator<CallStatsDetails>() {
@@ -121,7 +122,7 @@ class CallStatsAdapter extends ArrayAdapter<CallStatsDetails>
 
         mAdapterHelper = new CallLogAdapterHelper(mContext, this,
                 contactInfoHelper, mPhoneNumberHelper);
-        mContactPhotoManager = ContactPhotoManager.getInstance(mContext);
+        mPhotoLoader = DialerPhotoLoader.getInstance(mContext);
         mCallStatsDetailHelper = new CallStatsDetailHelper(resources,
                 new PhoneNumberUtilsWrapper());
     }
@@ -247,7 +248,7 @@ class CallStatsAdapter extends ArrayAdapter<CallStatsDetails>
                 : ContactInfoHelper.getLookupKeyFromUri(contactUri);
         DefaultImageRequest request = new DefaultImageRequest(displayName, lookupKey,
                 ContactPhotoManager.TYPE_DEFAULT, true /* isCircular */);
-        mContactPhotoManager.loadThumbnail(views.quickContactView, photoId, null,
+        mPhotoLoader.loadThumbnail(views.quickContactView, photoId, null,
                 false /* darkTheme */, true /* isCircular */, request);
     }
 
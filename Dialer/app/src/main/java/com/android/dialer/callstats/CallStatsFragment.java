@@ -44,6 +44,7 @@ import android.widget.TextView;
 import com.android.dialer.R;
 import com.android.dialer.calllog.CallLogQueryHandler;
 import com.android.dialer.calllog.ContactInfo;
+import com.android.dialer.calllog.PhoneNumberFormatCache;
 import com.android.dialer.calllog.SpinnerContent;
 import com.android.dialer.widget.DoubleDatePickerDialog;
 
@@ -138,7 +139,8 @@ public class CallStatsFragment extends ListFragment implements
         super.onCreate(state);
 
         final ContentResolver cr = getActivity().getContentResolver();
-        mCallStatsQueryHandler = new CallStatsQueryHandler(cr, this);
+        mCallStatsQueryHandler = new CallStatsQueryHandler(cr, this,
+                PhoneNumberFormatCache.getInstance(getActivity()));
         cr.registerContentObserver(CallLog.CONTENT_URI, true, mObserver);
         cr.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, mObserver);
 
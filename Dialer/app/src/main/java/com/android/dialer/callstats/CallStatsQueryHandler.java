@@ -29,11 +29,13 @@ import android.os.Looper;
 import android.os.Message;
 import android.provider.CallLog.Calls;
 import android.telephony.SubscriptionManager;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.util.UriUtils;
 import com.android.dialer.calllog.ContactInfo;
+import com.android.dialer.calllog.PhoneNumberFormatCache;
 import com.google.common.collect.Lists;
 
 import java.lang.ref.WeakReference;
@@ -60,6 +62,7 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
     private static final String TAG = "CallStatsQueryHandler";
 
     private final WeakReference<Listener> mListener;
+    private final PhoneNumberFormatCache mFormatCache;
     private Handler mWorkerThreadHandler;
 
     /**
@@ -102,9 +105,11 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
         return mWorkerThreadHandler;
     }
 
-    public CallStatsQueryHandler(ContentResolver contentResolver, Listener listener) {
+    public CallStatsQueryHandler(ContentResolver contentResolver, Listener listener,
+            PhoneNumberFormatCache formatCache) {
         super(contentResolver);
         mListener = new WeakReference<Listener>(listener);
+        mFormatCache = formatCache;
     }
 
     public void fetchCalls(long from, long to, int slotId) {
@@ -183,8 +188,22 @@ public class CallStatsQueryHandler extends AsyncQueryHandler {
                 final int numberPresentation = cursor.getInt(CallStatsQuery.NUMBER_PRESENTATION);
                 final int accountId = cursor.getInt(CallStatsQuery.PHONE_ACCOUNT_ID);
                 final String countryIso = cursor.getString(CallStatsQuery.COUNTRY_ISO);
-                final String geocode = cursor.getString(CallStatsQuery.GEOCODED_LOCATION);
+                String geocode = cursor.getString(CallStatsQuery.GEOCODED_LOCATION);
                 final ContactInfo info = getContactInfoFromCallStats(cursor);
+                if (TextUtils.isEmpty(info.formattedNumber) || TextUtils.isEmpty(geocode)) {
+                    // Calls whose contact info has not been cached in the call log yet. The
+                    // numbers are formatted here, on the worker thread, rather than on bind.
+                    final PhoneNumberFormatCache.FormattedNumber formatted =
+                            TextUtils.isEmpty(geocode)
+                            ? mFormatCache.getGeocoded(number, countryIso)
+                            : mFormatCache.get(number, countryIso);
+                    if (TextUtils.isEmpty(info.formattedNumber)) {
+                        info.formattedNumber = formatted.formattedNumber;
+                    }
+                    if (TextUtils.isEmpty(geocode)) {
+                        geocode = formatted.getGeocode();
+                    }
+                }
 
                 pending = new CallStatsDetails(number, accountId, numberPresentation,
                         info, countryIso, geocode, date);
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.database;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.provider.CallLog.Calls;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.dialer.dialpad.SmartDialNameMatcher;
+import com.android.dialer.dialpad.SmartDialPrefix;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory index of the numbers in the call log which do not belong to a contact. Used by
+ * {@link DialerDatabaseHelper#getLooseMatches} to suggest numbers the user recently called or was
+ * called by, next to the contacts matching the dialed digits.
+ * <p>
+ * The index holds one entry per distinct number, with the time the number was last used and how
+ * many calls were made to or received from it. It is built from the newest calls by
+ * {@link #rebuild(ContentResolver)} and then kept current by {@link #updateIfNeeded}, which only
+ * reads the calls logged since the previous update. The call log is read without holding the
+ * lock taken by {@link #getMatches}, and {@link #updateInBackground} lets callers keep it off
+ * the thread answering queries, so a query is matched in memory against the index as it is.
+ */
+public class CallLogNumberIndex {
+    private static final String TAG = "CallLogNumberIndex";
+
+    /** The number of most recent calls the index is built from. */
+    private static final int MAX_CALLS_TO_INDEX = 500;
+
+    /** Numbers used within the last 3 days rank higher than numbers used within 30 days. */
+    private static final long LAST_TIME_USED_CURRENT_MS = 3L * 24 * 60 * 60 * 1000;
+    private static final long LAST_TIME_USED_RECENT_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String[] PROJECTION = new String[] {
+        Calls._ID,
+        Calls.NUMBER,
+        Calls.DATE,
+        Calls.CACHED_NAME,
+        Calls.NUMBER_PRESENTATION,
+    };
+    private static final int ID_COLUMN_INDEX = 0;
+    private static final int NUMBER_COLUMN_INDEX = 1;
+    private static final int DATE_COLUMN_INDEX = 2;
+    private static final int CACHED_NAME_COLUMN_INDEX = 3;
+    private static final int NUMBER_PRESENTATION_COLUMN_INDEX = 4;
+
+    /** A distinct number found in the call log. */
+    public static class Entry {
+        public final String number;
+        /** The number stripped to its dialpad digits. */
+        final String digits;
+        long lastTimeUsed;
+        int timesUsed;
+
+        Entry(String number, String digits) {
+            this.number = number;
+            this.digits = digits;
+        }
+
+        Entry copy() {
+            final Entry copy = new Entry(number, digits);
+            copy.lastTimeUsed = lastTimeUsed;
+            copy.timesUsed = timesUsed;
+            return copy;
+        }
+    }
+
+    /** Entries keyed by their digits, so that differently formatted numbers are merged. */
+    private final HashMap<String, Entry> mEntries = Maps.newHashMap();
+    /** The id of the newest call which has been added to the index, -1 if none was read yet. */
+    private long mLastCallId = -1;
+    private volatile boolean mIsDirty = true;
+    /** Held while the call log is read, so that only one update runs at a time. */
+    private final Object mUpdateLock = new Object();
+    private final AtomicBoolean mUpdateScheduled = new AtomicBoolean();
+
+    /**
+     * Marks the index as out of date. The next call to {@link #updateIfNeeded} will add the calls
+     * logged since the last update. Safe to call from any thread.
+     */
+    public void invalidate() {
+        mIsDirty = true;
+    }
+
+    /**
+     * Runs {@link #updateIfNeeded} on a background thread, unless an update is already waiting to
+     * run. Queries keep matching the index as it is until the update is done.
+     */
+    public void updateInBackground(final ContentResolver resolver) {
+        if (!mIsDirty || !mUpdateScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mUpdateScheduled.set(false);
+                updateIfNeeded(resolver);
+            }
+        });
+    }
+
+    /**
+     * Discards the index and builds it again from the newest {@link #MAX_CALLS_TO_INDEX} calls.
+     * This also drops the numbers of calls which have been deleted from the call log.
+     */
+    public void rebuild(ContentResolver resolver) {
+        synchronized (mUpdateLock) {
+            mIsDirty = false;
+            final ArrayList<Call> calls = readCalls(resolver, null,
+                    Calls._ID + " DESC LIMIT " + MAX_CALLS_TO_INDEX);
+            if (calls == null) {
+                return;
+            }
+            synchronized (this) {
+                mEntries.clear();
+                mLastCallId = -1;
+                addCalls(calls);
+            }
+        }
+    }
+
+    /**
+     * Adds the calls logged since the last update to the index, if it has been invalidated.
+     */
+    public void updateIfNeeded(ContentResolver resolver) {
+        synchronized (mUpdateLock) {
+            if (!mIsDirty) {
+                return;
+            }
+            final long lastCallId;
+            synchronized (this) {
+                lastCallId = mLastCallId;
+            }
+            if (lastCallId < 0) {
+                rebuild(resolver);
+                return;
+            }
+            mIsDirty = false;
+            final ArrayList<Call> calls = readCalls(resolver, Calls._ID + " > " + lastCallId,
+                    Calls._ID + " ASC");
+            if (calls == null) {
+                return;
+            }
+            synchronized (this) {
+                addCalls(calls);
+            }
+        }
+    }
+
+    /** A call read from the call log, before it is added to the index. */
+    private static class Call {
+        final long id;
+        /** Null if the number was not allowed to be shown. */
+        final String number;
+        final long date;
+        final boolean isContact;
+
+        Call(long id, String number, long date, boolean isContact) {
+            this.id = id;
+            this.number = number;
+            this.date = date;
+            this.isContact = isContact;
+        }
+    }
+
+    /** Returns the calls matching the selection, or null if the call log could not be read. */
+    private static ArrayList<Call> readCalls(ContentResolver resolver, String selection,
+            String sortOrder) {
+        final Cursor cursor;
+        try {
+            cursor = resolver.query(Calls.CONTENT_URI, PROJECTION, selection, null, sortOrder);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Not allowed to read the call log", e);
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        final ArrayList<Call> calls = Lists.newArrayListWithCapacity(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(ID_COLUMN_INDEX);
+                if (cursor.getInt(NUMBER_PRESENTATION_COLUMN_INDEX)
+                        != Calls.PRESENTATION_ALLOWED) {
+                    calls.add(new Call(id, null, 0, false));
+                    continue;
+                }
+                calls.add(new Call(id, cursor.getString(NUMBER_COLUMN_INDEX),
+                        cursor.getLong(DATE_COLUMN_INDEX),
+                        !TextUtils.isEmpty(cursor.getString(CACHED_NAME_COLUMN_INDEX))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return calls;
+    }
+
+    private void addCalls(ArrayList<Call> calls) {
+        for (Call call : calls) {
+            addCall(call.id, call.number, call.date, call.isContact);
+        }
+    }
+
+    /**
+     * Adds a single call to the index. Calls to numbers which belonged to a contact when they were
+     * logged, or whose number was not shown, only advance the position of the index in the call
+     * log.
+     */
+    @VisibleForTesting
+    synchronized void addCall(long id, String number, long date, boolean isContact) {
+        mLastCallId = Math.max(mLastCallId, id);
+        if (isContact || TextUtils.isEmpty(number)) {
+            return;
+        }
+        final String digits = SmartDialNameMatcher.normalizeNumber(number,
+                SmartDialPrefix.getMap());
+        if (digits.isEmpty()) {
+            return;
+        }
+        Entry entry = mEntries.get(digits);
+        if (entry == null) {
+            entry = new Entry(number, digits);
+            mEntries.put(digits, entry);
+        }
+        entry.timesUsed++;
+        entry.lastTimeUsed = Math.max(entry.lastTimeUsed, date);
+    }
+
+    /**
+     * Returns copies of the indexed numbers whose digits contain the given query, best ranked
+     * first. This is how {@link SmartDialNameMatcher#matchesNumber} matches the numbers of the
+     * contacts, so the dialpad highlights the same digits in both kinds of suggestions.
+     *
+     * @param query The normalized query, containing only dialpad digits.
+     * @param limit The maximum number of entries to return.
+     */
+    public synchronized ArrayList<Entry> getMatches(String query, int limit) {
+        final ArrayList<Entry> matches = Lists.newArrayList();
+        if (TextUtils.isEmpty(query)) {
+            return matches;
+        }
+        for (Entry entry : mEntries.values()) {
+            // For contacts, the LIKE query on the prefix table only preselects the rows; a
+            // number is kept if the query appears in it as consecutive digits.
+            if (entry.digits.contains(query)) {
+                matches.add(entry.copy());
+            }
+        }
+        final long now = System.currentTimeMillis();
+        Collections.sort(matches, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return compareUsage(lhs.lastTimeUsed, lhs.timesUsed,
+                        rhs.lastTimeUsed, rhs.timesUsed, now);
+            }
+        });
+        if (matches.size() > limit) {
+            return Lists.newArrayList(matches.subList(0, limit));
+        }
+        return matches;
+    }
+
+    /**
+     * Compares two usages the same way the smart dial table sorts contacts by usage: numbers used
+     * in the last 3 days come first, then numbers used in the last 30 days, then everything else.
+     * Within the same period, the more often used number comes first.
+     *
+     * @return a negative number if the first usage ranks higher than the second.
+     */
+    static int compareUsage(long lastTimeUsed1, int timesUsed1, long lastTimeUsed2,
+            int timesUsed2, long now) {
+        final int period1 = getUsagePeriod(lastTimeUsed1, now);
+        final int period2 = getUsagePeriod(lastTimeUsed2, now);
+        if (period1 != period2) {
+            return period1 < period2 ? -1 : 1;
+        }
+        if (timesUsed1 != timesUsed2) {
+            return timesUsed1 > timesUsed2 ? -1 : 1;
+        }
+        return lastTimeUsed1 > lastTimeUsed2 ? -1 : (lastTimeUsed1 == lastTimeUsed2 ? 0 : 1);
+    }
+
+    private static int getUsagePeriod(long lastTimeUsed, long now) {
+        final long timeSinceLastUsed = now - lastTimeUsed;
+        if (timeSinceLastUsed < LAST_TIME_USED_CURRENT_MS) {
+            return 0;
+        } else if (timeSinceLastUsed < LAST_TIME_USED_RECENT_MS) {
+            return 1;
+        }
+        return 2;
+    }
+}
@@ -16,9 +16,11 @@
 
 package com.android.dialer.database;
 
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
@@ -28,12 +30,14 @@ import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.provider.BaseColumns;
+import android.provider.CallLog.Calls;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.Directory;
 import android.provider.ContactsContract.RawContacts;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -41,6 +45,8 @@ import com.android.contacts.common.util.StopWatch;
 import com.android.dialer.R;
 import com.android.dialer.dialpad.SmartDialNameMatcher;
 import com.android.dialer.dialpad.SmartDialPrefix;
+import com.android.dialer.util.LaunchPhaseTimer;
+import com.android.dialer.util.PerfStats;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
@@ -67,6 +73,11 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     private static final Object mLock = new Object();
     private static final AtomicBoolean sInUpdate = new AtomicBoolean(false);
     private final Context mContext;
+    /** Numbers from the call log suggested next to contacts, null for test instances. */
+    private CallLogNumberIndex mCallLogNumberIndex;
+    /** The phase of the smart dial update being timed, guarded by mLock. */
+    private String mUpdatePhase;
+    private long mUpdatePhaseStart;
 
     private Class mMultiMatchClass;
     private Object mMultiMatchObject;
@@ -354,6 +365,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             // dialer database helper is still doing work.
             sSingleton = new DialerDatabaseHelper(context.getApplicationContext(),
                     DATABASE_NAME);
+            sSingleton.initCallLogNumberIndex();
         }
         return sSingleton;
     }
@@ -375,6 +387,26 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         mContext = Preconditions.checkNotNull(context, "Context must not be null");
     }
 
+    /**
+     * Creates the index of call log numbers and starts building it, then keeps it informed about
+     * changes to the call log, so that new calls are added to it in the background rather than
+     * while a query waits.
+     */
+    private void initCallLogNumberIndex() {
+        final CallLogNumberIndex index = new CallLogNumberIndex();
+        final ContentResolver resolver = mContext.getContentResolver();
+        resolver.registerContentObserver(Calls.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        index.invalidate();
+                        index.updateInBackground(resolver);
+                    }
+                });
+        index.updateInBackground(resolver);
+        mCallLogNumberIndex = index;
+    }
+
     private void initMultiLanguageSearch() {
         try {
             if (mMultiMatchClass == null) {
@@ -579,6 +611,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             if (DEBUG) {
                 Log.v(TAG, "Updating Finished");
             }
+            LaunchPhaseTimer.markPhase(LaunchPhaseTimer.PHASE_SMART_DIAL_SYNCED);
             super.onPostExecute(o);
         }
     }
@@ -850,6 +883,35 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      * update.
      */
     public void updateSmartDialDatabase() {
+        final long start = PerfStats.beginSection(PerfStats.SMART_DIAL_UPDATE);
+        try {
+            doUpdateSmartDialDatabase();
+        } finally {
+            endUpdatePhase();
+            PerfStats.endSection(PerfStats.SMART_DIAL_UPDATE, start);
+        }
+    }
+
+    /** Starts timing a phase of the update, ending the phase before it if still running. */
+    private void beginUpdatePhase(String name) {
+        synchronized(mLock) {
+            endUpdatePhase();
+            mUpdatePhase = name;
+            mUpdatePhaseStart = PerfStats.beginSection(name);
+        }
+    }
+
+    /** Ends the running phase of the update, if any, including one left open by a failure. */
+    private void endUpdatePhase() {
+        synchronized(mLock) {
+            if (mUpdatePhase != null) {
+                PerfStats.endSection(mUpdatePhase, mUpdatePhaseStart);
+                mUpdatePhase = null;
+            }
+        }
+    }
+
+    private void doUpdateSmartDialDatabase() {
         initMultiLanguageSearch();
 
         final SQLiteDatabase db = getWritableDatabase();
@@ -872,9 +934,11 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             /** Queries the contact database to get contacts that have been updated since the last
              * update time.
              */
+            beginUpdatePhase(PerfStats.SMART_DIAL_UPDATE_QUERY_CONTACTS);
             final Cursor updatedContactCursor = mContext.getContentResolver().query(PhoneQuery.URI,
                     PhoneQuery.PROJECTION, PhoneQuery.SELECTION,
                     new String[]{lastUpdateMillis}, null);
+            endUpdatePhase();
             if (updatedContactCursor == null) {
                 if (DEBUG) {
                     Log.e(TAG, "SmartDial query received null for cursor");
@@ -894,6 +958,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 sInUpdate.getAndSet(true);
 
                 /** Removes contacts that have been deleted. */
+                beginUpdatePhase(PerfStats.SMART_DIAL_UPDATE_REMOVE_CONTACTS);
                 removeDeletedContacts(db, lastUpdateMillis);
                 removePotentiallyCorruptedContacts(db, lastUpdateMillis);
 
@@ -913,9 +978,12 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                         stopWatch.lap("Finished deleting updated entries");
                     }
                 }
+                endUpdatePhase();
 
                 /** Inserts recently updated contacts to the smartdial database.*/
+                beginUpdatePhase(PerfStats.SMART_DIAL_UPDATE_INSERT_CONTACTS);
                 insertUpdatedContactsAndNumberPrefix(db, updatedContactCursor, currentMillis);
+                endUpdatePhase();
                 if (DEBUG) {
                     stopWatch.lap("Finished building the smart dial table");
                 }
@@ -927,6 +995,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             /** Gets a list of distinct contacts which have been updated, and adds the name prefixes
              * of these contacts to the prefix table.
              */
+            beginUpdatePhase(PerfStats.SMART_DIAL_UPDATE_INSERT_PREFIXES);
             final Cursor nameCursor = db.rawQuery(
                     "SELECT DISTINCT " +
                     SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " + SmartDialDbColumns.CONTACT_ID +
@@ -949,8 +1018,10 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                     nameCursor.close();
                 }
             }
+            endUpdatePhase();
 
             /** Creates index on contact_id for fast JOIN operation. */
+            beginUpdatePhase(PerfStats.SMART_DIAL_UPDATE_INDEX);
             db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_contact_id_index ON " +
                     Tables.SMARTDIAL_TABLE + " (" + SmartDialDbColumns.CONTACT_ID  + ");");
             /** Creates index on last_smartdial_update_time for fast SELECT operation. */
@@ -987,6 +1058,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             db.execSQL("ANALYZE smartdial_last_update_index");
             db.execSQL("ANALYZE nameprefix_index");
             db.execSQL("ANALYZE nameprefix_contact_id_index");
+            endUpdatePhase();
             if (DEBUG) {
                 stopWatch.stopAndLog(TAG + "Finished updating index stats", 0);
             }
@@ -997,6 +1069,11 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             editor.putLong(LAST_UPDATED_MILLIS, currentMillis);
             editor.commit();
         }
+
+        /** Rebuilds the call log index, which also drops the numbers of deleted calls. */
+        if (mCallLogNumberIndex != null) {
+            mCallLogNumberIndex.rebuild(mContext.getContentResolver());
+        }
     }
 
     /**
@@ -1008,6 +1085,16 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      */
     public ArrayList<ContactNumber>  getLooseMatches(String query,
             SmartDialNameMatcher nameMatcher) {
+        final long start = PerfStats.beginSection(PerfStats.SMART_DIAL_QUERY);
+        try {
+            return doGetLooseMatches(query, nameMatcher);
+        } finally {
+            PerfStats.endSection(PerfStats.SMART_DIAL_QUERY, start);
+        }
+    }
+
+    private ArrayList<ContactNumber> doGetLooseMatches(String query,
+            SmartDialNameMatcher nameMatcher) {
         final boolean inUpdate = sInUpdate.get();
         if (inUpdate || query.length() == 0) {
             return Lists.newArrayList();
@@ -1024,6 +1111,12 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         looseQuery.append("%");
 
         final ArrayList<ContactNumber> result = Lists.newArrayList();
+        /** Usage of the contacts in the result, used to rank numbers from the call log. */
+        long[] lastTimeUsed = null;
+        int[] timesUsed = null;
+        boolean[] starred = null;
+        /** Numbers of the matching contacts, to leave them out of the call log matches. */
+        final Set<String> contactMinMatches = new HashSet<String>();
 
         final StopWatch stopWatch = DEBUG ? StopWatch.start(":Name Prefix query") : null;
 
@@ -1038,7 +1131,10 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 SmartDialDbColumns.CONTACT_ID + ", " +
                 SmartDialDbColumns.LOOKUP_KEY + ", " +
                 SmartDialDbColumns.ACCOUNT_TYPE + ", " +
-                SmartDialDbColumns.ACCOUNT_NAME +
+                SmartDialDbColumns.ACCOUNT_NAME + ", " +
+                SmartDialDbColumns.LAST_TIME_USED + ", " +
+                SmartDialDbColumns.TIMES_USED + ", " +
+                SmartDialDbColumns.STARRED +
                 " FROM " + Tables.SMARTDIAL_TABLE +
                 " WHERE " + SmartDialDbColumns.CONTACT_ID + " IN " +
                 " (SELECT " + PrefixColumns.CONTACT_ID +
@@ -1064,12 +1160,18 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             final int columnLookupKey = 5;
             final int columnAccountType = 6;
             final int columnAccountName = 7;
+            final int columnLastTimeUsed = 8;
+            final int columnTimesUsed = 9;
+            final int columnStarred = 10;
             if (DEBUG) {
                 stopWatch.lap("Found column IDs");
             }
 
             final Set<ContactMatch> duplicates = new HashSet<ContactMatch>();
             int counter = 0;
+            lastTimeUsed = new long[MAX_ENTRIES];
+            timesUsed = new int[MAX_ENTRIES];
+            starred = new boolean[MAX_ENTRIES];
             if (DEBUG) {
                 stopWatch.lap("Moved cursor to start");
             }
@@ -1083,6 +1185,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 final String lookupKey = cursor.getString(columnLookupKey);
                 final String accountType = cursor.getString(columnAccountType);
                 final String accountName = cursor.getString(columnAccountName);
+                contactMinMatches.add(PhoneNumberUtils.toCallerIDMinMatch(phoneNumber));
 
                 /** If a contact already exists and another phone number of the contact is being
                  * processed, skip the second instance.
@@ -1104,6 +1207,9 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                     duplicates.add(contactMatch);
                     result.add(new ContactNumber(id, dataID, displayName, phoneNumber, lookupKey,
                             photoId, accountType, accountName));
+                    lastTimeUsed[counter] = cursor.getLong(columnLastTimeUsed);
+                    timesUsed[counter] = cursor.getInt(columnTimesUsed);
+                    starred[counter] = cursor.getInt(columnStarred) != 0;
                     counter++;
                     if (DEBUG) {
                         stopWatch.lap("Added one result: Name: " + displayName);
@@ -1117,6 +1223,54 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         } finally {
             cursor.close();
         }
+        if (mCallLogNumberIndex == null) {
+            return result;
+        }
+        return mergeCallLogMatches(query, result, lastTimeUsed, timesUsed, starred,
+                contactMinMatches);
+    }
+
+    /**
+     * Merges the numbers from the call log matching the query into the contact matches, keeping
+     * the order of the contact matches. A number from the call log is placed ahead of a contact
+     * which is not starred if it has been used more recently or more often, following the same
+     * ranking as {@link SmartDialSortingOrder#SORT_BY_DATA_USAGE}. Numbers belonging to one of the
+     * matching contacts, compared the way the contacts provider looks up numbers, are left out.
+     */
+    private ArrayList<ContactNumber> mergeCallLogMatches(String query,
+            ArrayList<ContactNumber> contactMatches, long[] lastTimeUsed, int[] timesUsed,
+            boolean[] starred, Set<String> contactMinMatches) {
+        /** Never reads the call log here; an update still running is picked up by later queries. */
+        mCallLogNumberIndex.updateInBackground(mContext.getContentResolver());
+        final ArrayList<CallLogNumberIndex.Entry> callLogMatches =
+                mCallLogNumberIndex.getMatches(query, MAX_ENTRIES);
+        if (callLogMatches.isEmpty()) {
+            return contactMatches;
+        }
+
+        final long now = System.currentTimeMillis();
+        final ArrayList<ContactNumber> result = Lists.newArrayList();
+        int contactIndex = 0;
+        for (CallLogNumberIndex.Entry entry : callLogMatches) {
+            if (contactMinMatches.contains(
+                    PhoneNumberUtils.toCallerIDMinMatch(entry.number))) {
+                continue;
+            }
+            while (contactIndex < contactMatches.size() && result.size() < MAX_ENTRIES
+                    && (starred[contactIndex] || CallLogNumberIndex.compareUsage(
+                            lastTimeUsed[contactIndex], timesUsed[contactIndex],
+                            entry.lastTimeUsed, entry.timesUsed, now) <= 0)) {
+                result.add(contactMatches.get(contactIndex++));
+            }
+            if (result.size() >= MAX_ENTRIES) {
+                break;
+            }
+            /** Numbers from the call log have no contact and no data row. */
+            result.add(new ContactNumber(0, 0, entry.number, entry.number, null, 0));
+        }
+        while (contactIndex < contactMatches.size() && result.size() < MAX_ENTRIES) {
+            result.add(contactMatches.get(contactIndex++));
+        }
         return result;
     }
 }
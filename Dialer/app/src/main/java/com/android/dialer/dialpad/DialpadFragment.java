@@ -25,6 +25,7 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
@@ -32,6 +33,7 @@ import android.graphics.BitmapFactory;
 import android.media.AudioManager;
 import android.media.ToneGenerator;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.Contacts.People;
 import android.provider.Contacts.Phones;
@@ -80,8 +82,9 @@ import com.android.dialer.NeededForReflection;
 import com.android.dialer.R;
 import com.android.dialer.SpecialCharSequenceMgr;
 import com.android.dialer.SpeedDialListActivity;
-import com.android.dialer.SpeedDialUtils;
+import com.android.dialer.SpeedDialStore;
 import com.android.dialer.util.DialerUtils;
+import com.android.dialer.util.LaunchPhaseTimer;
 import com.android.dialerbind.analytics.AnalyticsFragment;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.TelephonyProperties;
@@ -200,6 +203,8 @@ public class DialpadFragment extends AnalyticsFragment
     private View mDelete;
     private ToneGenerator mToneGenerator;
     private final Object mToneGeneratorLock = new Object();
+    /** Whether the tone generator should exist, i.e. the fragment is started. */
+    private boolean mToneGeneratorWanted;
     private View mSpacer;
 
     private FloatingActionButtonController mFloatingActionButtonController;
@@ -219,9 +224,10 @@ public class DialpadFragment extends AnalyticsFragment
     private String mProhibitedPhoneNumberRegexp;
 
 
-    // Last number dialed, retrieved asynchronously from the call DB
-    // in onCreate. This number is displayed when the user hits the
-    // send key and cleared in onPause.
+    // Last number dialed, read from the cached preference in onResume and
+    // refreshed asynchronously from the call DB once the first frame is
+    // drawn. This number is displayed when the user hits the send key and
+    // cleared in onPause.
     private final CallLogAsync mCallLog = new CallLogAsync();
     private String mLastNumberDialed = EMPTY_NUMBER;
 
@@ -272,6 +278,32 @@ public class DialpadFragment extends AnalyticsFragment
     private ComponentName mSmsPackageComponentName;
 
     private static final String PREF_DIGITS_FILLED_BY_INTENT = "pref_digits_filled_by_intent";
+    private static final String PREF_LAST_OUTGOING_NUMBER = "last_outgoing_number";
+
+    /**
+     * Creates the tone generator off the main thread. Constructing it can take well over 50ms,
+     * so it is started once the first frame has been drawn.
+     */
+    private final Runnable mCreateToneGeneratorRunnable = new Runnable() {
+        @Override
+        public void run() {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    createToneGenerator();
+                }
+            });
+        }
+    };
+
+    private final Runnable mQueryLastOutgoingCallRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (isResumed()) {
+                queryLastOutgoingCall();
+            }
+        }
+    };
 
     /**
      * Return an Intent for launching voicemail screen.
@@ -621,24 +653,34 @@ public class DialpadFragment extends AnalyticsFragment
     @Override
     public void onStart() {
         super.onStart();
+        synchronized (mToneGeneratorLock) {
+            mToneGeneratorWanted = true;
+        }
+        DialerUtils.runAfterNextFrame(getView(), mCreateToneGeneratorRunnable);
+    };
+
+    private void createToneGenerator() {
         // if the mToneGenerator creation fails, just continue without it.  It is
         // a local audio signal, and is not as important as the dtmf tone itself.
         final long start = System.currentTimeMillis();
         synchronized (mToneGeneratorLock) {
-            if (mToneGenerator == null) {
-                try {
-                    mToneGenerator = new ToneGenerator(DIAL_TONE_STREAM_TYPE, TONE_RELATIVE_VOLUME);
-                } catch (RuntimeException e) {
-                    Log.w(TAG, "Exception caught while creating local tone generator: " + e);
-                    mToneGenerator = null;
-                }
+            // The fragment may have been stopped before the tone generator got created.
+            if (!mToneGeneratorWanted || mToneGenerator != null) {
+                return;
+            }
+            try {
+                mToneGenerator = new ToneGenerator(DIAL_TONE_STREAM_TYPE, TONE_RELATIVE_VOLUME);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Exception caught while creating local tone generator: " + e);
+                mToneGenerator = null;
             }
         }
         final long total = System.currentTimeMillis() - start;
         if (total > 50) {
             Log.i(TAG, "Time for ToneGenerator creation: " + total);
         }
-    };
+        LaunchPhaseTimer.markPhase(LaunchPhaseTimer.PHASE_TONE_GENERATOR_READY);
+    }
 
     @Override
     public void onResume() {
@@ -649,9 +691,11 @@ public class DialpadFragment extends AnalyticsFragment
 
         final StopWatch stopWatch = StopWatch.start("Dialpad.onResume");
 
-        // Query the last dialed number. Do it first because hitting
-        // the DB is 'slow'. This call is asynchronous.
-        queryLastOutgoingCall();
+        // Use the cached last dialed number right away, and refresh it from
+        // the DB once the first frame is drawn, since hitting the DB is 'slow'.
+        mLastNumberDialed = getLastOutgoingNumberPreference().getString(
+                PREF_LAST_OUTGOING_NUMBER, EMPTY_NUMBER);
+        DialerUtils.runAfterNextFrame(getView(), mQueryLastOutgoingCallRunnable);
 
         stopWatch.lap("qloc");
 
@@ -754,6 +798,7 @@ public class DialpadFragment extends AnalyticsFragment
         super.onStop();
 
         synchronized (mToneGeneratorLock) {
+            mToneGeneratorWanted = false;
             if (mToneGenerator != null) {
                 mToneGenerator.release();
                 mToneGenerator = null;
@@ -1926,7 +1971,6 @@ public class DialpadFragment extends AnalyticsFragment
      * exists yet.
      */
     private void queryLastOutgoingCall() {
-        mLastNumberDialed = EMPTY_NUMBER;
         CallLogAsync.GetLastOutgoingCallArgs lastCallArgs =
                 new CallLogAsync.GetLastOutgoingCallArgs(
                     getActivity(),
@@ -1942,11 +1986,22 @@ public class DialpadFragment extends AnalyticsFragment
                             if (getActivity() == null) return;
                             mLastNumberDialed = number;
                             updateDeleteButtonEnabledState();
+
+                            final SharedPreferences prefs = getLastOutgoingNumberPreference();
+                            if (!TextUtils.equals(number,
+                                    prefs.getString(PREF_LAST_OUTGOING_NUMBER, EMPTY_NUMBER))) {
+                                prefs.edit().putString(PREF_LAST_OUTGOING_NUMBER, number).apply();
+                            }
                         }
                     });
         mCallLog.getLastOutgoingCall(lastCallArgs);
     }
 
+    private SharedPreferences getLastOutgoingNumberPreference() {
+        return getActivity().getSharedPreferences(DialtactsActivity.SHARED_PREFS_NAME,
+                Context.MODE_PRIVATE);
+    }
+
     private Intent newFlashIntent() {
         final Intent intent = CallUtil.getCallIntent(EMPTY_NUMBER);
         intent.putExtra(EXTRA_SEND_EMPTY_FLASH, true);
@@ -1999,7 +2054,7 @@ public class DialpadFragment extends AnalyticsFragment
             default: return;
         }
 
-        String phoneNumber = SpeedDialUtils.getNumber(getActivity(), number);
+        String phoneNumber = SpeedDialStore.getInstance(getActivity()).getNumber(number);
         if (phoneNumber == null) {
             showNoSpeedNumberDialog(number);
         } else {
@@ -74,6 +74,16 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
 
     /** Contact data stored in cache. This is used to populate the associated view. */
     protected ArrayList<ContactEntry> mContactEntries = null;
+    /** Rows the entries in {@link #mContactEntries} were built from, keyed by contact id. */
+    private LongSparseArray<CachedContactRow> mCachedRows =
+            new LongSparseArray<CachedContactRow>();
+    /** Contact ids in the order they were read from the last cursor. */
+    private long[] mOrderedIds = new long[0];
+    /**
+     * False if {@link #mContactEntries} was modified (e.g. by dragging) since it was last built
+     * from a cursor.
+     */
+    private boolean mCacheInSync = false;
     /** Back up of the temporarily removed Contact during dragging. */
     private ContactEntry mDraggedEntry = null;
     /** Position of the temporarily removed contact in the cache. */
@@ -218,28 +228,36 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
             }
 
             saveNumFrequentsFromCursor(cursor);
-            saveCursorToCache(cursor);
-            // cause a refresh of any views that rely on this data
-            notifyDataSetChanged();
-            // about to start redraw
-            mDataSetChangedListener.onDataSetChangedForAnimation();
+            if (saveCursorToCache(cursor)) {
+                // cause a refresh of any views that rely on this data
+                notifyDataSetChanged();
+                // about to start redraw
+                mDataSetChangedListener.onDataSetChangedForAnimation();
+            }
         }
     }
 
     /**
      * Saves the cursor data to the cache, to speed up UI changes.
      *
+     * Entries are keyed by contact id and reused across cursor deliveries as long as the row
+     * they were built from is unchanged, so that a new cursor (e.g. after times_contacted of a
+     * contact was bumped by a call) does not re-create accounts, lookup uris and type labels
+     * for every tile.
+     *
      * @param cursor Returned cursor with data to populate the view.
+     * @return True if the resulting list of entries differs from the one previously displayed.
      */
-    private void saveCursorToCache(Cursor cursor) {
-        mContactEntries.clear();
-
+    private boolean saveCursorToCache(Cursor cursor) {
         cursor.moveToPosition(-1);
 
-        final LongSparseArray<Object> duplicates = new LongSparseArray<Object>(cursor.getCount());
+        final LongSparseArray<CachedContactRow> rows =
+                new LongSparseArray<CachedContactRow>(cursor.getCount());
+        final ArrayList<CachedContactRow> orderedRows = new ArrayList<CachedContactRow>();
 
         // Track the length of {@link #mContactEntries} and compare to {@link #TILES_SOFT_LIMIT}.
         int counter = 0;
+        boolean changed = !mCacheInSync;
 
         while (cursor.moveToNext()) {
 
@@ -254,67 +272,154 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
                 id = cursor.getLong(mContactIdIndex);
             }
 
-            final ContactEntry existing = (ContactEntry) duplicates.get(id);
+            final CachedContactRow existing = rows.get(id);
             if (existing != null) {
                 // Check if the existing number is a default number. If not, clear the phone number
                 // and label fields so that the disambiguation dialog will show up.
                 if (!existing.isDefaultNumber) {
-                    existing.phoneLabel = null;
-                    existing.phoneNumber = null;
+                    existing.ambiguous = true;
                 }
                 continue;
             }
 
-            final String photoUri = cursor.getString(mPhotoUriIndex);
-            final String lookupKey = cursor.getString(mLookupIndex);
-            final int pinned = cursor.getInt(mPinnedIndex);
-            final String name = cursor.getString(mNameIndex);
-            final boolean isStarred = cursor.getInt(mStarredIndex) > 0;
-            final boolean isDefaultNumber = cursor.getInt(mIsDefaultNumberIndex) > 0;
-            final String accountName = cursor.getString(mAccountNameIndex);
-            final String accountType = cursor.getString(mAccountTypeIndex);
-
-            final ContactEntry contact = new ContactEntry();
-
-            contact.id = id;
-            contact.name = (!TextUtils.isEmpty(name)) ? name :
-                    mResources.getString(R.string.missing_name);
-            contact.photoUri = (photoUri != null ? Uri.parse(photoUri) : null);
-            contact.lookupKey = lookupKey;
-            contact.lookupUri = ContentUris.withAppendedId(
-                    Uri.withAppendedPath(Contacts.CONTENT_LOOKUP_URI, lookupKey), id);
-            contact.isFavorite = isStarred;
-            contact.isDefaultNumber = isDefaultNumber;
-
-            // Set phone number and label
-            final int phoneNumberType = cursor.getInt(mPhoneNumberTypeIndex);
-            final String phoneNumberCustomLabel = cursor.getString(mPhoneNumberLabelIndex);
-            contact.phoneLabel = (String) Phone.getTypeLabel(mResources, phoneNumberType,
-                    phoneNumberCustomLabel);
-            contact.phoneNumber = cursor.getString(mPhoneNumberIndex);
-
-            contact.pinned = pinned;
-
-            Account account;
-            if (!TextUtils.isEmpty(accountName) && !TextUtils.isEmpty(accountType)) {
-                account = new Account(accountName, accountType);
-            } else {
-                account = null;
+            CachedContactRow row = mCachedRows.get(id);
+            if (row == null || !row.matches(cursor, this)) {
+                row = new CachedContactRow(cursor, this);
+                changed = true;
+            }
+            row.ambiguous = false;
+            if (counter >= mOrderedIds.length || mOrderedIds[counter] != id) {
+                changed = true;
             }
-            contact.account = account;
-
-            mContactEntries.add(contact);
 
-            duplicates.put(id, contact);
+            orderedRows.add(row);
+            rows.put(id, row);
 
             counter++;
         }
 
+        if (counter != mOrderedIds.length) {
+            changed = true;
+        }
+        for (int i = 0; i < counter && !changed; i++) {
+            final CachedContactRow row = orderedRows.get(i);
+            changed = row.ambiguous != row.displayedAmbiguous;
+        }
+
         mAwaitingRemove = false;
 
+        if (!changed) {
+            // Same contacts in the same order with the same data, so the entries that are
+            // displayed (including the pinned positions they were arranged with) are still valid.
+            return false;
+        }
+
+        mOrderedIds = new long[counter];
+        mContactEntries.clear();
+        for (int i = 0; i < counter; i++) {
+            final CachedContactRow row = orderedRows.get(i);
+            // The entry may have been modified by a previous arrangement, so restore the values
+            // read from the provider before arranging again.
+            row.restoreEntry();
+            mOrderedIds[i] = row.entry.id;
+            mContactEntries.add(row.entry);
+        }
+        mCachedRows = rows;
+
         arrangeContactsByPinnedPosition(mContactEntries);
+        mCacheInSync = true;
+
+        return true;
+    }
+
+    /**
+     * The values of a single cursor row that a {@link ContactEntry} was built from. Used to
+     * decide whether the entry can be reused when a new cursor is delivered.
+     */
+    private static final class CachedContactRow {
+        final ContactEntry entry;
+
+        final String name;
+        final String photoUri;
+        final String lookupKey;
+        final int pinned;
+        final boolean isStarred;
+        final boolean isDefaultNumber;
+        final int phoneNumberType;
+        final String phoneNumberCustomLabel;
+        final String phoneLabel;
+        final String phoneNumber;
+        final String accountName;
+        final String accountType;
+
+        /**
+         * Whether the contact has more than one number and none of them is the default, in which
+         * case the number is cleared so that the disambiguation dialog will show up.
+         */
+        boolean ambiguous;
+        /** Value of {@link #ambiguous} the last time {@link #entry} was restored. */
+        boolean displayedAmbiguous;
+
+        CachedContactRow(Cursor cursor, PhoneFavoritesTileAdapter adapter) {
+            final long id = cursor.getLong(adapter.mContactIdIndex);
+            name = cursor.getString(adapter.mNameIndex);
+            photoUri = cursor.getString(adapter.mPhotoUriIndex);
+            lookupKey = cursor.getString(adapter.mLookupIndex);
+            pinned = cursor.getInt(adapter.mPinnedIndex);
+            isStarred = cursor.getInt(adapter.mStarredIndex) > 0;
+            isDefaultNumber = cursor.getInt(adapter.mIsDefaultNumberIndex) > 0;
+            phoneNumberType = cursor.getInt(adapter.mPhoneNumberTypeIndex);
+            phoneNumberCustomLabel = cursor.getString(adapter.mPhoneNumberLabelIndex);
+            phoneNumber = cursor.getString(adapter.mPhoneNumberIndex);
+            accountName = cursor.getString(adapter.mAccountNameIndex);
+            accountType = cursor.getString(adapter.mAccountTypeIndex);
+
+            final Resources res = adapter.mResources;
+            phoneLabel = (String) Phone.getTypeLabel(res, phoneNumberType,
+                    phoneNumberCustomLabel);
+
+            entry = new ContactEntry();
+            entry.id = id;
+            entry.name = (!TextUtils.isEmpty(name)) ? name :
+                    res.getString(R.string.missing_name);
+            entry.photoUri = (photoUri != null ? Uri.parse(photoUri) : null);
+            entry.lookupKey = lookupKey;
+            entry.lookupUri = ContentUris.withAppendedId(
+                    Uri.withAppendedPath(Contacts.CONTENT_LOOKUP_URI, lookupKey), id);
+            entry.isFavorite = isStarred;
+            entry.isDefaultNumber = isDefaultNumber;
 
-        notifyDataSetChanged();
+            if (!TextUtils.isEmpty(accountName) && !TextUtils.isEmpty(accountType)) {
+                entry.account = new Account(accountName, accountType);
+            } else {
+                entry.account = null;
+            }
+        }
+
+        /**
+         * @return True if the current row of the cursor holds the same data as this row.
+         */
+        boolean matches(Cursor cursor, PhoneFavoritesTileAdapter adapter) {
+            return cursor.getInt(adapter.mPinnedIndex) == pinned
+                    && (cursor.getInt(adapter.mStarredIndex) > 0) == isStarred
+                    && (cursor.getInt(adapter.mIsDefaultNumberIndex) > 0) == isDefaultNumber
+                    && cursor.getInt(adapter.mPhoneNumberTypeIndex) == phoneNumberType
+                    && TextUtils.equals(cursor.getString(adapter.mNameIndex), name)
+                    && TextUtils.equals(cursor.getString(adapter.mPhotoUriIndex), photoUri)
+                    && TextUtils.equals(cursor.getString(adapter.mLookupIndex), lookupKey)
+                    && TextUtils.equals(cursor.getString(adapter.mPhoneNumberIndex), phoneNumber)
+                    && TextUtils.equals(cursor.getString(adapter.mPhoneNumberLabelIndex),
+                            phoneNumberCustomLabel)
+                    && TextUtils.equals(cursor.getString(adapter.mAccountNameIndex), accountName)
+                    && TextUtils.equals(cursor.getString(adapter.mAccountTypeIndex), accountType);
+        }
+
+        void restoreEntry() {
+            entry.pinned = pinned;
+            entry.phoneLabel = ambiguous ? null : phoneLabel;
+            entry.phoneNumber = ambiguous ? null : phoneNumber;
+            displayedAmbiguous = ambiguous;
+        }
     }
 
     /**
@@ -467,6 +572,7 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
             mContactEntries.remove(mDragEnteredEntryIndex);
             mDragEnteredEntryIndex = itemIndex;
             mContactEntries.add(mDragEnteredEntryIndex, ContactEntry.BLANK_ENTRY);
+            mCacheInSync = false;
             ContactEntry.BLANK_ENTRY.id = mDraggedEntry.id;
             mDataSetChangedListener.onDataSetChangedForAnimation();
             notifyDataSetChanged();
@@ -486,6 +592,7 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
                 // populated with the dragged ContactEntry at the correct spot.
                 mDropEntryIndex = mDragEnteredEntryIndex;
                 mContactEntries.set(mDropEntryIndex, mDraggedEntry);
+                mCacheInSync = false;
                 mDataSetChangedListener.cacheOffsetsForDatasetChange();
                 changed = true;
             } else if (isIndexInBound(mDraggedEntryIndex)) {
@@ -494,6 +601,7 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
                 mContactEntries.remove(mDragEnteredEntryIndex);
                 mContactEntries.add(mDraggedEntryIndex, mDraggedEntry);
                 mDropEntryIndex = mDraggedEntryIndex;
+                mCacheInSync = false;
                 notifyDataSetChanged();
             }
 
@@ -523,6 +631,7 @@ public class PhoneFavoritesTileAdapter extends BaseAdapter implements
         if (isIndexInBound(mDragEnteredEntryIndex)) {
             mContactEntries.remove(mDragEnteredEntryIndex);
             mContactEntries.add(mDraggedEntryIndex, mDraggedEntry);
+            mCacheInSync = false;
             notifyDataSetChanged();
         }
     }
@@ -17,9 +17,13 @@ package com.android.dialer.list;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Handler;
 import android.provider.ContactsContract;
 import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.list.DirectoryPartition;
@@ -30,11 +34,144 @@ import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
 
 /**
  * List adapter to display regular search results.
+ * <p>
+ * The local contacts, each directory and the lookup providers are loaded as separate partitions
+ * which finish in any order. To keep the list from reflowing while the user looks at it, the
+ * results of a partition are held back until all partitions listed above it have shown their
+ * results for the current query, or until {@link #HOLD_BACK_DEADLINE_MS} have passed since the
+ * query changed. Results arriving after that are shown as they come, below what is already there.
+ * <p>
+ * The loader of a partition closes its previous results once it has delivered new ones, so while
+ * the new results are held back, the partition shows a copy of the previous ones.
  */
 public class RegularSearchListAdapter extends DialerPhoneNumberListAdapter {
 
+    /** The longest time results are held back for a slower partition listed above them. */
+    private static final long HOLD_BACK_DEADLINE_MS = 500;
+
+    private final Handler mHandler = new Handler();
+    /** Results which arrived before the results of all partitions above them, by partition. */
+    private final SparseArray<Cursor> mHeldBackCursors = new SparseArray<Cursor>();
+    /** The partitions which have shown their results for the current query. */
+    private final SparseBooleanArray mLoadedPartitions = new SparseBooleanArray();
+    private boolean mHoldBackExpired;
+
+    private final Runnable mHoldBackDeadlineRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mHoldBackExpired = true;
+            showHeldBackCursors();
+        }
+    };
+
+    /** A copy of the results shown by a partition while its new results are held back. */
+    private static class HeldBackCursorCopy extends MatrixCursor {
+        public HeldBackCursorCopy(Cursor cursor) {
+            super(cursor.getColumnNames(), cursor.getCount());
+            final Object[] row = new Object[cursor.getColumnCount()];
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < row.length; i++) {
+                    switch (cursor.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[i] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[i] = cursor.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[i] = cursor.getBlob(i);
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[i] = null;
+                            break;
+                        default:
+                            row[i] = cursor.getString(i);
+                            break;
+                    }
+                }
+                addRow(row);
+            }
+        }
+    }
+
     public RegularSearchListAdapter(Context context) {
         super(context);
+        // Holds back the results of the initial query as well.
+        resetHeldBackCursors();
+    }
+
+    @Override
+    public void changeCursor(int partitionIndex, Cursor cursor) {
+        if (!mHoldBackExpired && !arePartitionsAboveLoaded(partitionIndex)) {
+            mHeldBackCursors.put(partitionIndex, cursor);
+            keepShownCursor(partitionIndex);
+            return;
+        }
+        mHeldBackCursors.remove(partitionIndex);
+        showCursor(partitionIndex, cursor);
+        showHeldBackCursors();
+    }
+
+    private void showCursor(int partitionIndex, Cursor cursor) {
+        mLoadedPartitions.put(partitionIndex, true);
+        super.changeCursor(partitionIndex, cursor);
+    }
+
+    /**
+     * Replaces the results shown by the partition with a copy, so that they stay valid once their
+     * loader closes them.
+     */
+    private void keepShownCursor(int partitionIndex) {
+        if (partitionIndex >= getPartitionCount()) {
+            return;
+        }
+        final Cursor shownCursor = getCursor(partitionIndex);
+        if (shownCursor == null || shownCursor instanceof HeldBackCursorCopy) {
+            return;
+        }
+        super.changeCursor(partitionIndex, shownCursor.isClosed()
+                ? null : new HeldBackCursorCopy(shownCursor));
+    }
+
+    private boolean arePartitionsAboveLoaded(int partitionIndex) {
+        for (int i = 0; i < partitionIndex; i++) {
+            if (!mLoadedPartitions.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shows the held back results which no longer wait for a partition above them, top first.
+     */
+    private void showHeldBackCursors() {
+        while (mHeldBackCursors.size() > 0) {
+            final int partitionIndex = mHeldBackCursors.keyAt(0);
+            if (!mHoldBackExpired && !arePartitionsAboveLoaded(partitionIndex)) {
+                return;
+            }
+            final Cursor cursor = mHeldBackCursors.valueAt(0);
+            mHeldBackCursors.removeAt(0);
+            // The partitions may have changed, or the loader may have released the cursor, while
+            // it was held back.
+            if (partitionIndex < getPartitionCount() && (cursor == null || !cursor.isClosed())) {
+                showCursor(partitionIndex, cursor);
+            }
+        }
+    }
+
+    /**
+     * Starts holding back results for a new query. Results held back for the previous query are
+     * dropped, as the loaders deliver results for the new query anyway.
+     */
+    private void resetHeldBackCursors() {
+        mHandler.removeCallbacks(mHoldBackDeadlineRunnable);
+        mHeldBackCursors.clear();
+        mLoadedPartitions.clear();
+        mHoldBackExpired = false;
+        mHandler.postDelayed(mHoldBackDeadlineRunnable, HOLD_BACK_DEADLINE_MS);
     }
 
     public ContactInfo getLookupContactInfo(int position) {
@@ -94,6 +231,9 @@ public class RegularSearchListAdapter extends DialerPhoneNumberListAdapter {
         if (changed) {
             notifyDataSetChanged();
         }
+        if (!TextUtils.equals(queryString, getQueryString())) {
+            resetHeldBackCursors();
+        }
         super.setQueryString(queryString);
     }
 }
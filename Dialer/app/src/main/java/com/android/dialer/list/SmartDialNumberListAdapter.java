@@ -102,12 +102,17 @@ public class SmartDialNumberListAdapter extends DialerPhoneNumberListAdapter {
     /**
      * Gets Uri for the list item at the given position.
      * @param position Location of the data of interest.
-     * @return Data Uri of the entry.
+     * @return Data Uri of the entry, or null if the entry is a number from the call log which
+     *         does not belong to a contact.
      */
     public Uri getDataUri(int position) {
         Cursor cursor = ((Cursor)getItem(position));
         if (cursor != null) {
             long id = cursor.getLong(PhoneQuery.PHONE_ID);
+            if (id == 0) {
+                // Numbers from the call log have no data row; they are called directly.
+                return null;
+            }
             return ContentUris.withAppendedId(ContactsContract.Data.CONTENT_URI, id);
         } else {
             Log.w(TAG, "Cursor was null in getDataUri() call. Returning null instead.");
@@ -19,6 +19,7 @@ package com.android.dialer.lookup;
 import com.android.contacts.common.list.PhoneNumberListAdapter.PhoneQuery;
 import com.android.dialer.calllog.ContactInfo;
 import com.android.dialer.R;
+import com.android.dialer.util.PerfStats;
 
 import android.content.ContentProvider;
 import android.content.ContentResolver;
@@ -301,10 +302,20 @@ public class LookupProvider extends ContentProvider {
             ContactInfo[] results = null;
             if (type == NEARBY) {
                 ForwardLookup fl = ForwardLookup.getInstance(getContext());
-                results = fl.lookup(getContext(), filter, lastLocation);
+                final long start = PerfStats.beginSection(PerfStats.LOOKUP_FORWARD);
+                try {
+                    results = fl.lookup(getContext(), filter, lastLocation);
+                } finally {
+                    PerfStats.endSection(PerfStats.LOOKUP_FORWARD, start);
+                }
             } else if (type == PEOPLE) {
                 PeopleLookup pl = PeopleLookup.getInstance(getContext());
-                results = pl.lookup(getContext(), filter);
+                final long start = PerfStats.beginSection(PerfStats.LOOKUP_PEOPLE);
+                try {
+                    results = pl.lookup(getContext(), filter);
+                } finally {
+                    PerfStats.endSection(PerfStats.LOOKUP_PEOPLE, start);
+                }
             }
 
             if (results == null || results.length == 0) {
@@ -450,6 +461,7 @@ public class LookupProvider extends ContentProvider {
             Log.w(TAG, "Task threw an exception: " + name, e);
         } catch (TimeoutException e) {
             Log.w(TAG, "Task timed out: " + name);
+            PerfStats.incrementCounter(PerfStats.LOOKUP_TIMEOUTS);
             future.cancel(true);
         } catch (CancellationException e) {
             Log.w(TAG, "Task was cancelled: " + name);
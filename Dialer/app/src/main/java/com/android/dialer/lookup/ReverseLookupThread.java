@@ -18,6 +18,7 @@ package com.android.dialer.lookup;
 
 import com.android.contacts.common.GeoUtil;
 import com.android.dialer.calllog.ContactInfo;
+import com.android.dialer.util.PerfStats;
 import com.android.incallui.ContactInfoCache;
 
 import android.content.Context;
@@ -92,11 +93,14 @@ public class ReverseLookupThread extends Thread {
 
         // Lookup contact if it's not cached
         if (info == null) {
+            final long start = PerfStats.beginSection(PerfStats.LOOKUP_REVERSE);
             try {
                 info = ReverseLookup.getInstance(mContext).lookupNumber(mContext,
                         mNormalizedNumber, mFormattedNumber);
             } catch (IOException e) {
                 // ignored, we'll return below
+            } finally {
+                PerfStats.endSection(PerfStats.LOOKUP_REVERSE, start);
             }
 
             if (info == null) {
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.accounts.Account;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.support.v4.graphics.drawable.RoundedBitmapDrawable;
+import android.support.v4.graphics.drawable.RoundedBitmapDrawableFactory;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.android.contacts.common.ContactPhotoManager;
+import com.android.contacts.common.ContactPhotoManager.DefaultImageRequest;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Loads the contact photos shown by the Dialer lists and screens, sharing one memory-bounded
+ * cache between them.
+ * <p>
+ * Photos which are referenced by a photo id are small thumbnails which {@link ContactPhotoManager}
+ * already caches, so those requests are passed through. Photos referenced by a URI are decoded here
+ * at the size they are displayed at instead of their full size. Decoded photos are cached by URI
+ * and size bucket, and a cached photo of a larger bucket is reused for smaller requests, so a face
+ * shown in both the call log and the call details is only decoded once. Concurrent requests for the
+ * same photo share a single load.
+ * <p>
+ * The cache is bounded by the number of bytes of the decoded bitmaps, scaled to the memory class of
+ * the device, and is trimmed when the system is low on memory. Must be used from the UI thread.
+ */
+public class DialerPhotoLoader implements ComponentCallbacks2 {
+    private static final String TAG = "DialerPhotoLoader";
+
+    /** The smallest and largest size buckets, in pixels. Requests are rounded up to a bucket. */
+    private static final int MIN_BUCKET_SIZE_PX = 64;
+    private static final int MAX_BUCKET_SIZE_PX = 512;
+
+    /** The fraction of the memory class of the device the decoded photos may take. */
+    private static final int MEMORY_CLASS_DIVISOR = 16;
+    /** Lower bound of the cache size, for devices which report a very small memory class. */
+    private static final int MIN_CACHE_SIZE_BYTES = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Identifiers of the tasks submitted to the {@link AsyncTaskExecutor}. */
+    public enum Tasks {
+        LOAD_PHOTO,
+    }
+
+    private static DialerPhotoLoader sInstance;
+
+    private final Context mContext;
+    private final ContactPhotoManager mContactPhotoManager;
+    private final AsyncTaskExecutor mAsyncTaskExecutor;
+    private final LruCache<String, Bitmap> mBitmapCache;
+    /** The loads in progress, keyed by the cache key of the photo being loaded. */
+    private final HashMap<String, LoadPhotoTask> mPendingLoads = Maps.newHashMap();
+    /** The cache key of the photo each view is waiting for. */
+    private final WeakHashMap<ImageView, String> mPendingViews =
+            new WeakHashMap<ImageView, String>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mSharedLoadCount;
+
+    public static synchronized DialerPhotoLoader getInstance(Context context) {
+        if (sInstance == null) {
+            final Context applicationContext = context.getApplicationContext();
+            sInstance = new DialerPhotoLoader(applicationContext,
+                    ContactPhotoManager.getInstance(applicationContext));
+            applicationContext.registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    DialerPhotoLoader(Context context, ContactPhotoManager contactPhotoManager) {
+        mContext = context;
+        mContactPhotoManager = contactPhotoManager;
+        mAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+
+        final ActivityManager am =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final int cacheSize = Math.max(MIN_CACHE_SIZE_BYTES,
+                am.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR);
+        mBitmapCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Loads the thumbnail with the given photo id into the view, through
+     * {@link ContactPhotoManager}.
+     */
+    public void loadThumbnail(ImageView view, long photoId, Account account, boolean darkTheme,
+            boolean isCircular, DefaultImageRequest defaultImageRequest) {
+        mPendingViews.remove(view);
+        mContactPhotoManager.loadThumbnail(view, photoId, account, darkTheme, isCircular,
+                defaultImageRequest);
+    }
+
+    /**
+     * Loads the photo with the given URI into the view, decoded for the given size. The default
+     * image is shown until the photo is loaded, or if there is no photo.
+     *
+     * @param sizePx The size the photo is displayed at, in pixels.
+     */
+    public void loadPhoto(ImageView view, Uri photoUri, int sizePx, Account account,
+            boolean darkTheme, boolean isCircular, DefaultImageRequest defaultImageRequest) {
+        if (photoUri == null) {
+            mPendingViews.remove(view);
+            mContactPhotoManager.loadDirectoryPhoto(view, null, account, darkTheme, isCircular,
+                    defaultImageRequest);
+            return;
+        }
+
+        final int bucketSizePx = getBucketSize(sizePx);
+        final Bitmap bitmap = getCachedBitmap(photoUri, bucketSizePx);
+        if (bitmap != null) {
+            mHitCount++;
+            mPendingViews.remove(view);
+            // Cancels any request ContactPhotoManager still has pending for this view.
+            mContactPhotoManager.removePhoto(view);
+            setPhoto(view, bitmap, isCircular);
+            return;
+        }
+
+        mMissCount++;
+        // Shows the default image, and cancels any request ContactPhotoManager still has pending
+        // for this view, until the photo is loaded.
+        mContactPhotoManager.loadDirectoryPhoto(view, null, account, darkTheme, isCircular,
+                defaultImageRequest);
+        final String key = getCacheKey(photoUri, bucketSizePx);
+        mPendingViews.put(view, key);
+        startLoad(photoUri, bucketSizePx, key).mIsCircular = isCircular;
+    }
+
+    /**
+     * Starts decoding the photo with the given URI for the given size, if it is neither cached nor
+     * being loaded, so that it is ready by the time it is scrolled into view.
+     */
+    public void prefetch(Uri photoUri, int sizePx) {
+        if (photoUri == null) {
+            return;
+        }
+        final int bucketSizePx = getBucketSize(sizePx);
+        if (getCachedBitmap(photoUri, bucketSizePx) != null) {
+            return;
+        }
+        startLoad(photoUri, bucketSizePx, getCacheKey(photoUri, bucketSizePx));
+    }
+
+    private LoadPhotoTask startLoad(Uri photoUri, int bucketSizePx, String key) {
+        LoadPhotoTask task = mPendingLoads.get(key);
+        if (task != null) {
+            mSharedLoadCount++;
+            return task;
+        }
+        task = new LoadPhotoTask(photoUri, bucketSizePx, key);
+        mPendingLoads.put(key, task);
+        mAsyncTaskExecutor.submit(Tasks.LOAD_PHOTO, task);
+        return task;
+    }
+
+    /**
+     * Returns the cached photo for the given bucket, or for the smallest larger bucket which is
+     * cached, or null if none is.
+     */
+    private Bitmap getCachedBitmap(Uri photoUri, int bucketSizePx) {
+        for (int size = bucketSizePx; size <= MAX_BUCKET_SIZE_PX; size *= 2) {
+            final Bitmap bitmap = mBitmapCache.get(getCacheKey(photoUri, size));
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void onPhotoLoaded(LoadPhotoTask task, Bitmap bitmap) {
+        mPendingLoads.remove(task.mKey);
+        if (bitmap != null) {
+            mBitmapCache.put(task.mKey, bitmap);
+        }
+        final Iterator<Map.Entry<ImageView, String>> iterator =
+                mPendingViews.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<ImageView, String> entry = iterator.next();
+            if (!task.mKey.equals(entry.getValue())) {
+                continue;
+            }
+            iterator.remove();
+            // If the photo could not be decoded, the default image stays in place.
+            if (bitmap != null) {
+                setPhoto(entry.getKey(), bitmap, task.mIsCircular);
+            }
+        }
+    }
+
+    private void setPhoto(ImageView view, Bitmap bitmap, boolean isCircular) {
+        final RoundedBitmapDrawable drawable =
+                RoundedBitmapDrawableFactory.create(mContext.getResources(), bitmap);
+        drawable.setAntiAlias(true);
+        if (isCircular) {
+            drawable.setCornerRadius(bitmap.getHeight() / 2);
+        }
+        view.setImageDrawable(drawable);
+    }
+
+    /**
+     * Rounds the requested size up to the next power of two, within the supported buckets.
+     */
+    @VisibleForTesting
+    static int getBucketSize(int sizePx) {
+        int bucketSizePx = MIN_BUCKET_SIZE_PX;
+        while (bucketSizePx < sizePx && bucketSizePx < MAX_BUCKET_SIZE_PX) {
+            bucketSizePx *= 2;
+        }
+        return bucketSizePx;
+    }
+
+    /**
+     * Returns the largest power of two the photo can be subsampled by and still be at least as
+     * large as the bucket in both dimensions.
+     */
+    @VisibleForTesting
+    static int getSampleSize(int width, int height, int bucketSizePx) {
+        final int shortestSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shortestSide / (sampleSize * 2) >= bucketSizePx) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static String getCacheKey(Uri photoUri, int bucketSizePx) {
+        return bucketSizePx + ":" + photoUri;
+    }
+
+    /**
+     * Decodes the photo with the given URI, subsampled for the bucket and cropped to a square.
+     * Returns null if the photo could not be read.
+     */
+    private Bitmap decodePhoto(Uri photoUri, int bucketSizePx) {
+        final byte[] bytes;
+        try {
+            bytes = readPhoto(photoUri);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Could not read photo " + photoUri, e);
+            return null;
+        }
+        if (bytes == null) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, bucketSizePx);
+        options.inJustDecodeBounds = false;
+        final Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding photo " + photoUri);
+            return null;
+        }
+        if (bitmap == null || bitmap.getWidth() == bitmap.getHeight()) {
+            return bitmap;
+        }
+        final int size = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        final Bitmap square = Bitmap.createBitmap(bitmap, (bitmap.getWidth() - size) / 2,
+                (bitmap.getHeight() - size) / 2, size, size);
+        if (square != bitmap) {
+            bitmap.recycle();
+        }
+        return square;
+    }
+
+    private byte[] readPhoto(Uri photoUri) throws IOException {
+        final String scheme = photoUri.getScheme();
+        final InputStream is;
+        if ("http".equals(scheme) || "https".equals(scheme)) {
+            is = new URL(photoUri.toString()).openStream();
+        } else {
+            is = mContext.getContentResolver().openInputStream(photoUri);
+        }
+        if (is == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int size;
+            while ((size = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, size);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /** Returns the number of requests which were served by a load already in progress. */
+    public int getSharedLoadCount() {
+        return mSharedLoadCount;
+    }
+
+    /** Returns the number of bytes held by the decoded photos in the cache. */
+    public int getBytesHeld() {
+        return mBitmapCache.size();
+    }
+
+    public int getMaxBytes() {
+        return mBitmapCache.maxSize();
+    }
+
+    /**
+     * Logs the hit and miss counts of the cache and the memory it holds, to tune its size.
+     */
+    public void logStats() {
+        Log.d(TAG, "hits=" + mHitCount + " misses=" + mMissCount
+                + " sharedLoads=" + mSharedLoadCount
+                + " bytesHeld=" + getBytesHeld() + "/" + getMaxBytes()
+                + " photos=" + mBitmapCache.putCount() + " evicted=" + mBitmapCache.evictionCount());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            logStats();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mBitmapCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mBitmapCache.trimToSize(mBitmapCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mBitmapCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /** Decodes a photo in the background and hands it to the views waiting for it. */
+    private class LoadPhotoTask extends AsyncTask<Void, Void, Bitmap> {
+        private final Uri mPhotoUri;
+        private final int mBucketSizePx;
+        private final String mKey;
+        private boolean mIsCircular = true;
+
+        public LoadPhotoTask(Uri photoUri, int bucketSizePx, String key) {
+            mPhotoUri = photoUri;
+            mBucketSizePx = bucketSizePx;
+            mKey = key;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            return decodePhoto(mPhotoUri, mBucketSizePx);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            onPhotoLoaded(this, bitmap);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import android.provider.Telephony;
 import android.telecom.TelecomManager;
 import android.text.TextUtils;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -184,4 +185,24 @@ public class DialerUtils {
             imm.hideSoftInputFromWindow(view.getWindowToken(), 0);
         }
     }
+
+    /**
+     * Runs the task on the main thread once the window of the view has drawn its next frame. Used
+     * to keep work which is not needed to show the UI off the path to the first frame.
+     */
+    public static void runAfterNextFrame(final View view, final Runnable task) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                final ViewTreeObserver observer = view.getViewTreeObserver();
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                }
+                // Posted, so that the task runs after the frame about to be drawn.
+                view.post(task);
+                return true;
+            }
+        });
+        view.invalidate();
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each phase of launching the dialer completed, in milliseconds since the launch
+ * started. Only the first completion of a phase after {@link #start()} is recorded.
+ */
+public class LaunchPhaseTimer {
+    /** The activity has been created and its views inflated. */
+    public static final String PHASE_CREATED = "created";
+    /** The first frame has been drawn; the dialer can be used from here on. */
+    public static final String PHASE_FIRST_FRAME = "first_frame";
+    /** The dialpad can play local DTMF tones. */
+    public static final String PHASE_TONE_GENERATOR_READY = "tone_generator_ready";
+    /** The smart dial database has been brought up to date with the contacts. */
+    public static final String PHASE_SMART_DIAL_SYNCED = "smart_dial_synced";
+
+    private static long sLaunchStartTime;
+    private static final LinkedHashMap<String, Long> sPhaseTimes =
+            new LinkedHashMap<String, Long>();
+
+    private LaunchPhaseTimer() {
+    }
+
+    /**
+     * Starts timing a new launch, forgetting the phases of the previous one.
+     */
+    public static synchronized void start() {
+        sLaunchStartTime = SystemClock.elapsedRealtime();
+        sPhaseTimes.clear();
+    }
+
+    /**
+     * Records that the given phase completed, unless it already did during this launch.
+     */
+    public static synchronized void markPhase(String phase) {
+        if (sLaunchStartTime == 0 || sPhaseTimes.containsKey(phase)) {
+            return;
+        }
+        sPhaseTimes.put(phase, SystemClock.elapsedRealtime() - sLaunchStartTime);
+    }
+
+    /**
+     * Returns the time each phase of the current launch took to complete, in completion order.
+     */
+    public static synchronized Map<String, Long> getPhaseTimes() {
+        return new LinkedHashMap<String, Long>(sPhaseTimes);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the latency of the hot paths of the Dialer, and counters of how often notable events
+ * happen, so that they can be pulled from a device with
+ * {@code adb shell dumpsys activity com.android.dialer/.DialtactsActivity}.
+ * <p>
+ * A timed section is also emitted as a {@link Trace} section with the same name, so it shows up in
+ * systrace. Sections must begin and end on the same thread:
+ * <pre>
+ *     final long start = PerfStats.beginSection(PerfStats.SMART_DIAL_QUERY);
+ *     try {
+ *         ...
+ *     } finally {
+ *         PerfStats.endSection(PerfStats.SMART_DIAL_QUERY, start);
+ *     }
+ * </pre>
+ * Latencies are kept in histograms with exponentially sized buckets, so recording is cheap and the
+ * memory used does not grow with the number of samples. Safe to use from any thread.
+ */
+public class PerfStats {
+    /** Querying the smart dial database for the contacts matching the dialed digits. */
+    public static final String SMART_DIAL_QUERY = "smartdial.query";
+    /** Bringing the smart dial database up to date with the contacts, and its phases. */
+    public static final String SMART_DIAL_UPDATE = "smartdial.update";
+    public static final String SMART_DIAL_UPDATE_QUERY_CONTACTS = "smartdial.update.query_contacts";
+    public static final String SMART_DIAL_UPDATE_REMOVE_CONTACTS =
+            "smartdial.update.remove_contacts";
+    public static final String SMART_DIAL_UPDATE_INSERT_CONTACTS =
+            "smartdial.update.insert_contacts";
+    public static final String SMART_DIAL_UPDATE_INSERT_PREFIXES =
+            "smartdial.update.insert_prefixes";
+    public static final String SMART_DIAL_UPDATE_INDEX = "smartdial.update.index";
+    /** Looking up the contact a number in the call log belongs to. */
+    public static final String CALLER_ID_LOOKUP = "callerid.lookup";
+    /** Grouping the calls of the call log into entries. */
+    public static final String CALL_LOG_GROUP_BUILD = "calllog.group_build";
+    /** Looking up a number or a name with an online lookup provider. */
+    public static final String LOOKUP_REVERSE = "lookup.reverse";
+    public static final String LOOKUP_FORWARD = "lookup.forward";
+    public static final String LOOKUP_PEOPLE = "lookup.people";
+    /** Counts the online lookups which timed out. */
+    public static final String LOOKUP_TIMEOUTS = "lookup.timeouts";
+
+    private static final Map<String, Histogram> sHistograms = new TreeMap<String, Histogram>();
+    private static final Map<String, Long> sCounters = new TreeMap<String, Long>();
+
+    private PerfStats() {
+    }
+
+    /**
+     * Begins a timed section with the given name.
+     *
+     * @return the start time of the section, to pass to {@link #endSection}.
+     */
+    public static long beginSection(String name) {
+        Trace.beginSection(name);
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Ends the section begun by the matching {@link #beginSection} and records its latency.
+     */
+    public static void endSection(String name, long startTime) {
+        Trace.endSection();
+        recordLatency(name, SystemClock.elapsedRealtime() - startTime);
+    }
+
+    /** Records a latency, in milliseconds, which has been measured by the caller. */
+    public static void recordLatency(String name, long latencyMs) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+            histogram.add(latencyMs);
+        }
+    }
+
+    public static void incrementCounter(String name) {
+        addToCounter(name, 1);
+    }
+
+    public static void addToCounter(String name, long delta) {
+        synchronized (sCounters) {
+            final Long value = sCounters.get(name);
+            sCounters.put(name, value == null ? delta : value + delta);
+        }
+    }
+
+    /** Returns the value of the given counter, 0 if it was never incremented. */
+    public static long getCounter(String name) {
+        synchronized (sCounters) {
+            final Long value = sCounters.get(name);
+            return value == null ? 0 : value;
+        }
+    }
+
+    /** Returns the number of latencies recorded for the given section. */
+    public static int getCount(String name) {
+        synchronized (sHistograms) {
+            final Histogram histogram = sHistograms.get(name);
+            return histogram == null ? 0 : histogram.mCount;
+        }
+    }
+
+    /** Forgets everything recorded so far. */
+    public static void reset() {
+        synchronized (sHistograms) {
+            sHistograms.clear();
+        }
+        synchronized (sCounters) {
+            sCounters.clear();
+        }
+    }
+
+    /**
+     * Prints the counters, and the count, mean, maximum and approximate percentiles of the
+     * latencies of each section.
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Latencies (ms):");
+        synchronized (sHistograms) {
+            for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+                writer.print(prefix);
+                writer.print("  ");
+                writer.print(entry.getKey());
+                writer.print(": ");
+                entry.getValue().dump(writer);
+                writer.println();
+            }
+        }
+        writer.print(prefix);
+        writer.println("Counters:");
+        synchronized (sCounters) {
+            for (Map.Entry<String, Long> entry : sCounters.entrySet()) {
+                writer.print(prefix);
+                writer.print("  ");
+                writer.print(entry.getKey());
+                writer.print(": ");
+                writer.println(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Latencies counted in buckets whose upper bounds are powers of two: bucket 0 holds latencies
+     * under 1ms, bucket i latencies from 2^(i-1) up to 2^i ms, and the last bucket everything
+     * longer.
+     */
+    @VisibleForTesting
+    static class Histogram {
+        @VisibleForTesting
+        static final int BUCKET_COUNT = 16;
+
+        private final int[] mBuckets = new int[BUCKET_COUNT];
+        private int mCount;
+        private long mSum;
+        private long mMax;
+
+        void add(long latencyMs) {
+            mBuckets[getBucket(latencyMs)]++;
+            mCount++;
+            mSum += latencyMs;
+            mMax = Math.max(mMax, latencyMs);
+        }
+
+        @VisibleForTesting
+        static int getBucket(long latencyMs) {
+            int bucket = 0;
+            while (bucket < BUCKET_COUNT - 1 && latencyMs >= (1L << bucket)) {
+                bucket++;
+            }
+            return bucket;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile, which is an upper
+         * bound of the percentile itself, capped at the maximum latency recorded.
+         */
+        @VisibleForTesting
+        long getPercentile(int percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(mCount * percentile / 100.0);
+            int seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mBuckets[bucket];
+                if (seen >= rank) {
+                    return Math.min(1L << bucket, mMax);
+                }
+            }
+            return mMax;
+        }
+
+        void dump(PrintWriter writer) {
+            writer.print("count=");
+            writer.print(mCount);
+            writer.print(" mean=");
+            writer.print(mCount == 0 ? 0 : mSum / mCount);
+            writer.print(" p50<=");
+            writer.print(getPercentile(50));
+            writer.print(" p90<=");
+            writer.print(getPercentile(90));
+            writer.print(" p99<=");
+            writer.print(getPercentile(99));
+            writer.print(" max=");
+            writer.print(mMax);
+        }
+    }
+}
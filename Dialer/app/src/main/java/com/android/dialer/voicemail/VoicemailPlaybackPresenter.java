@@ -169,6 +169,11 @@ public class VoicemailPlaybackPresenter {
     private FetchResultHandler mFetchResultHandler;
     private PowerManager.WakeLock mWakeLock;
     private AsyncTask<Void, ?, ?> mPrepareTask;
+    /**
+     * Set once the media player has been prepared with the voicemail content, from the same
+     * background task that found the content to be available.
+     */
+    private final AtomicBoolean mContentPrepared = new AtomicBoolean(false);
 
     public VoicemailPlaybackPresenter(PlaybackView view, MediaPlayerProxy player,
             Uri voicemailUri, ScheduledExecutorService executorService,
@@ -198,13 +203,21 @@ public class VoicemailPlaybackPresenter {
      * to see if the content field in the db is set. If set, we proceed to
      * {@link #postSuccessfullyFetchedContent()} method. If not set, we will make a request to fetch
      * the content asynchronously via {@link #makeRequestForContent()}.
+     * <p>
+     * The content is usually already available, since {@link VoicemailPrefetcher} requests it when
+     * the call log is shown. In that case the media player is prepared right away by the same
+     * background task, instead of waiting for the ui thread to schedule the preparation.
      */
     private void checkThatWeHaveContent() {
         mView.setIsFetchingContent();
         mAsyncTaskExecutor.submit(Tasks.CHECK_FOR_CONTENT, new AsyncTask<Void, Void, Boolean>() {
             @Override
             public Boolean doInBackground(Void... params) {
-                return mView.queryHasContent(mVoicemailUri);
+                final boolean hasContent = mView.queryHasContent(mVoicemailUri);
+                if (hasContent) {
+                    prepareContentSpeculatively();
+                }
+                return hasContent;
             }
 
             @Override
@@ -275,7 +288,11 @@ public class VoicemailPlaybackPresenter {
                     new AsyncTask<Void, Void, Boolean>() {
                 @Override
                 public Boolean doInBackground(Void... params) {
-                    return mView.queryHasContent(mVoicemailUri);
+                    final boolean hasContent = mView.queryHasContent(mVoicemailUri);
+                    if (hasContent && mResultStillPending.get()) {
+                        prepareContentSpeculatively();
+                    }
+                    return hasContent;
                 }
 
                 @Override
@@ -307,12 +324,11 @@ public class VoicemailPlaybackPresenter {
                 new AsyncTask<Void, Void, Exception>() {
                     @Override
                     public Exception doInBackground(Void... params) {
+                        if (mContentPrepared.get()) {
+                            return null;
+                        }
                         try {
-                            mPlayer.reset();
-                            mPlayer.setDataSource(mView.getDataSourceContext(), mVoicemailUri);
-                            mPlayer.setAudioStreamType(PLAYBACK_STREAM);
-                            mPlayer.prepare();
-                            mDuration.set(mPlayer.getDuration());
+                            prepareContent();
                             return null;
                         } catch (Exception e) {
                             return e;
@@ -330,6 +346,37 @@ public class VoicemailPlaybackPresenter {
                 });
     }
 
+    /**
+     * Prepares the media player with the voicemail content and records its duration.
+     * <p>
+     * This method must be called from a background thread.
+     */
+    private void prepareContent() throws Exception {
+        mPlayer.reset();
+        mPlayer.setDataSource(mView.getDataSourceContext(), mVoicemailUri);
+        mPlayer.setAudioStreamType(PLAYBACK_STREAM);
+        mPlayer.prepare();
+        mDuration.set(mPlayer.getDuration());
+    }
+
+    /**
+     * Prepares the media player as soon as the content is known to be available.
+     * <p>
+     * Failures are ignored here, the {@link Tasks#PREPARE_MEDIA_PLAYER} task will try again and
+     * report the error to the ui.
+     */
+    private void prepareContentSpeculatively() {
+        if (mContentPrepared.get()) {
+            return;
+        }
+        try {
+            prepareContent();
+            mContentPrepared.set(true);
+        } catch (Exception e) {
+            mContentPrepared.set(false);
+        }
+    }
+
     /**
      * Enables the ui, and optionally starts playback immediately.
      * <p>
@@ -370,6 +417,7 @@ public class VoicemailPlaybackPresenter {
             mPrepareTask = null;
         }
         mPlayer.release();
+        mContentPrepared.set(false);
         if (mFetchResultHandler != null) {
             mFetchResultHandler.destroy();
             mFetchResultHandler = null;
@@ -503,6 +551,7 @@ public class VoicemailPlaybackPresenter {
         mView.playbackError(e);
         mPositionUpdater.stopUpdating();
         mPlayer.release();
+        mContentPrepared.set(false);
     }
 
     public void handleCompletion(MediaPlayer mediaPlayer) {
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.voicemail;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.provider.VoicemailContract;
+import android.provider.VoicemailContract.Voicemails;
+import android.util.Log;
+
+import com.android.common.io.MoreCloseables;
+import com.android.dialer.util.AsyncTaskExecutor;
+import com.android.dialer.util.AsyncTaskExecutors;
+
+/**
+ * Speculatively requests the content of the newest unheard voicemails.
+ * <p>
+ * Fetching the content of a voicemail from its source can take several seconds. By asking the
+ * voicemail sources for the content of the newest unheard voicemails as soon as the call log is
+ * shown, the content is usually already available by the time the user opens one of them, and
+ * {@link VoicemailPlaybackPresenter} can go straight to preparing the media player.
+ * <p>
+ * All calls into this class must be made from the main ui thread.
+ */
+public class VoicemailPrefetcher {
+    private static final String TAG = "VoicemailPrefetcher";
+
+    /** The number of voicemails to request the content of. */
+    private static final int MAX_VOICEMAILS_TO_PREFETCH = 3;
+    /** Minimum time between two prefetch requests, to avoid flooding the voicemail sources. */
+    private static final long MIN_PREFETCH_INTERVAL_MS = 60 * 1000;
+
+    private static final String[] PROJECTION = new String[] {
+        Voicemails._ID,
+    };
+    private static final String SELECTION = Voicemails.IS_READ + "=0 AND "
+            + Voicemails.HAS_CONTENT + "=0";
+    private static final String SORT_ORDER = Voicemails.DATE + " DESC LIMIT "
+            + MAX_VOICEMAILS_TO_PREFETCH;
+
+    /** The enumeration of {@link AsyncTask} objects used in this class. */
+    public enum Tasks {
+        PREFETCH_VOICEMAIL_CONTENT,
+    }
+
+    private static long sLastPrefetchTime;
+    private static AsyncTaskExecutor sAsyncTaskExecutor;
+
+    private VoicemailPrefetcher() {
+    }
+
+    /**
+     * Requests the content of the newest unheard voicemails which do not have content yet.
+     * <p>
+     * Calls made within {@link #MIN_PREFETCH_INTERVAL_MS} of the previous one are ignored.
+     */
+    public static void prefetchNewestUnheardVoicemails(Context context) {
+        final long now = SystemClock.elapsedRealtime();
+        if (sLastPrefetchTime != 0 && now - sLastPrefetchTime < MIN_PREFETCH_INTERVAL_MS) {
+            return;
+        }
+        sLastPrefetchTime = now;
+
+        if (sAsyncTaskExecutor == null) {
+            sAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+        }
+        final Context appContext = context.getApplicationContext();
+        sAsyncTaskExecutor.submit(Tasks.PREFETCH_VOICEMAIL_CONTENT,
+                new AsyncTask<Void, Void, Void>() {
+                    @Override
+                    public Void doInBackground(Void... params) {
+                        requestContentOfUnheardVoicemails(appContext);
+                        return null;
+                    }
+                });
+    }
+
+    private static void requestContentOfUnheardVoicemails(Context context) {
+        final Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(Voicemails.CONTENT_URI, PROJECTION,
+                    SELECTION, null, SORT_ORDER);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Not allowed to read voicemails", e);
+            return;
+        }
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final Intent intent = new Intent(VoicemailContract.ACTION_FETCH_VOICEMAIL,
+                        ContentUris.withAppendedId(Voicemails.CONTENT_URI, cursor.getLong(0)));
+                context.sendBroadcast(intent);
+            }
+        } finally {
+            MoreCloseables.closeQuietly(cursor);
+        }
+    }
+}
@@ -162,6 +162,15 @@ public class OverlappingPaneLayout extends ViewGroup {
     private boolean mFirstLayout = true;
 
     private final Rect mTmpRect = new Rect();
+    private final int[] mTmpViewLocation = new int[2];
+    private final int[] mTmpParentLocation = new int[2];
+
+    /**
+     * The view rendered into a hardware layer while the pane moves, or null if there is none.
+     */
+    private View mLayerView;
+    /** The layer type of {@link #mLayerView} before it was promoted to a hardware layer. */
+    private int mLayerViewSavedLayerType;
 
     /**
      * How many dips we need to scroll past a position before we can snap to the next position
@@ -794,6 +803,27 @@ public class OverlappingPaneLayout extends ViewGroup {
         return mCanSlide;
     }
 
+    /**
+     * Renders the sliding pane into a hardware layer while it moves between its bounds, so that
+     * each frame of a drag or settle only needs to move the layer instead of redrawing the pane.
+     * The layer is dropped once the pane comes to rest or reaches a bound, where its content may
+     * scroll.
+     */
+    private void setSlideableViewLayerEnabled(boolean enabled) {
+        if (enabled && mLayerView == null && mSlideableView != null) {
+            mLayerView = mSlideableView;
+            mLayerViewSavedLayerType = mLayerView.getLayerType();
+            if (mLayerViewSavedLayerType != LAYER_TYPE_HARDWARE) {
+                mLayerView.setLayerType(LAYER_TYPE_HARDWARE, null);
+            }
+        } else if (!enabled && mLayerView != null) {
+            if (mLayerViewSavedLayerType != LAYER_TYPE_HARDWARE) {
+                mLayerView.setLayerType(mLayerViewSavedLayerType, null);
+            }
+            mLayerView = null;
+        }
+    }
+
     private void onPanelDragged(int newTop) {
         if (mSlideableView == null) {
             // This can happen if we're aborting motion during layout because everything now fits.
@@ -881,9 +911,9 @@ public class OverlappingPaneLayout extends ViewGroup {
         if (capturableView == null) {
             return false;
         }
-        int[] viewLocation = new int[2];
+        final int[] viewLocation = mTmpViewLocation;
         capturableView.getLocationOnScreen(viewLocation);
-        int[] parentLocation = new int[2];
+        final int[] parentLocation = mTmpParentLocation;
         this.getLocationOnScreen(parentLocation);
         int screenX = parentLocation[0] + x;
         int screenY = parentLocation[1] + y;
@@ -1029,6 +1059,7 @@ public class OverlappingPaneLayout extends ViewGroup {
             }
 
             if (mDragHelper.getViewDragState() == ViewDragHelper.STATE_IDLE) {
+                setSlideableViewLayerEnabled(false);
                 if (mSlideOffset == 0) {
                     updateObscuredViewsVisibility(mSlideableView);
                     dispatchOnPanelClosed(mSlideableView);
@@ -1058,6 +1089,7 @@ public class OverlappingPaneLayout extends ViewGroup {
         @Override
         public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
             onPanelDragged(top);
+            setSlideableViewLayerEnabled(mSlideOffsetPx > 0 && mSlideOffsetPx < mSlideRange);
             invalidate();
         }
 
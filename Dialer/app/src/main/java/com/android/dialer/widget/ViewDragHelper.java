@@ -106,6 +106,8 @@ public class ViewDragHelper {
     private static final int BASE_SETTLE_DURATION = 256; // ms
     private static final int MAX_SETTLE_DURATION = 600; // ms
 
+    private static final int MIN_MOTION_HISTORY_SIZE = 4; // pointers
+
     // Current drag state; idle, dragging or settling
     private int mDragState;
 
@@ -505,9 +507,9 @@ public class ViewDragHelper {
         mActivePointerId = INVALID_POINTER;
         clearMotionHistory();
 
+        // Keep the tracker for the next gesture instead of obtaining a new one every time.
         if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
+            mVelocityTracker.clear();
         }
     }
 
@@ -865,13 +867,16 @@ public class ViewDragHelper {
 
     private void ensureMotionHistorySizeForId(int pointerId) {
         if (mInitialMotionX == null || mInitialMotionX.length <= pointerId) {
-            float[] imx = new float[pointerId + 1];
-            float[] imy = new float[pointerId + 1];
-            float[] lmx = new float[pointerId + 1];
-            float[] lmy = new float[pointerId + 1];
-            int[] iit = new int[pointerId + 1];
-            int[] edip = new int[pointerId + 1];
-            int[] edl = new int[pointerId + 1];
+            // Leave room for a few more pointers, so that multi-touch gestures don't reallocate
+            // the history for every new pointer.
+            final int size = Math.max(pointerId + 1, MIN_MOTION_HISTORY_SIZE);
+            float[] imx = new float[size];
+            float[] imy = new float[size];
+            float[] lmx = new float[size];
+            float[] lmy = new float[size];
+            int[] iit = new int[size];
+            int[] edip = new int[size];
+            int[] edl = new int[size];
 
             if (mInitialMotionX != null) {
                 System.arraycopy(mInitialMotionX, 0, imx, 0, mInitialMotionX.length);